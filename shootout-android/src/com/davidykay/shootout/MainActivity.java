@@ -13,6 +13,7 @@ public class MainActivity extends AndroidApplication {
     setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
     AndroidApplicationConfiguration config = new AndroidApplicationConfiguration();
     config.useWakelock = true;    
+    config.useGL20 = ShootOut.USE_GL20;
     initialize(new ShootOut(),config);
   }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.davidykay.shootout.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A single measured piece of work. The runner calls {@link #setUp()} once, then {@link #setUpIteration()} before every
+ * warmup and measurement iteration, and calls {@link #run()} until the iteration time is used up.
+ */
+public abstract class Benchmark {
+  /** benchmarks add their results here so the JIT can't throw the work away **/
+  public long sink;
+
+  /**
+   * @return the id the result is stored under in the JSON, including the parameters, e.g. "update aliens=256 shots=8"
+   */
+  public abstract String getName ();
+
+  public void setUp () throws Exception {
+  }
+
+  public void setUpIteration () {
+  }
+
+  /**
+   * Does one batch of work.
+   * @return the number of operations done, the score is reported per operation
+   */
+  public abstract int run ();
+
+  public void tearDown () {
+  }
+
+  ////////////////////////////////////////
+  // Utility
+
+  /**
+   * Reads a whole file into memory, so benchmarks of a loader measure the parsing and not the disk.
+   */
+  protected static byte[] readFile (File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+        out.write(buffer, 0, read);
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package com.davidykay.shootout.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.davidykay.shootout.MeshLoader;
+import com.davidykay.shootout.simulation.CollisionBenchmark;
+
+/**
+ * Runs the benchmarks and writes one JSON result per benchmark. Every benchmark gets a number of timed warmup iterations
+ * followed by the measured ones, the score is the mean time per operation over the measured iterations.
+ *
+ * Usage: BenchmarkRunner [--warmup iterations] [--iterations iterations] [--time ms] [--filter text] [--assets dir]
+ *                        [--out file] [--baseline file] [--threshold fraction] [--sigmas count]
+ *
+ * With --baseline the results are compared against an earlier run and the runner exits with 1 if any benchmark got slower
+ * by more than the threshold, so it can gate a build. A benchmark only counts as slower if the difference is also more
+ * than the given number of standard deviations of the two runs combined, so a noisy benchmark does not fail on noise.
+ * The baseline only holds on the machine that recorded it.
+ */
+public class BenchmarkRunner {
+  /** alien formations to benchmark, the first is the game's default **/
+  private static final int[][] FORMATIONS = { { 4, 8 }, { 8, 32 }, { 16, 64 }, { 32, 128 } };
+  private static final int[] MAX_SHOTS = { 8, 64 };
+  /** thread count for the parallel tick, fixed so results keep their names across machines **/
+  private static final int WORKERS = 4;
+  /** OBJ sources the game does not load itself **/
+  private static final String[] MODELS = { "bomb.obj", "emplacement.obj", "laser.obj", "moon.obj", "ufo.obj" };
+  /** the models the game loads, timed from their OBJ and from the binary mesh made of it **/
+  private static final String[] GAME_MODELS = { "block", "packed/emplacement", "packed/moon", "packed/moon-lod1",
+    "packed/moon-lod2", "packed/ufo", "packed/ufo-lod1", "packed/ufo-lod2" };
+
+  private static final Pattern RESULT = Pattern.compile(
+    "\"benchmark\": \"([^\"]*)\".*\"score\": ([-0-9.eE]+), \"stdev\": ([-0-9.eE]+), \"samples\": ([0-9]+)");
+
+  private int warmupIterations = 3;
+  private int iterations = 5;
+  private long iterationNanos = 500 * 1000000L;
+
+  public static void main (String[] argv) throws Exception {
+    BenchmarkRunner runner = new BenchmarkRunner();
+    String filter = null;
+    String assets = "../shootout-android/assets/data";
+    String out = null;
+    String baseline = null;
+    float threshold = 0.1f;
+    float sigmas = 2;
+    for (int i = 0; i < argv.length; i++) {
+      String arg = argv[i];
+      if (arg.equals("--warmup"))
+        runner.warmupIterations = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--iterations"))
+        runner.iterations = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--time"))
+        runner.iterationNanos = Long.parseLong(argv[++i]) * 1000000L;
+      else if (arg.equals("--filter"))
+        filter = argv[++i];
+      else if (arg.equals("--assets"))
+        assets = argv[++i];
+      else if (arg.equals("--out"))
+        out = argv[++i];
+      else if (arg.equals("--baseline"))
+        baseline = argv[++i];
+      else if (arg.equals("--threshold"))
+        threshold = Float.parseFloat(argv[++i]);
+      else if (arg.equals("--sigmas"))
+        sigmas = Float.parseFloat(argv[++i]);
+      else
+        throw new IllegalArgumentException("Unknown argument: " + arg);
+    }
+
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    for (Benchmark benchmark : createBenchmarks(new File(assets))) {
+      if (filter == null || benchmark.getName().contains(filter)) benchmarks.add(benchmark);
+    }
+
+    List<Result> results = new ArrayList<Result>();
+    for (Benchmark benchmark : benchmarks) {
+      Result result = runner.run(benchmark);
+      System.err.println(String.format(Locale.US, "%-80s %14.1f ns/op +- %.1f", result.name, result.score, result.stdev));
+      results.add(result);
+    }
+
+    String json = toJson(results);
+    if (out != null) {
+      FileWriter writer = new FileWriter(out);
+      try {
+        writer.write(json);
+      } finally {
+        writer.close();
+      }
+    } else {
+      System.out.print(json);
+    }
+
+    if (baseline != null && !compare(results, readBaseline(new File(baseline)), threshold, sigmas)) System.exit(1);
+  }
+
+  private static List<Benchmark> createBenchmarks (File assets) {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    for (int[] formation : FORMATIONS) {
+      for (int maxShots : MAX_SHOTS) {
+        benchmarks.add(new SimulationUpdateBenchmark(formation[0], formation[1], maxShots, true, 1));
+        benchmarks.add(new SimulationUpdateBenchmark(formation[0], formation[1], maxShots, false, 1));
+      }
+    }
+    // The parallel tick only pays off for big formations.
+    for (int i = 2; i < FORMATIONS.length; i++) {
+      benchmarks.add(new SimulationUpdateBenchmark(FORMATIONS[i][0], FORMATIONS[i][1], 64, true, WORKERS));
+      benchmarks.add(new SimulationUpdateBenchmark(FORMATIONS[i][0], FORMATIONS[i][1], 64, false, WORKERS));
+    }
+    for (int pass = CollisionBenchmark.PASS_RAYS; pass <= CollisionBenchmark.PASS_SHIP; pass++) {
+      // Only the aliens pass has a hashed version.
+      boolean hashed = pass == CollisionBenchmark.PASS_ALIENS;
+      for (int[] formation : FORMATIONS) {
+        if (hashed) benchmarks.add(new CollisionBenchmark(pass, formation[0], formation[1], 64, true, 1));
+        benchmarks.add(new CollisionBenchmark(pass, formation[0], formation[1], 64, false, 1));
+      }
+      for (int i = 2; i < FORMATIONS.length; i++) {
+        if (hashed) benchmarks.add(new CollisionBenchmark(pass, FORMATIONS[i][0], FORMATIONS[i][1], 64, true, WORKERS));
+        benchmarks.add(new CollisionBenchmark(pass, FORMATIONS[i][0], FORMATIONS[i][1], 64, false, WORKERS));
+      }
+    }
+    benchmarks.add(new OrientationBenchmark());
+    for (String model : MODELS)
+      benchmarks.add(new ObjLoadBenchmark(assets, model));
+    for (String model : GAME_MODELS) {
+      benchmarks.add(new ObjLoadBenchmark(assets, model + MeshLoader.OBJ));
+      benchmarks.add(new MeshLoadBenchmark(assets, model + MeshLoader.BINARY));
+    }
+    return benchmarks;
+  }
+
+  private Result run (Benchmark benchmark) throws Exception {
+    benchmark.setUp();
+    try {
+      for (int i = 0; i < warmupIterations; i++)
+        iteration(benchmark);
+      double[] samples = new double[iterations];
+      for (int i = 0; i < iterations; i++)
+        samples[i] = iteration(benchmark);
+      return new Result(benchmark.getName(), samples);
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  /**
+   * @return nanoseconds per operation
+   */
+  private double iteration (Benchmark benchmark) {
+    benchmark.setUpIteration();
+    long operations = 0;
+    long start = System.nanoTime();
+    long elapsed;
+    do {
+      operations += benchmark.run();
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < iterationNanos);
+    return (double)elapsed / operations;
+  }
+
+  private static String toJson (List<Result> results) {
+    StringWriter buffer = new StringWriter();
+    PrintWriter writer = new PrintWriter(buffer);
+    // One result per line keeps the diffs against the baseline readable.
+    writer.print("[\n");
+    for (int i = 0; i < results.size(); i++) {
+      Result result = results.get(i);
+      writer.print(String.format(Locale.US,
+                                 "  {\"benchmark\": \"%s\", \"unit\": \"ns/op\", \"score\": %.3f, \"stdev\": %.3f, \"samples\": %d}",
+                                 result.name, result.score, result.stdev, result.samples));
+      writer.print(i < results.size() - 1 ? ",\n" : "\n");
+    }
+    writer.print("]\n");
+    writer.flush();
+    return buffer.toString();
+  }
+
+  /**
+   * Reads the results back from a file written by {@link #toJson(List)}.
+   */
+  private static Map<String, Result> readBaseline (File file) throws IOException {
+    Map<String, Result> results = new HashMap<String, Result>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Matcher matcher = RESULT.matcher(line);
+        if (!matcher.find()) continue;
+        String name = matcher.group(1);
+        results.put(name, new Result(name, Double.parseDouble(matcher.group(2)), Double.parseDouble(matcher.group(3)),
+                                     Integer.parseInt(matcher.group(4))));
+      }
+    } finally {
+      reader.close();
+    }
+    return results;
+  }
+
+  /**
+   * @return false if any benchmark is slower than its baseline by more than the threshold and by more than the given
+   *         number of standard deviations of both results combined
+   */
+  private static boolean compare (List<Result> results, Map<String, Result> baseline, float threshold, float sigmas) {
+    boolean passed = true;
+    for (Result result : results) {
+      Result expected = baseline.get(result.name);
+      if (expected == null) {
+        System.err.println("no baseline: " + result.name);
+        continue;
+      }
+      double difference = result.score - expected.score;
+      double change = difference / expected.score;
+      double stdev = Math.sqrt(result.stdev * result.stdev + expected.stdev * expected.stdev);
+      if (change > threshold && difference > sigmas * stdev) {
+        System.err.println(String.format(Locale.US, "REGRESSION %+.1f%%: %s (%.1f +- %.1f -> %.1f +- %.1f ns/op)",
+                                         change * 100, result.name, expected.score, expected.stdev, result.score,
+                                         result.stdev));
+        passed = false;
+      }
+    }
+    return passed;
+  }
+
+  private static class Result {
+    final String name;
+    final double score;
+    final double stdev;
+    final int samples;
+
+    Result (String name, double[] samples) {
+      this.name = name;
+      this.samples = samples.length;
+      double sum = 0;
+      for (double sample : samples)
+        sum += sample;
+      score = sum / samples.length;
+      double variance = 0;
+      for (double sample : samples)
+        variance += (sample - score) * (sample - score);
+      stdev = samples.length > 1 ? Math.sqrt(variance / (samples.length - 1)) : 0;
+    }
+
+    Result (String name, double score, double stdev, int samples) {
+      this.name = name;
+      this.score = score;
+      this.stdev = stdev;
+      this.samples = samples;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.davidykay.shootout.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.davidykay.shootout.MeshLoader;
+
+/**
+ * {@link MeshLoader#loadBinary(InputStream)} on one of the binary meshes the MeshConverter tool writes, to compare with
+ * {@link ObjLoadBenchmark} on the same model. The file is read into memory up front like there.
+ */
+public class MeshLoadBenchmark extends Benchmark {
+  private final File assets;
+  private final String path;
+  private byte[] bytes;
+  private MeshLoader loader;
+
+  /**
+   * @param path the mesh relative to the assets directory, like "packed/ufo.mesh"
+   */
+  public MeshLoadBenchmark (File assets, String path) {
+    this.assets = assets;
+    this.path = path;
+  }
+
+  @Override public String getName () {
+    return "MeshLoader.loadBinary file=" + path;
+  }
+
+  @Override public void setUp () throws IOException {
+    // Meshes keep their vertices in native buffers.
+    GdxNativesLoader.load();
+    loader = new MeshLoader(true);
+    bytes = readFile(new File(assets, path));
+  }
+
+  @Override public int run () {
+    try {
+      Mesh mesh = loader.loadBinary(new ByteArrayInputStream(bytes));
+      sink += mesh.getNumVertices();
+      mesh.dispose();
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    return 1;
+  }
+}
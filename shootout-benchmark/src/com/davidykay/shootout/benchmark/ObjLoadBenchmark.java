@@ -0,0 +1,45 @@
+package com.davidykay.shootout.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.g3d.loaders.ModelLoaderOld;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/**
+ * {@link ModelLoaderOld#loadObj(InputStream)} on one of the game's models. The file is read into memory up front, so only
+ * parsing and mesh creation are measured, not the disk.
+ */
+public class ObjLoadBenchmark extends Benchmark {
+  private final File assets;
+  private final String path;
+  private byte[] bytes;
+
+  /**
+   * @param path the model relative to the assets directory, like "packed/ufo.obj"
+   */
+  public ObjLoadBenchmark (File assets, String path) {
+    this.assets = assets;
+    this.path = path;
+  }
+
+  @Override public String getName () {
+    return "ModelLoaderOld.loadObj file=" + path;
+  }
+
+  @Override public void setUp () throws IOException {
+    // Meshes keep their vertices in native buffers.
+    GdxNativesLoader.load();
+    bytes = readFile(new File(assets, path));
+  }
+
+  @Override public int run () {
+    Mesh mesh = ModelLoaderOld.loadObj(new ByteArrayInputStream(bytes));
+    sink += mesh.getNumVertices();
+    mesh.dispose();
+    return 1;
+  }
+}
@@ -0,0 +1,34 @@
+package com.davidykay.shootout.benchmark;
+
+import java.util.Random;
+
+import com.davidykay.shootout.simulation.Simulation;
+import com.davidykay.shootout.simulation.Simulation.Orientation;
+
+/**
+ * {@link Simulation#addOrientation(Orientation)} fed with a fixed set of noisy sensor readings.
+ */
+public class OrientationBenchmark extends Benchmark {
+  private static final int SAMPLES = 1024;
+
+  private final Simulation simulation = new Simulation(1);
+  private final Orientation[] samples = new Orientation[SAMPLES];
+
+  public OrientationBenchmark () {
+    Random random = new Random(1);
+    for (int i = 0; i < SAMPLES; i++)
+      samples[i] = simulation.new Orientation(random.nextFloat() * 360, random.nextFloat() * 180 - 90,
+                                              random.nextFloat() * 180 - 90);
+  }
+
+  @Override public String getName () {
+    return "Simulation.addOrientation";
+  }
+
+  @Override public int run () {
+    for (int i = 0; i < SAMPLES; i++)
+      simulation.addOrientation(samples[i]);
+    sink += Float.floatToIntBits(simulation.getAzimuth());
+    return SAMPLES;
+  }
+}
@@ -0,0 +1,51 @@
+package com.davidykay.shootout.benchmark;
+
+import com.davidykay.shootout.headless.AutoPilotInput;
+import com.davidykay.shootout.simulation.Simulation;
+
+/**
+ * {@link Simulation#update(float)} with a formation of the given size and an auto pilot firing as fast as the shot limit
+ * allows. Every batch plays the same seeded game from the start, so each run sees the same mix of entities.
+ */
+public class SimulationUpdateBenchmark extends Benchmark {
+  private static final long SEED = 1;
+  private static final float DELTA = 1 / 60f;
+  /** ticks per batch, long enough for the shots to reach the formation **/
+  private static final int TICKS = 600;
+
+  private final int rows;
+  private final int columns;
+  private final int maxShots;
+  private final boolean useSpatialHash;
+  private final int workers;
+  private final AutoPilotInput input = new AutoPilotInput(1, 0.5f);
+
+  public SimulationUpdateBenchmark (int rows, int columns, int maxShots, boolean useSpatialHash, int workers) {
+    this.rows = rows;
+    this.columns = columns;
+    this.maxShots = maxShots;
+    this.useSpatialHash = useSpatialHash;
+    this.workers = workers;
+  }
+
+  @Override public String getName () {
+    return "Simulation.update aliens=" + rows * columns + " shots=" + maxShots + " collisions="
+      + (useSpatialHash ? "hash" : "brute-force") + (workers > 1 ? " workers=" + workers : "");
+  }
+
+  @Override public int run () {
+    Simulation simulation = new Simulation(SEED, rows, columns);
+    simulation.maxShots = maxShots;
+    simulation.useSpatialHash = useSpatialHash;
+    simulation.setWorkers(workers);
+    input.begin(SEED);
+    for (int tick = 0; tick < TICKS; tick++) {
+      input.apply(tick, DELTA, simulation);
+      simulation.update(DELTA);
+    }
+    sink += simulation.score + simulation.getAliens().size() + simulation.getAlienRays().size();
+    // Starting and stopping the worker threads is part of the measurement, it is small next to the ticks.
+    simulation.setWorkers(1);
+    return TICKS;
+  }
+}
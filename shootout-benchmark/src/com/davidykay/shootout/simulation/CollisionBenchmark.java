@@ -0,0 +1,91 @@
+package com.davidykay.shootout.simulation;
+
+import com.davidykay.shootout.benchmark.Benchmark;
+import com.davidykay.shootout.headless.AutoPilotInput;
+
+/**
+ * One of the collision passes of {@link Simulation#update(float)} on a frozen game state. The game is played for a while
+ * first so shots are in flight, then the same pass is repeated. The broadphase is invalidated before every pass, since in a
+ * real tick everything has moved and it is rebuilt anyway.
+ *
+ * Lives in the simulation package to reach the package private collision queries.
+ */
+public class CollisionBenchmark extends Benchmark {
+  public static final int PASS_RAYS = 0;
+  public static final int PASS_ALIENS = 1;
+  public static final int PASS_SHIP = 2;
+  private static final String[] PASS_NAMES = { "rays", "aliens", "ship" };
+
+  private static final long SEED = 1;
+  private static final float DELTA = 1 / 60f;
+  /** ticks played before freezing, enough for a full set of shots to leave the ship **/
+  private static final int SETUP_TICKS = 90;
+
+  private final int pass;
+  private final int rows;
+  private final int columns;
+  private final int maxShots;
+  private final boolean useSpatialHash;
+  private final int workers;
+  private final Contacts contacts = new Contacts();
+  private Simulation simulation;
+
+  /**
+   * @param useSpatialHash only changes the aliens pass, the other passes always test every entity
+   */
+  public CollisionBenchmark (int pass, int rows, int columns, int maxShots, boolean useSpatialHash, int workers) {
+    this.pass = pass;
+    this.rows = rows;
+    this.columns = columns;
+    this.maxShots = maxShots;
+    this.useSpatialHash = useSpatialHash;
+    this.workers = workers;
+  }
+
+  @Override public String getName () {
+    return "Simulation.collision pass=" + PASS_NAMES[pass] + " aliens=" + rows * columns + " shots=" + maxShots
+      + " collisions=" + (useSpatialHash ? "hash" : "brute-force") + (workers > 1 ? " workers=" + workers : "");
+  }
+
+  @Override public void setUp () {
+    simulation = new Simulation(SEED, rows, columns);
+    simulation.maxShots = maxShots;
+    simulation.useSpatialHash = useSpatialHash;
+    simulation.setWorkers(workers);
+    AutoPilotInput input = new AutoPilotInput(1, 0.5f);
+    input.begin(SEED);
+    for (int tick = 0; tick < SETUP_TICKS; tick++) {
+      input.apply(tick, DELTA, simulation);
+      simulation.update(DELTA);
+    }
+  }
+
+  @Override public int run () {
+    final Simulation simulation = this.simulation;
+    simulation.invalidateCollisionHashes();
+    int hits = 0;
+    switch (pass) {
+    case PASS_RAYS:
+      simulation.findPoppedRays(contacts);
+      hits += contacts.size;
+      break;
+    case PASS_ALIENS:
+      if (useSpatialHash)
+        simulation.findShotAliensHashed(contacts);
+      else
+        simulation.findShotAliens(contacts);
+      hits += contacts.size;
+      break;
+    case PASS_SHIP:
+      hits += simulation.findShipHit(simulation.mAlienRays);
+      hits += simulation.findShipHit(simulation.aliens);
+      break;
+    }
+    sink += hits;
+    return 1;
+  }
+
+  @Override public void tearDown () {
+    simulation.setWorkers(1);
+  }
+}
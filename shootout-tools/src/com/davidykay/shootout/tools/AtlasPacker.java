@@ -0,0 +1,362 @@
+package com.davidykay.shootout.tools;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Packs images into texture atlas pages and writes them together with a pack file libgdx's {@code TextureAtlas} reads.
+ * Runs on the desktop at build time, the game only loads the result. Every image is surrounded by a copy of its edge
+ * pixels, so filtering never samples a neighbour. OBJ models using a packed image get a copy with their texture
+ * coordinates moved into the atlas.
+ *
+ * Everything is written into the {@code packed} directory next to the source assets.
+ *
+ * Usage: AtlasPacker [--assets dir]
+ */
+public class AtlasPacker {
+  /** edge pixels repeated around every image **/
+  private static final int PADDING = 2;
+  /**
+   * edge pixels repeated around the 256x256 images of a mipmapped page. Every mip level halves the gutter, so 128 keeps
+   * the images apart down to the level where they are 2x2. Any gutter at all makes two of them a 1024x512 page, so the
+   * wide one costs nothing.
+   **/
+  private static final int MIPMAP_PADDING = 128;
+  /** size of the ray sprite **/
+  private static final int RAY_SIZE = 32;
+
+  private final int maxPageSize;
+  private final String format;
+  private final String minFilter;
+  private final String magFilter;
+  private final List<Image> images = new ArrayList<Image>();
+
+  public static void main (String[] argv) throws IOException {
+    String assets = "../shootout-android/assets/data";
+    for (int i = 0; i < argv.length; i++) {
+      String arg = argv[i];
+      if (arg.equals("--assets"))
+        assets = argv[++i];
+      else
+        throw new IllegalArgumentException("Unknown argument: " + arg);
+    }
+    File dir = new File(assets);
+    File out = new File(dir, "packed");
+    if (!out.isDirectory() && !out.mkdirs()) throw new IOException("Couldn't create " + out);
+
+    // The textures of the lit meshes, opaque and mipmapped. The ship fills a page of its own, which clamps at its
+    // edges, so it needs no gutter. Packed with the others its gutter would push the page to 1024x1024.
+    AtlasPacker ship = new AtlasPacker(512, "RGB565", "MipMap", "Linear");
+    ship.add("ship", -1, read(dir, "battery.png"), 0);
+    ship.write(out, "ship");
+    ship.remapObj(new File(dir, "emplacement.obj"), new File(out, "emplacement.obj"), "ship");
+    AtlasPacker scene = new AtlasPacker(1024, "RGB565", "MipMap", "Linear");
+    scene.add("alien", -1, read(dir, "ufo.png"), MIPMAP_PADDING);
+    scene.add("moon", -1, read(dir, "moon.png"), MIPMAP_PADDING);
+    scene.write(out, "scene");
+    scene.remapObj(new File(dir, "ufo.obj"), new File(out, "ufo.obj"), "alien");
+    scene.remapObj(new File(dir, "moon.obj"), new File(out, "moon.obj"), "moon");
+
+    // The opaque static layer behind the game and the menus, on one page so it draws with one call. The starfield fills
+    // the screen axis aligned, so it goes without padding.
+    AtlasPacker backdrop = new AtlasPacker(1024, "RGB565", "Linear", "Linear");
+    backdrop.add("starfield", -1, read(dir, "starfield512.png"), 0);
+    backdrop.add("earth", -1, read(dir, "marble128.jpg"));
+    backdrop.write(out, "backdrop");
+
+    // The logos of the menus, drawn over the starfield.
+    AtlasPacker title = new AtlasPacker(512, "RGBA8888", "Linear", "Linear");
+    title.add("title", -1, read(dir, "title.png"), 0);
+    title.write(out, "title");
+
+    // Everything drawn by the billboard batch, so all effects draw with one texture.
+    AtlasPacker effects = new AtlasPacker(1024, "RGBA4444", "MipMap", "Linear");
+    effects.addFrames("explosion", read(dir, "explode.png"), 4, 4);
+    effects.addFrames("bomb-explosion", read(dir, "explode-bomb.png"), 4, 4);
+    effects.add("ray", -1, createRaySprite(RAY_SIZE));
+    effects.write(out, "effects");
+  }
+
+  /**
+   * @param maxPageSize largest width and height of a page, images that do not fit start a new page
+   * @param format the {@code Pixmap.Format} the game loads the pages with
+   */
+  public AtlasPacker (int maxPageSize, String format, String minFilter, String magFilter) {
+    this.maxPageSize = maxPageSize;
+    this.format = format;
+    this.minFilter = minFilter;
+    this.magFilter = magFilter;
+  }
+
+  /**
+   * Adds an image as one region.
+   * @param index the frame number of the region or -1
+   */
+  public void add (String name, int index, BufferedImage image) {
+    add(name, index, image, PADDING);
+  }
+
+  /**
+   * @param padding edge pixels repeated around the image
+   */
+  public void add (String name, int index, BufferedImage image, int padding) {
+    if (image.getWidth() + padding * 2 > maxPageSize || image.getHeight() + padding * 2 > maxPageSize)
+      throw new IllegalArgumentException("Image too large for a page: " + name);
+    images.add(new Image(name, index, image, padding));
+  }
+
+  /**
+   * Adds a flipbook sheet as one region per frame, numbered row by row from the top left.
+   */
+  public void addFrames (String name, BufferedImage sheet, int columns, int rows) {
+    int width = sheet.getWidth() / columns;
+    int height = sheet.getHeight() / rows;
+    for (int row = 0; row < rows; row++)
+      for (int column = 0; column < columns; column++)
+        add(name, row * columns + column, sheet.getSubimage(column * width, row * height, width, height));
+  }
+
+  /**
+   * Packs the images into as few pages as possible and writes {@code name.pack} plus one PNG per page into the directory.
+   */
+  public void write (File dir, String name) throws IOException {
+    List<Page> pages = pack();
+    PrintWriter pack = new PrintWriter(new FileWriter(new File(dir, name + ".pack")));
+    try {
+      for (int i = 0; i < pages.size(); i++) {
+        Page page = pages.get(i);
+        String file = pages.size() == 1 ? name + ".png" : name + (i + 1) + ".png";
+        ImageIO.write(page.render(), "png", new File(dir, file));
+
+        pack.print("\n");
+        pack.print(file + "\n");
+        pack.print("format: " + format + "\n");
+        pack.print("filter: " + minFilter + "," + magFilter + "\n");
+        pack.print("repeat: none\n");
+        for (Image image : page.images) {
+          int width = image.image.getWidth(), height = image.image.getHeight();
+          pack.print(image.name + "\n");
+          pack.print("  rotate: false\n");
+          pack.print("  xy: " + (image.x + image.padding) + ", " + (image.y + image.padding) + "\n");
+          pack.print("  size: " + width + ", " + height + "\n");
+          pack.print("  orig: " + width + ", " + height + "\n");
+          pack.print("  offset: 0, 0\n");
+          pack.print("  index: " + image.index + "\n");
+        }
+        System.out.println(file + ": " + page.width + "x" + page.height + ", " + page.images.size() + " regions");
+      }
+    } finally {
+      pack.close();
+    }
+  }
+
+  /**
+   * Writes a copy of an OBJ model with its texture coordinates moved into the region of a packed image. A model without
+   * texture coordinates samples the first texel of its texture, the copy gets one coordinate on the first texel of the
+   * region so it still looks the same. Must be called after {@link #write(File, String)}.
+   */
+  public void remapObj (File source, File target, String region) throws IOException {
+    Image image = find(region);
+    float u = (float)(image.x + image.padding) / image.page.width;
+    float v = (float)(image.y + image.padding) / image.page.height;
+    float width = (float)image.image.getWidth() / image.page.width;
+    float height = (float)image.image.getHeight() / image.page.height;
+
+    List<String> lines = new ArrayList<String>();
+    boolean hasUVs = false;
+    BufferedReader reader = new BufferedReader(new FileReader(source));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        lines.add(line);
+        if (line.startsWith("vt ")) hasUVs = true;
+      }
+    } finally {
+      reader.close();
+    }
+
+    PrintWriter writer = new PrintWriter(new FileWriter(target));
+    try {
+      boolean wroteUV = false;
+      for (String line : lines) {
+        if (line.startsWith("vt ")) {
+          String[] tokens = line.trim().split("[ ]+");
+          float s = Float.parseFloat(tokens[1]), t = Float.parseFloat(tokens[2]);
+          if (s < 0 || s > 1 || t < 0 || t > 1)
+            throw new IOException("Texture coordinates outside the image can't be packed: " + source);
+          writer.print("vt " + (u + s * width) + " " + (v + t * height) + "\n");
+        } else if (!hasUVs && line.startsWith("f ")) {
+          if (!wroteUV) {
+            writer.print("vt " + (u + 0.5f / image.page.width) + " " + (v + 0.5f / image.page.height) + "\n");
+            wroteUV = true;
+          }
+          writer.print(addFaceUVs(line) + "\n");
+        } else {
+          writer.print(line + "\n");
+        }
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * @return the face with every corner using texture coordinate 1, "f 1//1 2//2 3//3" becomes "f 1/1/1 2/1/2 3/1/3"
+   */
+  private static String addFaceUVs (String face) {
+    String[] tokens = face.trim().split("[ ]+");
+    StringBuilder builder = new StringBuilder("f");
+    for (int i = 1; i < tokens.length; i++) {
+      String[] parts = tokens[i].split("/");
+      builder.append(' ').append(parts[0]).append("/1");
+      if (parts.length > 2) builder.append('/').append(parts[2]);
+    }
+    return builder.toString();
+  }
+
+  private Image find (String name) {
+    for (Image image : images)
+      if (image.name.equals(name)) {
+        if (image.page == null) throw new IllegalStateException("Not packed yet: " + name);
+        return image;
+      }
+    throw new IllegalArgumentException("No image: " + name);
+  }
+
+  /**
+   * Shelf packing, tallest images first. Every page is shrunk to the smallest power of two size that still holds its
+   * images.
+   */
+  private List<Page> pack () {
+    List<Image> remaining = new ArrayList<Image>(images);
+    Collections.sort(remaining, new Comparator<Image>() {
+      @Override public int compare (Image a, Image b) {
+        int result = b.image.getHeight() - a.image.getHeight();
+        if (result == 0) result = b.image.getWidth() - a.image.getWidth();
+        return result;
+      }
+    });
+
+    List<Page> pages = new ArrayList<Page>();
+    while (!remaining.isEmpty()) {
+      Page page = null;
+      // The smallest page holding everything left, or a full page holding as much as fits.
+      for (int height = 64; height <= maxPageSize && page == null; height <<= 1) {
+        for (int width = height; width <= Math.min(height * 2, maxPageSize); width <<= 1) {
+          Page candidate = new Page(width, height);
+          if (candidate.place(remaining) == remaining.size()) {
+            page = candidate;
+            break;
+          }
+        }
+      }
+      if (page == null) {
+        page = new Page(maxPageSize, maxPageSize);
+        page.place(remaining);
+      }
+      for (Image image : page.images)
+        image.page = page;
+      remaining.removeAll(page.images);
+      pages.add(page);
+    }
+    return pages;
+  }
+
+  private static BufferedImage read (File dir, String name) throws IOException {
+    BufferedImage image = ImageIO.read(new File(dir, name));
+    if (image == null) throw new IOException("Unreadable image: " + name);
+    return image;
+  }
+
+  /**
+   * @return a white disc with a soft edge, tinted per ray when drawn
+   */
+  private static BufferedImage createRaySprite (int size) {
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setColor(Color.WHITE);
+    g.fillOval(1, 1, size - 2, size - 2);
+    g.dispose();
+    return image;
+  }
+
+  private static class Image {
+    final String name;
+    final int index;
+    final BufferedImage image;
+    final int padding;
+    /** the page and the top left of the padded image on it, once packed **/
+    Page page;
+    int x, y;
+
+    Image (String name, int index, BufferedImage image, int padding) {
+      this.name = name;
+      this.index = index;
+      this.image = image;
+      this.padding = padding;
+    }
+  }
+
+  private static class Page {
+    final int width, height;
+    final List<Image> images = new ArrayList<Image>();
+
+    Page (int width, int height) {
+      this.width = width;
+      this.height = height;
+    }
+
+    /**
+     * Places images in rows until one does not fit anymore.
+     * @return the number of images placed
+     */
+    int place (List<Image> candidates) {
+      images.clear();
+      int x = 0, y = 0, rowHeight = 0;
+      for (Image image : candidates) {
+        int w = image.image.getWidth() + image.padding * 2, h = image.image.getHeight() + image.padding * 2;
+        if (x + w > width) {
+          x = 0;
+          y += rowHeight;
+          rowHeight = 0;
+        }
+        if (y + h > height) break;
+        image.x = x;
+        image.y = y;
+        images.add(image);
+        x += w;
+        rowHeight = Math.max(rowHeight, h);
+      }
+      return images.size();
+    }
+
+    BufferedImage render () {
+      BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      for (Image image : images) {
+        BufferedImage source = image.image;
+        int w = source.getWidth(), h = source.getHeight(), padding = image.padding;
+        for (int py = -padding; py < h + padding; py++) {
+          for (int px = -padding; px < w + padding; px++) {
+            int sx = Math.max(0, Math.min(w - 1, px)), sy = Math.max(0, Math.min(h - 1, py));
+            page.setRGB(image.x + padding + px, image.y + padding + py, source.getRGB(sx, sy));
+          }
+        }
+      }
+      return page;
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.davidykay.shootout.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes simplified copies of OBJ models for drawing them far away. Vertices are clustered on a grid over the model's
+ * bounds and every cluster becomes one vertex at their average, triangles that collapse are dropped. Texture coordinates
+ * and normals stay those of the original corners. The grid is chosen so the triangle count comes closest to the asked for
+ * fraction of the original.
+ *
+ * Runs on the packed models, so run {@link AtlasPacker} first. Level n of {@code name.obj} is written to
+ * {@code name-lodn.obj} next to it.
+ *
+ * Usage: LodGenerator [--assets dir]
+ */
+public class LodGenerator {
+  /** finest grid tried, in cells along the longest side of the bounds **/
+  private static final int MAX_GRID = 64;
+
+  private final List<float[]> positions = new ArrayList<float[]>();
+  /** the lines before the faces other than positions, copied as they are **/
+  private final List<String> header = new ArrayList<String>();
+  /** the 0 based positions of every triangle's corners and the rest of each corner, like "/175/1" **/
+  private final List<int[]> triangles = new ArrayList<int[]>();
+  private final List<String[]> corners = new ArrayList<String[]>();
+  private final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+  private final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+
+  public static void main (String[] argv) throws IOException {
+    String assets = "../shootout-android/assets/data";
+    for (int i = 0; i < argv.length; i++) {
+      String arg = argv[i];
+      if (arg.equals("--assets"))
+        assets = argv[++i];
+      else
+        throw new IllegalArgumentException("Unknown argument: " + arg);
+    }
+    File dir = new File(new File(assets), "packed");
+
+    // Must match the levels the renderers load.
+    float[] fractions = {0.5f, 0.25f};
+    for (String name : new String[] {"ufo", "moon"}) {
+      LodGenerator generator = new LodGenerator(new File(dir, name + ".obj"));
+      for (int level = 1; level <= fractions.length; level++)
+        generator.write(new File(dir, name + "-lod" + level + ".obj"), fractions[level - 1]);
+    }
+  }
+
+  public LodGenerator (File source) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(source));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        String[] tokens = line.trim().split("[ ]+");
+        if (tokens[0].equals("v")) {
+          float[] position = {Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[3])};
+          for (int i = 0; i < 3; i++) {
+            min[i] = Math.min(min[i], position[i]);
+            max[i] = Math.max(max[i], position[i]);
+          }
+          positions.add(position);
+        } else if (tokens[0].equals("f")) {
+          // Polygons become fans.
+          for (int i = 3; i < tokens.length; i++)
+            addTriangle(tokens[1], tokens[i - 1], tokens[i]);
+        } else if (triangles.isEmpty()) {
+          header.add(line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    if (triangles.isEmpty()) throw new IOException("No faces: " + source);
+  }
+
+  private void addTriangle (String a, String b, String c) {
+    String[] corner = {a, b, c};
+    int[] triangle = new int[3];
+    for (int i = 0; i < 3; i++) {
+      int index = Integer.parseInt(corner[i].split("/")[0]);
+      triangle[i] = index < 0 ? positions.size() + index : index - 1;
+      int slash = corner[i].indexOf('/');
+      corner[i] = slash == -1 ? "" : corner[i].substring(slash);
+    }
+    triangles.add(triangle);
+    corners.add(corner);
+  }
+
+  /**
+   * Writes a copy with about the given fraction of the triangles.
+   */
+  public void write (File target, float fraction) throws IOException {
+    int wanted = Math.max(1, Math.round(triangles.size() * fraction));
+    int best = 1, bestCount = -1;
+    for (int grid = 1; grid <= MAX_GRID; grid++) {
+      int count = cluster(grid, null);
+      if (bestCount == -1 || Math.abs(count - wanted) < Math.abs(bestCount - wanted)) {
+        best = grid;
+        bestCount = count;
+      }
+    }
+
+    PrintWriter writer = new PrintWriter(new FileWriter(target));
+    try {
+      writer.print("# " + bestCount + " of " + triangles.size() + " faces, clustered on a grid of " + best + "\n");
+      cluster(best, writer);
+    } finally {
+      writer.close();
+    }
+    System.out.println(target.getName() + ": " + bestCount + " of " + triangles.size() + " faces");
+  }
+
+  /**
+   * Clusters the vertices on a grid with the given number of cells along the longest side.
+   * @param writer receives the simplified model, null to only count
+   * @return the number of triangles left
+   */
+  private int cluster (int grid, PrintWriter writer) {
+    float size = 0;
+    for (int i = 0; i < 3; i++)
+      size = Math.max(size, max[i] - min[i]);
+    float cell = size / grid;
+
+    // Cluster of every position and the sum of the positions in every cluster.
+    int[] clusterOf = new int[positions.size()];
+    Map<Long, Integer> clusters = new HashMap<Long, Integer>();
+    List<float[]> sums = new ArrayList<float[]>();
+    for (int i = 0; i < positions.size(); i++) {
+      float[] position = positions.get(i);
+      long key = 0;
+      for (int axis = 0; axis < 3; axis++) {
+        long cellIndex = Math.min(grid - 1, (long)((position[axis] - min[axis]) / cell));
+        key = key * (MAX_GRID + 1) + cellIndex;
+      }
+      Integer cluster = clusters.get(key);
+      if (cluster == null) {
+        cluster = sums.size();
+        clusters.put(key, cluster);
+        sums.add(new float[4]);
+      }
+      float[] sum = sums.get(cluster);
+      sum[0] += position[0];
+      sum[1] += position[1];
+      sum[2] += position[2];
+      sum[3]++;
+      clusterOf[i] = cluster;
+    }
+
+    List<Integer> kept = new ArrayList<Integer>();
+    Set<String> seen = new HashSet<String>();
+    for (int i = 0; i < triangles.size(); i++) {
+      int[] triangle = triangles.get(i);
+      int a = clusterOf[triangle[0]], b = clusterOf[triangle[1]], c = clusterOf[triangle[2]];
+      if (a == b || b == c || c == a) continue;
+      // The same triangle collapsed from several, keep one. Rotations of a triangle are the same triangle.
+      int first = Math.min(a, Math.min(b, c));
+      String key = first == a ? a + " " + b + " " + c : first == b ? b + " " + c + " " + a : c + " " + a + " " + b;
+      if (!seen.add(key)) continue;
+      kept.add(i);
+    }
+    if (writer == null) return kept.size();
+
+    for (String line : header)
+      if (!line.startsWith("#")) writer.print(line + "\n");
+    for (float[] sum : sums)
+      writer.print("v " + sum[0] / sum[3] + " " + sum[1] / sum[3] + " " + sum[2] / sum[3] + "\n");
+    for (int i : kept) {
+      int[] triangle = triangles.get(i);
+      String[] corner = corners.get(i);
+      writer.print("f");
+      for (int j = 0; j < 3; j++)
+        writer.print(" " + (clusterOf[triangle[j]] + 1) + corner[j]);
+      writer.print("\n");
+    }
+    return kept.size();
+  }
+}
@@ -0,0 +1,166 @@
+package com.davidykay.shootout.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts OBJ models into the binary mesh files the game loads without parsing text. The vertices are laid out the way
+ * {@code ModelLoaderOld} lays them out, position, then normal and texture coordinates if the model has them, but corners
+ * that share all three are written once and the triangles index them.
+ *
+ * A file is little endian: the magic "SOM1", flags (1 normals, 2 texture coordinates), the vertex count and the index
+ * count as ints, then the vertex floats and the index shorts. {@code MeshLoader} in the game reads it.
+ *
+ * Converts every model in the {@code packed} directory and the ones that are not packed, each next to its OBJ. Run it
+ * after {@link AtlasPacker} and {@link LodGenerator}.
+ *
+ * Usage: MeshConverter [--assets dir]
+ */
+public class MeshConverter {
+  /** must match the game's MeshLoader **/
+  private static final int MAGIC = 0x314d4f53;
+  private static final int NORMALS = 1;
+  private static final int TEXTURE_COORDINATES = 2;
+  private static final int HEADER_SIZE = 16;
+  /** models that are loaded from the assets directory itself **/
+  private static final String[] UNPACKED = {"block.obj"};
+
+  public static void main (String[] argv) throws IOException {
+    String assets = "../shootout-android/assets/data";
+    for (int i = 0; i < argv.length; i++) {
+      String arg = argv[i];
+      if (arg.equals("--assets"))
+        assets = argv[++i];
+      else
+        throw new IllegalArgumentException("Unknown argument: " + arg);
+    }
+    File dir = new File(assets);
+
+    List<File> sources = new ArrayList<File>();
+    for (String name : UNPACKED)
+      sources.add(new File(dir, name));
+    File[] packed = new File(dir, "packed").listFiles();
+    if (packed == null) throw new IOException("No packed assets, run AtlasPacker first.");
+    Arrays.sort(packed);
+    for (File file : packed)
+      if (file.getName().endsWith(".obj")) sources.add(file);
+
+    for (File source : sources) {
+      String name = source.getName();
+      convert(source, new File(source.getParentFile(), name.substring(0, name.length() - 4) + ".mesh"));
+    }
+  }
+
+  /**
+   * Writes the binary mesh of an OBJ model.
+   */
+  public static void convert (File source, File target) throws IOException {
+    List<float[]> positions = new ArrayList<float[]>();
+    List<float[]> normals = new ArrayList<float[]>();
+    List<float[]> uvs = new ArrayList<float[]>();
+    List<String> corners = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new FileReader(source));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        String[] tokens = line.trim().split("[ ]+");
+        if (tokens[0].equals("v"))
+          positions.add(parse(tokens, 3));
+        else if (tokens[0].equals("vn"))
+          normals.add(parse(tokens, 3));
+        else if (tokens[0].equals("vt"))
+          uvs.add(parse(tokens, 2));
+        else if (tokens[0].equals("f")) {
+          // Polygons become fans.
+          for (int i = 3; i < tokens.length; i++) {
+            corners.add(tokens[1]);
+            corners.add(tokens[i - 1]);
+            corners.add(tokens[i]);
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    if (corners.isEmpty()) throw new IOException("No faces: " + source);
+
+    int flags = (normals.isEmpty() ? 0 : NORMALS) | (uvs.isEmpty() ? 0 : TEXTURE_COORDINATES);
+    int vertexSize = 3 + (normals.isEmpty() ? 0 : 3) + (uvs.isEmpty() ? 0 : 2);
+
+    // One vertex per distinct combination of position, normal and texture coordinates.
+    Map<String, Integer> vertexOf = new HashMap<String, Integer>();
+    List<float[]> vertices = new ArrayList<float[]>();
+    short[] indices = new short[corners.size()];
+    for (int i = 0; i < corners.size(); i++) {
+      String[] parts = corners.get(i).split("/");
+      int position = index(parts, 0, positions.size());
+      int uv = uvs.isEmpty() ? -1 : index(parts, 1, uvs.size());
+      int normal = normals.isEmpty() ? -1 : index(parts, 2, normals.size());
+      String key = position + "/" + uv + "/" + normal;
+      Integer vertex = vertexOf.get(key);
+      if (vertex == null) {
+        float[] data = new float[vertexSize];
+        System.arraycopy(positions.get(position), 0, data, 0, 3);
+        int offset = 3;
+        if (normal != -1) {
+          System.arraycopy(normals.get(normal), 0, data, offset, 3);
+          offset += 3;
+        }
+        if (uv != -1) System.arraycopy(uvs.get(uv), 0, data, offset, 2);
+        vertex = vertices.size();
+        vertexOf.put(key, vertex);
+        vertices.add(data);
+      }
+      indices[i] = (short)(int)vertex;
+    }
+    if (vertices.size() > 0xffff) throw new IOException("More vertices than short indices can address: " + source);
+
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + vertices.size() * vertexSize * 4 + indices.length * 2);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC);
+    buffer.putInt(flags);
+    buffer.putInt(vertices.size());
+    buffer.putInt(indices.length);
+    for (float[] vertex : vertices)
+      for (float value : vertex)
+        buffer.putFloat(value);
+    for (short index : indices)
+      buffer.putShort(index);
+
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+    try {
+      out.write(buffer.array());
+    } finally {
+      out.close();
+    }
+    System.out.println(target.getName() + ": " + vertices.size() + " vertices, " + indices.length / 3 + " triangles, "
+      + buffer.capacity() + " bytes, OBJ " + source.length() + " bytes");
+  }
+
+  private static float[] parse (String[] tokens, int count) {
+    float[] values = new float[count];
+    for (int i = 0; i < count; i++)
+      values[i] = Float.parseFloat(tokens[i + 1]);
+    return values;
+  }
+
+  /**
+   * @return the 0 based index of a part of a corner, OBJ indices start at 1 or count back from the end if negative
+   */
+  private static int index (String[] parts, int part, int size) {
+    if (part >= parts.length || parts[part].length() == 0) return 0;
+    int index = Integer.parseInt(parts[part]);
+    return index < 0 ? size + index : index - 1;
+  }
+}
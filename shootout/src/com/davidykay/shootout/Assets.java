@@ -0,0 +1,701 @@
+package com.davidykay.shootout;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Blending;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.Texture.TextureWrap;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.BitmapFontData;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g3d.loaders.ModelLoaderOld;
+import com.badlogic.gdx.graphics.glutils.FileTextureData;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * The assets of all screens, shared and reference counted. Every {@link #load(String, Class, boolean)} takes a reference to
+ * the asset with that path, type and parameters, and every {@link #unload(String, Class, boolean)} gives one back. The
+ * asset is loaded with the first reference and disposed with the last, so screens that use the same atlas or font share
+ * one copy, and an asset something else still holds survives a screen switch.
+ *
+ * Loading happens in the background while the current screen keeps drawing. Reading and decoding files, pack files, font
+ * descriptions, images and meshes, runs on worker threads. What needs the GL context, uploading textures and creating
+ * meshes, runs on the render thread in {@link #update(long)}, a few steps per frame within a time budget, one texture page
+ * or mesh a step.
+ *
+ * Loads texture atlases, bitmap fonts, meshes and sounds, by internal path. Atlas pages and font images are kept as managed
+ * textures, so they are reloaded from their files after the context was lost like textures the library loads itself. The
+ * memory the loaded assets take is estimated from their sizes and formats, see {@link #getGpuBytes()}.
+ */
+public class Assets {
+  private static final String TAG = "Assets";
+
+  /** pixmap blending is global, format conversions on different workers must not interleave **/
+  private static final Object BLENDING_LOCK = new Object();
+
+  private final ExecutorService workers;
+  /** every loaded or queued asset by key **/
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  /** the queued assets in the order they were queued **/
+  private final List<Entry> queue = new ArrayList<Entry>();
+  /** assets queued and finished since the queue was last empty **/
+  private int queued;
+  private int finished;
+  /** when the queue was last empty and how long the render thread spent on it since **/
+  private long loadStart;
+  private long syncNanos;
+  /** estimated bytes the loaded assets take in memory and in the GL driver **/
+  private long cpuBytes;
+  private long gpuBytes;
+
+  /**
+   * @param threads worker threads that read and decode files
+   */
+  public Assets (int threads) {
+    workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private int count;
+
+      @Override public Thread newThread (Runnable runnable) {
+        Thread thread = new Thread(runnable, "Asset loader " + ++count);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Takes a reference to an asset that is not flipped.
+   * @see #load(String, Class, boolean)
+   */
+  public void load (String path, Class<?> type) {
+    load(path, type, false);
+  }
+
+  /**
+   * Takes a reference to an asset. If it is neither loaded nor queued yet it is queued, and its file starts loading on a
+   * worker right away.
+   * @param type TextureAtlas, BitmapFont, Mesh or Sound
+   * @param flip whether the regions of an atlas or font are flipped for a y down projection, false for other types
+   */
+  public void load (String path, Class<?> type, boolean flip) {
+    String key = key(path, type, flip);
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      entry.references++;
+      return;
+    }
+
+    final Task task;
+    if (type == TextureAtlas.class)
+      task = new AtlasTask(path, flip);
+    else if (type == BitmapFont.class)
+      task = new FontTask(path, flip);
+    else if (flip)
+      throw new IllegalArgumentException("Only atlases and fonts can be flipped: " + path);
+    else if (type == Mesh.class)
+      task = new MeshTask(path);
+    else if (type == Sound.class)
+      task = new SoundTask(path);
+    else
+      throw new IllegalArgumentException("Can't load assets of type " + type.getName() + ": " + path);
+
+    if (queue.isEmpty()) {
+      loadStart = System.nanoTime();
+      syncNanos = 0;
+    }
+    entry = new Entry(task);
+    entries.put(key, entry);
+    queue.add(entry);
+    queued++;
+    workers.execute(new Runnable() {
+      @Override public void run () {
+        task.decode();
+      }
+    });
+  }
+
+  /**
+   * Finishes queued assets whose files are decoded, on the render thread. Does at least one step and then more until the
+   * budget is spent.
+   * @param budgetNanos nanoseconds the steps may take
+   * @return whether all queued assets are loaded
+   */
+  public boolean update (long budgetNanos) {
+    long start = System.nanoTime();
+    int i = 0;
+    while (i < queue.size()) {
+      Entry entry = queue.get(i);
+      Task task = entry.task;
+      if (!task.decoded) {
+        i++;
+        continue;
+      }
+      if (task.failure != null) throw new GdxRuntimeException("Couldn't load " + task.path, task.failure);
+
+      boolean done = task.upload();
+      if (done) {
+        queue.remove(i);
+        entry.task = null;
+        entry.asset = task.asset;
+        entry.cpuBytes = task.cpuBytes;
+        entry.gpuBytes = task.gpuBytes;
+        cpuBytes += entry.cpuBytes;
+        gpuBytes += entry.gpuBytes;
+        finished++;
+      }
+      if (System.nanoTime() - start >= budgetNanos) break;
+    }
+    syncNanos += System.nanoTime() - start;
+
+    if (!queue.isEmpty()) return false;
+    if (queued > 0) {
+      Gdx.app.log(TAG, "loaded " + queued + " assets in " + (System.nanoTime() - loadStart) / 1000000 + " ms, "
+        + syncNanos / 1000000 + " ms of it on the render thread, " + this);
+      queued = 0;
+      finished = 0;
+    }
+    return true;
+  }
+
+  /**
+   * Blocks until everything queued is loaded.
+   */
+  public void finishLoading () {
+    boolean interrupted = false;
+    while (!update(Long.MAX_VALUE)) {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * @return the part of the assets queued since the queue was last empty that are loaded, 1 if there are none
+   */
+  public float getProgress () {
+    return queued == 0 ? 1 : finished / (float)queued;
+  }
+
+  /**
+   * @return whether everything queued is loaded
+   */
+  public boolean isFinished () {
+    return queue.isEmpty();
+  }
+
+  /**
+   * @return whether the asset is loaded
+   */
+  public boolean isLoaded (String path, Class<?> type, boolean flip) {
+    Entry entry = entries.get(key(path, type, flip));
+    return entry != null && entry.task == null;
+  }
+
+  /**
+   * @return a loaded asset that is not flipped
+   */
+  public <T> T get (String path, Class<T> type) {
+    return get(path, type, false);
+  }
+
+  /**
+   * @return a loaded asset, the caller must hold a reference to it
+   */
+  public <T> T get (String path, Class<T> type, boolean flip) {
+    Entry entry = entries.get(key(path, type, flip));
+    if (entry == null || entry.task != null) throw new GdxRuntimeException("Asset not loaded: " + path);
+    return type.cast(entry.asset);
+  }
+
+  /**
+   * Gives back a reference to an asset that is not flipped.
+   * @see #unload(String, Class, boolean)
+   */
+  public void unload (String path, Class<?> type) {
+    unload(path, type, false);
+  }
+
+  /**
+   * Gives back a reference to an asset. The last one disposes the asset, or drops it once its worker is done with it if it
+   * is still queued.
+   */
+  public void unload (String path, Class<?> type, boolean flip) {
+    String key = key(path, type, flip);
+    Entry entry = entries.get(key);
+    if (entry == null) throw new GdxRuntimeException("Asset not loaded: " + path);
+    if (--entry.references > 0) return;
+
+    entries.remove(key);
+    if (entry.task != null) {
+      entry.task.cancel();
+      queue.remove(entry);
+      queued--;
+      return;
+    }
+    ((Disposable)entry.asset).dispose();
+    cpuBytes -= entry.cpuBytes;
+    gpuBytes -= entry.gpuBytes;
+  }
+
+  /**
+   * @return the estimated bytes the loaded assets take in memory, not counting the decoded samples of sounds the audio
+   *         backend keeps
+   */
+  public long getCpuBytes () {
+    return cpuBytes;
+  }
+
+  /**
+   * @return the estimated bytes the textures and vertex buffers of the loaded assets take in the GL driver
+   */
+  public long getGpuBytes () {
+    return gpuBytes;
+  }
+
+  /**
+   * Stops the workers and disposes all assets, whether still referenced or not.
+   */
+  public void dispose () {
+    workers.shutdown();
+    for (Entry entry : entries.values()) {
+      if (entry.task != null)
+        entry.task.cancel();
+      else
+        ((Disposable)entry.asset).dispose();
+    }
+    entries.clear();
+    queue.clear();
+    cpuBytes = 0;
+    gpuBytes = 0;
+  }
+
+  /**
+   * @return how many assets are loaded or queued and the memory the loaded ones take
+   */
+  @Override public String toString () {
+    return entries.size() + " assets, " + cpuBytes / 1024 + " KB in memory, " + gpuBytes / 1024 + " KB on the GPU";
+  }
+
+  private static String key (String path, Class<?> type, boolean flip) {
+    return type.getName() + ":" + path + (flip ? ":flip" : "");
+  }
+
+  /**
+   * An asset and the references to it.
+   */
+  private static class Entry {
+    int references = 1;
+    /** the load in progress, null once the asset is loaded **/
+    Task task;
+    Object asset;
+    int cpuBytes;
+    int gpuBytes;
+
+    Entry (Task task) {
+      this.task = task;
+    }
+  }
+
+  ////////////////////////////////////////
+  // Tasks
+
+  /**
+   * Loading one asset, in a part run by a worker and a part run by the render thread.
+   */
+  private abstract static class Task {
+    final String path;
+    /** set by the worker when it is done, the fields it wrote are visible once this is **/
+    volatile boolean decoded;
+    volatile Throwable failure;
+    /** set by the render thread when the asset is no longer wanted, whoever comes second discards **/
+    private volatile boolean cancelled;
+    /** the loaded asset and its estimated size, set by the last upload step **/
+    Object asset;
+    int cpuBytes;
+    int gpuBytes;
+
+    Task (String path) {
+      this.path = path;
+    }
+
+    /**
+     * Runs on a worker.
+     */
+    void decode () {
+      try {
+        if (!cancelled) decodeAsync();
+      } catch (Throwable ex) {
+        failure = ex;
+      }
+      synchronized (this) {
+        decoded = true;
+        if (cancelled) discard();
+      }
+    }
+
+    /**
+     * Runs on the render thread, frees what was loaded so far now or once the worker is done.
+     */
+    synchronized void cancel () {
+      cancelled = true;
+      if (decoded) discard();
+    }
+
+    /**
+     * Reads and decodes the files, must not touch GL state.
+     */
+    abstract void decodeAsync () throws Exception;
+
+    /**
+     * Does the next step of the work on the render thread.
+     * @return whether the asset is done
+     */
+    abstract boolean upload ();
+
+    /**
+     * Frees what was loaded so far of an asset that is no longer wanted.
+     */
+    void discard () {
+    }
+  }
+
+  /**
+   * Decodes the images of the pages on a worker and uploads one page a step. The pack file is parsed here rather than by
+   * the atlas, which would load the page images itself.
+   */
+  private static class AtlasTask extends Task {
+    private final boolean flip;
+    private final List<Page> pages = new ArrayList<Page>();
+    private final List<Region> regions = new ArrayList<Region>();
+    private int uploaded;
+
+    AtlasTask (String path, boolean flip) {
+      super(path);
+      this.flip = flip;
+    }
+
+    @Override void decodeAsync () throws IOException {
+      FileHandle packFile = Gdx.files.internal(path);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(packFile.read()), 256);
+      try {
+        Page page = null;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          if (line.trim().length() == 0) {
+            page = null;
+          } else if (page == null) {
+            page = new Page();
+            page.file = packFile.parent().child(line.trim());
+            page.format = Format.valueOf(readValue(reader));
+            String[] filter = readValue(reader).split(",");
+            page.minFilter = TextureFilter.valueOf(filter[0].trim());
+            page.magFilter = TextureFilter.valueOf(filter[1].trim());
+            String repeat = readValue(reader);
+            page.uWrap = repeat.indexOf('x') != -1 ? TextureWrap.Repeat : TextureWrap.ClampToEdge;
+            page.vWrap = repeat.indexOf('y') != -1 ? TextureWrap.Repeat : TextureWrap.ClampToEdge;
+            pages.add(page);
+          } else {
+            Region region = new Region();
+            region.page = page;
+            region.name = line.trim();
+            region.rotate = Boolean.valueOf(readValue(reader));
+            int[] xy = readTuple(reader), size = readTuple(reader), orig = readTuple(reader), offset = readTuple(reader);
+            region.left = xy[0];
+            region.top = xy[1];
+            region.width = size[0];
+            region.height = size[1];
+            region.originalWidth = orig[0];
+            region.originalHeight = orig[1];
+            region.offsetX = offset[0];
+            region.offsetY = offset[1];
+            region.index = Integer.parseInt(readValue(reader));
+            regions.add(region);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      // Flipbook frames are found in index order, regions without one go last.
+      Collections.sort(regions, new Comparator<Region>() {
+        @Override public int compare (Region a, Region b) {
+          long indexA = a.index == -1 ? Integer.MAX_VALUE : a.index, indexB = b.index == -1 ? Integer.MAX_VALUE : b.index;
+          return indexA < indexB ? -1 : indexA > indexB ? 1 : 0;
+        }
+      });
+
+      for (Page page : pages)
+        page.pixmap = decodeImage(page.file, page.format);
+    }
+
+    @Override boolean upload () {
+      if (uploaded < pages.size()) {
+        Page page = pages.get(uploaded++);
+        page.texture = newTexture(page.file, page.pixmap, page.minFilter.isMipMap());
+        page.pixmap = null;
+        page.texture.setFilter(page.minFilter, page.magFilter);
+        page.texture.setWrap(page.uWrap, page.vWrap);
+        return false;
+      }
+
+      TextureAtlas atlas = new TextureAtlas();
+      for (Region region : regions) {
+        AtlasRegion atlasRegion = atlas.addRegion(region.name, region.page.texture, region.left, region.top,
+                                                  region.width, region.height);
+        atlasRegion.index = region.index;
+        atlasRegion.offsetX = region.offsetX;
+        atlasRegion.offsetY = region.offsetY;
+        atlasRegion.originalWidth = region.originalWidth;
+        atlasRegion.originalHeight = region.originalHeight;
+        atlasRegion.rotate = region.rotate;
+        if (flip) atlasRegion.flip(false, true);
+      }
+      // Pages without regions are not owned by the atlas.
+      for (Page page : pages) {
+        if (hasRegions(page))
+          gpuBytes += getBytes(page.texture);
+        else
+          page.texture.dispose();
+      }
+      asset = atlas;
+      return true;
+    }
+
+    private boolean hasRegions (Page page) {
+      for (Region region : regions)
+        if (region.page == page) return true;
+      return false;
+    }
+
+    @Override void discard () {
+      for (Page page : pages) {
+        if (page.pixmap != null) page.pixmap.dispose();
+        if (page.texture != null) page.texture.dispose();
+      }
+    }
+
+    private static String readValue (BufferedReader reader) throws IOException {
+      String line = reader.readLine();
+      if (line == null) throw new IOException("Pack file ends early.");
+      int colon = line.indexOf(':');
+      if (colon == -1) throw new IOException("Invalid line in pack file: " + line);
+      return line.substring(colon + 1).trim();
+    }
+
+    private static int[] readTuple (BufferedReader reader) throws IOException {
+      String[] values = readValue(reader).split(",");
+      if (values.length != 2) throw new IOException("Invalid tuple in pack file: " + values.length + " values");
+      return new int[] {Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim())};
+    }
+
+    private static class Page {
+      FileHandle file;
+      Format format;
+      TextureFilter minFilter;
+      TextureFilter magFilter;
+      TextureWrap uWrap;
+      TextureWrap vWrap;
+      Pixmap pixmap;
+      Texture texture;
+    }
+
+    private static class Region {
+      Page page;
+      String name;
+      boolean rotate;
+      int left;
+      int top;
+      int width;
+      int height;
+      int originalWidth;
+      int originalHeight;
+      float offsetX;
+      float offsetY;
+      int index;
+    }
+  }
+
+  /**
+   * Parses the font description and decodes its image on a worker, uploads the image in one step.
+   */
+  private static class FontTask extends Task {
+    private final boolean flip;
+    private BitmapFontData data;
+    private FileHandle imageFile;
+    private Pixmap pixmap;
+
+    FontTask (String path, boolean flip) {
+      super(path);
+      this.flip = flip;
+    }
+
+    @Override void decodeAsync () {
+      data = new BitmapFontData(Gdx.files.internal(path), flip);
+      imageFile = Gdx.files.internal(data.getImageFile());
+      pixmap = decodeImage(imageFile, null);
+    }
+
+    @Override boolean upload () {
+      Texture texture = newTexture(imageFile, pixmap, false);
+      pixmap = null;
+      asset = new BitmapFont(data, new TextureRegion(texture), true);
+      gpuBytes = getBytes(texture);
+      return true;
+    }
+
+    @Override void discard () {
+      if (pixmap != null) pixmap.dispose();
+    }
+  }
+
+  /**
+   * Reads a binary mesh on a worker and creates it in one step. A model without a binary file is parsed from its OBJ in
+   * the step, the OBJ loader creates the mesh as it parses.
+   */
+  private static class MeshTask extends Task {
+    private ByteBuffer buffer;
+
+    MeshTask (String path) {
+      super(path);
+    }
+
+    @Override void decodeAsync () throws IOException {
+      FileHandle file = Gdx.files.internal(path + MeshLoader.BINARY);
+      if (!Renderer.BINARY_MESHES || !file.exists()) return;
+      InputStream in = file.read();
+      try {
+        buffer = MeshLoader.read(in, null);
+      } finally {
+        in.close();
+      }
+    }
+
+    @Override boolean upload () {
+      Mesh mesh;
+      if (buffer != null) {
+        mesh = MeshLoader.create(buffer);
+        buffer = null;
+      } else {
+        InputStream in = Gdx.files.internal(path + MeshLoader.OBJ).read();
+        try {
+          mesh = ModelLoaderOld.loadObj(in);
+        } finally {
+          try {
+            in.close();
+          } catch (IOException ignored) {
+          }
+        }
+        if (mesh == null) throw new GdxRuntimeException("Couldn't load " + path + MeshLoader.OBJ);
+      }
+      // The mesh keeps a copy of its buffers to restore them after the context was lost.
+      gpuBytes = mesh.getNumVertices() * mesh.getVertexSize() + mesh.getNumIndices() * 2;
+      cpuBytes = gpuBytes;
+      asset = mesh;
+      return true;
+    }
+  }
+
+  /**
+   * Creates the sound on a worker, the backends decode or queue it there without touching GL state. Only the file size is
+   * counted, the decoded samples are kept by the audio backend.
+   */
+  private static class SoundTask extends Task {
+    private Sound sound;
+
+    SoundTask (String path) {
+      super(path);
+    }
+
+    @Override void decodeAsync () {
+      FileHandle file = Gdx.files.internal(path);
+      sound = Gdx.audio.newSound(file);
+      cpuBytes = (int)file.length();
+    }
+
+    @Override boolean upload () {
+      asset = sound;
+      return true;
+    }
+
+    @Override void discard () {
+      if (sound != null) sound.dispose();
+    }
+  }
+
+  ////////////////////////////////////////
+  // Utility
+
+  /**
+   * Decodes an image and converts it to the format it is uploaded in, so the upload does not have to.
+   * @param format the format of the texture, null keeps the format of the file
+   */
+  private static Pixmap decodeImage (FileHandle file, Format format) {
+    Pixmap pixmap = new Pixmap(file);
+    if (format == null || pixmap.getFormat() == format) return pixmap;
+    Pixmap converted = new Pixmap(pixmap.getWidth(), pixmap.getHeight(), format);
+    synchronized (BLENDING_LOCK) {
+      Blending blending = Pixmap.getBlending();
+      Pixmap.setBlending(Blending.None);
+      converted.drawPixmap(pixmap, 0, 0, 0, 0, pixmap.getWidth(), pixmap.getHeight());
+      Pixmap.setBlending(blending);
+    }
+    pixmap.dispose();
+    return converted;
+  }
+
+  /**
+   * @return the estimated bytes a texture takes in the GL driver, a third more with mipmaps
+   */
+  private static int getBytes (Texture texture) {
+    TextureData data = texture.getTextureData();
+    int bytes = texture.getWidth() * texture.getHeight() * getBytesPerPixel(data.getFormat());
+    return data.useMipMaps() ? bytes * 4 / 3 : bytes;
+  }
+
+  private static int getBytesPerPixel (Format format) {
+    switch (format) {
+    case Alpha:
+      return 1;
+    case LuminanceAlpha:
+    case RGB565:
+    case RGBA4444:
+      return 2;
+    case RGB888:
+      return 3;
+    default:
+      return 4;
+    }
+  }
+
+  /**
+   * @return a managed texture of a decoded image, reloaded from the file after the context was lost
+   */
+  private static Texture newTexture (FileHandle file, Pixmap pixmap, boolean useMipMaps) {
+    return new Texture(new FileTextureData(file, pixmap, pixmap.getFormat(), useMipMaps));
+  }
+}
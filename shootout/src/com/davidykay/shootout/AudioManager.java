@@ -0,0 +1,194 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.audio.Sound;
+
+/**
+ * Plays sound effects within a fixed budget of voices. Events only queue a request, {@link #update(float)} plays them once
+ * per frame: requests for the same sound in one frame become a single voice, a sound is not retriggered before its
+ * minimum interval is over, at most its cap of voices plays at once, and when every voice is taken a request steals the
+ * voices of a lower priority sound or is dropped. Higher priorities are served first.
+ *
+ * A {@link Sound} does not say how long it plays or give a handle to a single playing instance, so each sound is added
+ * with its length and a voice counts as taken for that long. Stealing stops the victim sound, which ends all of its
+ * voices. Everything has to be called from the render thread.
+ */
+public class AudioManager {
+  private final int voices;
+
+  /** the added sounds and their settings, by id **/
+  private final Sound[] sounds;
+  private final float[] lengths;
+  private final int[] priorities;
+  private final int[] caps;
+  private final float[] minIntervals;
+  private int soundCount;
+  /** sound ids by descending priority **/
+  private final int[] order;
+
+  /** requests queued since the last update and the time each sound last started, by id **/
+  private final int[] pending;
+  private final float[] lastPlayed;
+
+  /** the playing voices, the sound and the time it ends **/
+  private final int[] voiceSounds;
+  private final float[] voiceEnds;
+  private int activeVoices;
+
+  /** seconds since the manager was created **/
+  private float time;
+
+  /** voices started, requests dropped and voices stopped for a higher priority, since creation **/
+  private int played;
+  private int dropped;
+  private int stolen;
+
+  /**
+   * @param voices the most sounds playing at once
+   * @param maxSounds the most sounds that can be added
+   */
+  public AudioManager (int voices, int maxSounds) {
+    if (voices < 1) throw new IllegalArgumentException("Need at least one voice.");
+    this.voices = voices;
+    sounds = new Sound[maxSounds];
+    lengths = new float[maxSounds];
+    priorities = new int[maxSounds];
+    caps = new int[maxSounds];
+    minIntervals = new float[maxSounds];
+    order = new int[maxSounds];
+    pending = new int[maxSounds];
+    lastPlayed = new float[maxSounds];
+    voiceSounds = new int[voices];
+    voiceEnds = new float[voices];
+  }
+
+  /**
+   * Adds a sound, it stays owned by the caller.
+   * @param length seconds the sound plays
+   * @param priority higher priorities steal the voices of lower ones
+   * @param cap the most voices of this sound playing at once
+   * @param minInterval the fewest seconds between two starts of this sound
+   * @return the id to request the sound with
+   */
+  public int add (Sound sound, float length, int priority, int cap, float minInterval) {
+    if (soundCount == sounds.length)
+      throw new IllegalStateException("No room for more than " + sounds.length + " sounds.");
+    int id = soundCount++;
+    sounds[id] = sound;
+    lengths[id] = length;
+    priorities[id] = priority;
+    caps[id] = cap;
+    minIntervals[id] = minInterval;
+    lastPlayed[id] = Float.NEGATIVE_INFINITY;
+
+    // Insertion sort, sounds of the same priority keep the order they were added in.
+    int i = id;
+    for (; i > 0 && priorities[order[i - 1]] < priority; i--)
+      order[i] = order[i - 1];
+    order[i] = id;
+    return id;
+  }
+
+  /**
+   * Queues a sound to start with the next {@link #update(float)}.
+   */
+  public void request (int sound) {
+    pending[sound]++;
+  }
+
+  /**
+   * Queues a sound several times, like for the events a simulation tick counted.
+   */
+  public void request (int sound, int count) {
+    if (count > 0) pending[sound] += count;
+  }
+
+  /**
+   * Frees the voices that finished and plays the queued requests, once per frame.
+   * @param delta seconds since the last update
+   */
+  public void update (float delta) {
+    time += delta;
+    for (int i = activeVoices - 1; i >= 0; i--)
+      if (voiceEnds[i] <= time) removeVoice(i);
+
+    for (int i = 0; i < soundCount; i++) {
+      int sound = order[i];
+      int requests = pending[sound];
+      if (requests == 0) continue;
+      pending[sound] = 0;
+      // The same sound started twice in one frame only plays louder.
+      dropped += requests - 1;
+      if (time - lastPlayed[sound] < minIntervals[sound] || getVoices(sound) >= caps[sound]
+        || activeVoices == voices && !steal(priorities[sound])) {
+        dropped++;
+        continue;
+      }
+      sounds[sound].play();
+      voiceSounds[activeVoices] = sound;
+      voiceEnds[activeVoices] = time + lengths[sound];
+      activeVoices++;
+      lastPlayed[sound] = time;
+      played++;
+    }
+  }
+
+  /**
+   * Stops the lowest priority sound that is playing, if it is below the priority.
+   * @return whether voices were freed
+   */
+  private boolean steal (int priority) {
+    int victim = -1;
+    for (int i = 0; i < activeVoices; i++) {
+      int sound = voiceSounds[i];
+      if (priorities[sound] < priority && (victim == -1 || priorities[sound] < priorities[victim])) victim = sound;
+    }
+    if (victim == -1) return false;
+    sounds[victim].stop();
+    for (int i = activeVoices - 1; i >= 0; i--) {
+      if (voiceSounds[i] == victim) {
+        removeVoice(i);
+        stolen++;
+      }
+    }
+    return true;
+  }
+
+  private void removeVoice (int index) {
+    activeVoices--;
+    voiceSounds[index] = voiceSounds[activeVoices];
+    voiceEnds[index] = voiceEnds[activeVoices];
+  }
+
+  /**
+   * @return the voices of a sound that are playing
+   */
+  public int getVoices (int sound) {
+    int count = 0;
+    for (int i = 0; i < activeVoices; i++)
+      if (voiceSounds[i] == sound) count++;
+    return count;
+  }
+
+  public int getActiveVoices () {
+    return activeVoices;
+  }
+
+  public int getPlayed () {
+    return played;
+  }
+
+  public int getDropped () {
+    return dropped;
+  }
+
+  public int getStolen () {
+    return stolen;
+  }
+
+  /**
+   * @return the voices playing and the counters
+   */
+  @Override public String toString () {
+    return activeVoices + " of " + voices + " voices, played: " + played + " dropped: " + dropped + " stolen: " + stolen;
+  }
+}
@@ -0,0 +1,151 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Draws tinted atlas regions as quads facing the camera, all written into one streaming vertex buffer. As long as every
+ * region comes from the same atlas page a whole frame of effects is a single draw call. A region from another page or a
+ * full buffer flushes early.
+ */
+public class BillboardBatch {
+  /** position, packed color and texture coordinates **/
+  private static final int VERTEX_SIZE = 3 + 1 + 2;
+
+  private final Mesh mesh;
+  private final float[] vertices;
+  private final int maxSprites;
+  private int sprites;
+
+  /** camera right and up in world space, scaled per sprite **/
+  private final Vector3 right = new Vector3();
+  private final Vector3 up = new Vector3();
+  /** page of the regions in the buffer **/
+  private Texture texture;
+  /** shader of the current batch, null on GL10 **/
+  private ShaderProgram shader;
+  /** draw calls since the last {@link #begin(Camera, ShaderProgram)} **/
+  private int drawCalls;
+
+  public BillboardBatch (int maxSprites) {
+    this.maxSprites = maxSprites;
+    mesh = new Mesh(false, maxSprites * 4, maxSprites * 6,
+                    new VertexAttribute(Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
+                    new VertexAttribute(Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE),
+                    new VertexAttribute(Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"));
+    vertices = new float[maxSprites * 4 * VERTEX_SIZE];
+
+    short[] indices = new short[maxSprites * 6];
+    for (int i = 0, j = 0; i < indices.length; i += 6, j += 4) {
+      indices[i] = (short)j;
+      indices[i + 1] = (short)(j + 1);
+      indices[i + 2] = (short)(j + 2);
+      indices[i + 3] = (short)(j + 2);
+      indices[i + 4] = (short)(j + 3);
+      indices[i + 5] = (short)j;
+    }
+    mesh.setIndices(indices);
+  }
+
+  /**
+   * Starts a batch facing the camera. The camera must be up to date.
+   * @param shader the bound shader to draw with on GL20, null to draw with the fixed function pipeline
+   */
+  public void begin (Camera camera, ShaderProgram shader) {
+    this.shader = shader;
+    right.set(camera.direction).crs(camera.up).nor();
+    up.set(right).crs(camera.direction).nor();
+    sprites = 0;
+    texture = null;
+    drawCalls = 0;
+  }
+
+  /**
+   * Adds a square centered on the given position.
+   * @param halfSize distance from the center to the edges
+   * @param color tint packed with {@link com.badlogic.gdx.graphics.Color#toFloatBits(float, float, float, float)}
+   */
+  public void draw (TextureRegion region, float x, float y, float z, float halfSize, float color) {
+    if (region.getTexture() != texture) {
+      flush();
+      texture = region.getTexture();
+    } else if (sprites == maxSprites) {
+      flush();
+    }
+
+    final float rx = right.x * halfSize, ry = right.y * halfSize, rz = right.z * halfSize;
+    final float ux = up.x * halfSize, uy = up.y * halfSize, uz = up.z * halfSize;
+    final float u = region.getU(), v = region.getV(), u2 = region.getU2(), v2 = region.getV2();
+    final float[] vertices = this.vertices;
+    int idx = sprites * 4 * VERTEX_SIZE;
+
+    // Top right, top left, bottom left, bottom right. The image's top is at v.
+    vertices[idx++] = x + rx + ux;
+    vertices[idx++] = y + ry + uy;
+    vertices[idx++] = z + rz + uz;
+    vertices[idx++] = color;
+    vertices[idx++] = u2;
+    vertices[idx++] = v;
+
+    vertices[idx++] = x - rx + ux;
+    vertices[idx++] = y - ry + uy;
+    vertices[idx++] = z - rz + uz;
+    vertices[idx++] = color;
+    vertices[idx++] = u;
+    vertices[idx++] = v;
+
+    vertices[idx++] = x - rx - ux;
+    vertices[idx++] = y - ry - uy;
+    vertices[idx++] = z - rz - uz;
+    vertices[idx++] = color;
+    vertices[idx++] = u;
+    vertices[idx++] = v2;
+
+    vertices[idx++] = x + rx - ux;
+    vertices[idx++] = y + ry - uy;
+    vertices[idx++] = z + rz - uz;
+    vertices[idx++] = color;
+    vertices[idx++] = u2;
+    vertices[idx++] = v2;
+
+    sprites++;
+  }
+
+  /**
+   * Draws everything added since the last flush. Binds the atlas page, blending and depth state are up to the caller.
+   */
+  public void end () {
+    flush();
+    shader = null;
+  }
+
+  /**
+   * @return draw calls of the current or last batch
+   */
+  public int getDrawCalls () {
+    return drawCalls;
+  }
+
+  private void flush () {
+    if (sprites == 0) return;
+    texture.bind();
+    mesh.setVertices(vertices, 0, sprites * 4 * VERTEX_SIZE);
+    if (shader != null)
+      mesh.render(shader, GL10.GL_TRIANGLES, 0, sprites * 6);
+    else
+      mesh.render(GL10.GL_TRIANGLES, 0, sprites * 6);
+    sprites = 0;
+    drawCalls++;
+  }
+
+  public void dispose () {
+    mesh.dispose();
+  }
+}
@@ -0,0 +1,179 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
+
+/**
+ * Renders the scene at a fraction of the screen resolution and scales it up, so devices that cannot fill all their pixels
+ * in time still hold the frame rate. Once a second the measured frame time is compared with the target: a slow second
+ * lowers the scale by about the share of pixels that has to go, a second where every frame made it raises it a step.
+ *
+ * On GL20 the scene goes into a frame buffer object. GL10 has none, there the scene is drawn into the corner of the back
+ * buffer and copied into a texture before it is scaled up over the whole screen. At full scale both draw straight to the
+ * screen and {@link #end()} and {@link #draw(SpriteBatch)} do nothing.
+ */
+public class DynamicResolution {
+  /** seconds between adjustments **/
+  private static final float INTERVAL = 1;
+  /** part of the target a frame may take longer and still count as on time, vsync jitters **/
+  private static final float TOLERANCE = 0.1f;
+  /** scale added after a second where every frame was on time **/
+  private static final float STEP = 0.05f;
+
+  private final float targetFrameTime;
+  private final float minScale;
+  private final float maxScale;
+  private float scale;
+
+  /** frame times of the current interval **/
+  private float time;
+  private int frames;
+  private float slowest;
+
+  /** the offscreen target, null until the first frame and after a resize **/
+  private FrameBuffer frameBuffer;
+  private Texture texture;
+  private final TextureRegion region = new TextureRegion();
+  private final Matrix4 projection = new Matrix4();
+  /** the screen size the target was made for and the size the current frame is drawn at **/
+  private int screenWidth;
+  private int screenHeight;
+  private int width;
+  private int height;
+
+  /**
+   * @param targetFrameTime seconds a frame should take, like 1 / 60f
+   * @param minScale the smallest part of the screen resolution to render at
+   * @param maxScale the largest part of the screen resolution to render at, at most 1
+   */
+  public DynamicResolution (float targetFrameTime, float minScale, float maxScale) {
+    if (minScale <= 0 || maxScale > 1 || minScale > maxScale)
+      throw new IllegalArgumentException("Scales must be in (0, 1] with minScale <= maxScale.");
+    this.targetFrameTime = targetFrameTime;
+    this.minScale = minScale;
+    this.maxScale = maxScale;
+    scale = maxScale;
+  }
+
+  /**
+   * Measures the last frame and adjusts the scale once an interval is over.
+   */
+  public void update (float deltaTime) {
+    time += deltaTime;
+    frames++;
+    slowest = Math.max(slowest, deltaTime);
+    if (time < INTERVAL) return;
+
+    float limit = targetFrameTime * (1 + TOLERANCE);
+    float average = time / frames;
+    if (average > limit) {
+      // Fill time goes with the pixels, which go with the square of the scale.
+      scale *= (float)Math.sqrt(targetFrameTime / average);
+    } else if (slowest <= limit) {
+      scale += STEP;
+    }
+    scale = Math.max(minScale, Math.min(maxScale, scale));
+    time = 0;
+    frames = 0;
+    slowest = 0;
+  }
+
+  /**
+   * @return the part of the screen resolution the scene is rendered at
+   */
+  public float getScale () {
+    return scale;
+  }
+
+  /**
+   * @return whether the current frame is rendered below the screen resolution and has to be scaled up
+   */
+  public boolean isScaled () {
+    return width != screenWidth || height != screenHeight;
+  }
+
+  /**
+   * Points rendering at the scaled target and sets the viewport to its size. Clearing is up to the caller.
+   */
+  public void begin () {
+    int screenWidth = Gdx.graphics.getWidth(), screenHeight = Gdx.graphics.getHeight();
+    if (screenWidth != this.screenWidth || screenHeight != this.screenHeight) {
+      disposeTarget();
+      this.screenWidth = screenWidth;
+      this.screenHeight = screenHeight;
+    }
+    width = Math.max(1, Math.round(screenWidth * scale));
+    height = Math.max(1, Math.round(screenHeight * scale));
+    if (!isScaled()) {
+      Gdx.gl.glViewport(0, 0, screenWidth, screenHeight);
+      return;
+    }
+
+    if (Gdx.graphics.isGL20Available()) {
+      if (frameBuffer == null) {
+        int maxWidth = (int)Math.ceil(screenWidth * maxScale), maxHeight = (int)Math.ceil(screenHeight * maxScale);
+        frameBuffer = new FrameBuffer(Format.RGB565, maxWidth, maxHeight, true);
+      }
+      frameBuffer.begin();
+    } else if (texture == null) {
+      // GL10 needs power of two textures.
+      int maxWidth = (int)Math.ceil(screenWidth * maxScale), maxHeight = (int)Math.ceil(screenHeight * maxScale);
+      texture = new Texture(MathUtils.nextPowerOfTwo(maxWidth), MathUtils.nextPowerOfTwo(maxHeight), Format.RGB565);
+      texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+    }
+    Gdx.gl.glViewport(0, 0, width, height);
+  }
+
+  /**
+   * Finishes the scene and points rendering back at the whole screen.
+   */
+  public void end () {
+    if (!isScaled()) return;
+    if (frameBuffer != null) {
+      frameBuffer.end();
+    } else {
+      texture.bind();
+      Gdx.gl.glCopyTexSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, 0, 0, 0, width, height);
+    }
+    Gdx.gl.glViewport(0, 0, screenWidth, screenHeight);
+  }
+
+  /**
+   * Scales the finished scene up over the whole screen with blending off. The batch must not be drawing, its projection
+   * is changed and it is left with blending on.
+   */
+  public void draw (SpriteBatch batch) {
+    if (!isScaled()) return;
+    Texture texture = frameBuffer != null ? frameBuffer.getColorBufferTexture() : this.texture;
+    // Rows are stored bottom up.
+    region.setTexture(texture);
+    region.setRegion(0, 0, width, height);
+    region.flip(false, true);
+    projection.setToOrtho2D(0, 0, screenWidth, screenHeight);
+    batch.setProjectionMatrix(projection);
+    batch.disableBlending();
+    batch.begin();
+    batch.draw(region, 0, 0, screenWidth, screenHeight);
+    batch.end();
+    batch.enableBlending();
+  }
+
+  private void disposeTarget () {
+    if (frameBuffer != null) frameBuffer.dispose();
+    if (texture != null) texture.dispose();
+    frameBuffer = null;
+    texture = null;
+  }
+
+  public void dispose () {
+    disposeTarget();
+  }
+}
@@ -0,0 +1,84 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+
+/**
+ * Tests bounding spheres against the camera frustum, so the renderers skip whatever the player is not looking at. Counts
+ * what it let through and what it culled since the last {@link #begin(Frustum)}, so the savings can be checked on a device
+ * while looking around.
+ */
+public class FrustumCuller {
+  private Plane[] planes;
+  private int drawn;
+  private int culled;
+  /** the counts of the last finished frame **/
+  private int lastDrawn;
+  private int lastCulled;
+
+  /**
+   * Starts a frame. The frustum must be up to date, call it after {@code camera.update()}.
+   */
+  public void begin (Frustum frustum) {
+    planes = frustum.planes;
+    lastDrawn = drawn;
+    lastCulled = culled;
+    drawn = 0;
+    culled = 0;
+  }
+
+  /**
+   * @return false if the sphere lies completely outside the frustum
+   */
+  public boolean isVisible (float x, float y, float z, float radius) {
+    final Plane[] planes = this.planes;
+    for (int i = 0; i < planes.length; i++) {
+      Plane plane = planes[i];
+      if (plane.normal.x * x + plane.normal.y * y + plane.normal.z * z + plane.d < -radius) {
+        culled++;
+        return false;
+      }
+    }
+    drawn++;
+    return true;
+  }
+
+  /**
+   * @return objects that passed the test in the last finished frame
+   */
+  public int getDrawn () {
+    return lastDrawn;
+  }
+
+  /**
+   * @return objects that were culled in the last finished frame
+   */
+  public int getCulled () {
+    return lastCulled;
+  }
+
+  /**
+   * @return the radius of the smallest sphere around the origin of the mesh holding all its vertices
+   */
+  public static float boundingRadius (Mesh mesh) {
+    VertexAttributes attributes = mesh.getVertexAttributes();
+    int vertexSize = attributes.vertexSize / 4;
+    int position = 0;
+    for (int i = 0; i < attributes.size(); i++) {
+      VertexAttribute attribute = attributes.get(i);
+      if (attribute.usage == Usage.Position) position = attribute.offset / 4;
+    }
+    float[] vertices = new float[mesh.getNumVertices() * vertexSize];
+    mesh.getVertices(vertices);
+    float max = 0;
+    for (int i = position; i < vertices.length; i += vertexSize) {
+      float x = vertices[i], y = vertices[i + 1], z = vertices[i + 2];
+      max = Math.max(max, x * x + y * y + z * z);
+    }
+    return (float)Math.sqrt(max);
+  }
+}
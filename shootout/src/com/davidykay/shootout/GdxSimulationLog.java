@@ -0,0 +1,19 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.Application;
+import com.davidykay.shootout.simulation.SimulationLog;
+
+/**
+ * Sends simulation trace dumps to the application log, i.e. logcat on Android and stdout on the desktop.
+ */
+public class GdxSimulationLog implements SimulationLog {
+  private final Application app;
+
+  public GdxSimulationLog (Application app) {
+    this.app = app;
+  }
+
+  @Override public void log (String tag, String message) {
+    app.log(tag, message);
+  }
+}
@@ -0,0 +1,138 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.BitmapFontCache;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+/**
+ * A line of labeled integers, like "lives: 3 wave: 1 score: 1200", drawn without allocating. Labels and every digit keep
+ * their glyph vertices in a {@link BitmapFontCache}. A new value is formatted into a reusable char buffer and only the
+ * digits that differ from the shown ones get new glyphs. When a number gains or loses a digit the fields after it are
+ * moved, not rebuilt.
+ *
+ * Digits are made fixed width in the font, so changing one never moves its neighbours.
+ */
+public class HudLine {
+  /** sign and the digits of the largest int **/
+  private static final int MAX_CHARS = 11;
+  private static final String DIGITS = "0123456789";
+
+  private final BitmapFontCache[] labels;
+  private final float[] labelWidths;
+  private final BitmapFontCache[][] digits;
+  /** the chars of every field as shown and how many of them there are **/
+  private final char[][] shown;
+  private final int[] lengths;
+  private final int[] values;
+  private final float advance;
+
+  /** scratch buffers to format a value and to hand one char to a cache **/
+  private final char[] formatted = new char[MAX_CHARS];
+  private final StringBuilder glyph = new StringBuilder(1);
+
+  /** where the fields are laid out, NaN before the first draw **/
+  private float x = Float.NaN;
+  private float y = Float.NaN;
+  private boolean dirty = true;
+
+  /**
+   * @param font the font to draw with, its digits are made fixed width
+   * @param labels the text in front of each field, like "lives: " or " wave: "
+   */
+  public HudLine (BitmapFont font, String... labels) {
+    font.setFixedWidthGlyphs(DIGITS);
+    advance = font.getBounds("00").width - font.getBounds("0").width;
+
+    int fields = labels.length;
+    this.labels = new BitmapFontCache[fields];
+    labelWidths = new float[fields];
+    digits = new BitmapFontCache[fields][MAX_CHARS];
+    shown = new char[fields][MAX_CHARS];
+    lengths = new int[fields];
+    values = new int[fields];
+    for (int i = 0; i < fields; i++) {
+      this.labels[i] = new BitmapFontCache(font);
+      this.labels[i].setText(labels[i], 0, 0);
+      // Up to where the first digit starts, trailing spaces included.
+      labelWidths[i] = font.getBounds(labels[i] + "0").width - font.getBounds("0").width;
+      for (int j = 0; j < MAX_CHARS; j++)
+        digits[i][j] = new BitmapFontCache(font);
+      values[i] = Integer.MIN_VALUE;
+      set(i, 0);
+    }
+  }
+
+  /**
+   * Shows a new value in a field, patching only the glyphs of digits that changed.
+   */
+  public void set (int field, int value) {
+    if (values[field] == value) return;
+    values[field] = value;
+
+    int length = format(value, formatted);
+    char[] chars = shown[field];
+    BitmapFontCache[] caches = digits[field];
+    for (int i = 0; i < length; i++) {
+      if (i < lengths[field] && chars[i] == formatted[i]) continue;
+      chars[i] = formatted[i];
+      glyph.setLength(0);
+      glyph.append(chars[i]);
+      caches[i].setText(glyph, 0, 0);
+      // Glyphs are placed at the origin and moved to their slot by the next layout.
+      dirty = true;
+    }
+    if (length != lengths[field]) dirty = true;
+    lengths[field] = length;
+  }
+
+  /**
+   * Draws the line, the position is the top left of its first label.
+   */
+  public void draw (SpriteBatch batch, float x, float y) {
+    if (dirty || x != this.x || y != this.y) layout(x, y);
+    for (int i = 0; i < labels.length; i++) {
+      labels[i].draw(batch);
+      BitmapFontCache[] caches = digits[i];
+      for (int j = 0; j < lengths[i]; j++)
+        caches[j].draw(batch);
+    }
+  }
+
+  /**
+   * Moves every cache to its slot, the glyphs are only translated.
+   */
+  private void layout (float x, float y) {
+    float position = x;
+    for (int i = 0; i < labels.length; i++) {
+      labels[i].setPosition(position, y);
+      position += labelWidths[i];
+      BitmapFontCache[] caches = digits[i];
+      for (int j = 0; j < lengths[i]; j++, position += advance)
+        caches[j].setPosition(position, y);
+    }
+    this.x = x;
+    this.y = y;
+    dirty = false;
+  }
+
+  /**
+   * Writes the decimal digits of a value into the buffer, most significant first.
+   * @return the number of chars written
+   */
+  static int format (int value, char[] buffer) {
+    int length = 0;
+    // Negative digits, so the smallest int does not overflow.
+    int remaining = value < 0 ? value : -value;
+    do {
+      buffer[length++] = (char)('0' - remaining % 10);
+      remaining /= 10;
+    } while (remaining != 0);
+    if (value < 0) buffer[length++] = '-';
+    for (int i = 0, j = length - 1; i < j; i++, j--) {
+      char c = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = c;
+    }
+    return length;
+  }
+}
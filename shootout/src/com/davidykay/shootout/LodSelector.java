@@ -0,0 +1,85 @@
+package com.davidykay.shootout;
+
+import com.davidykay.shootout.simulation.EntityStore;
+
+/**
+ * Picks the level of detail of an object from its distance to the camera, measured in bounding radii so the same
+ * thresholds suit any model size. Level 0 is the full mesh, every threshold passed adds a level.
+ *
+ * Each entity remembers its level by handle. It only moves to a coarser level once it is a margin beyond the threshold
+ * and back once it is a margin inside it, so an entity hovering around a threshold does not pop between meshes every
+ * frame.
+ */
+public class LodSelector {
+  private final float[] thresholds;
+  private final float margin;
+
+  /** handle and level of each entity slot, -1 for slots with no level yet **/
+  private int[] handles = new int[0];
+  private byte[] levels = new byte[0];
+
+  /**
+   * @param margin part of a threshold an entity has to pass it by before its level changes, like 0.1
+   * @param thresholds increasing distances in bounding radii at which the next level starts
+   */
+  public LodSelector (float margin, float... thresholds) {
+    for (int i = 1; i < thresholds.length; i++)
+      if (thresholds[i] <= thresholds[i - 1]) throw new IllegalArgumentException("Thresholds must increase.");
+    this.thresholds = thresholds;
+    this.margin = margin;
+  }
+
+  /**
+   * @return the number of levels, one more than the thresholds
+   */
+  public int getLevels () {
+    return thresholds.length + 1;
+  }
+
+  /**
+   * @return the level at the given distance, without hysteresis
+   */
+  public int select (float distance) {
+    int level = 0;
+    while (level < thresholds.length && distance > thresholds[level])
+      level++;
+    return level;
+  }
+
+  /**
+   * @param handle the handle of the entity, see {@link EntityStore#slotOf(int)}
+   * @param distance the distance to the camera in bounding radii
+   * @return the level of the entity, which only changes once the distance passes a threshold by the margin
+   */
+  public int select (int handle, float distance) {
+    int slot = EntityStore.slotOf(handle);
+    if (slot >= handles.length) grow(slot + 1);
+    if (handles[slot] != handle) {
+      // New entity, or a new one in a reused slot.
+      handles[slot] = handle;
+      levels[slot] = (byte)select(distance);
+      return levels[slot];
+    }
+
+    final float[] thresholds = this.thresholds;
+    int level = levels[slot];
+    while (level < thresholds.length && distance > thresholds[level] * (1 + margin))
+      level++;
+    while (level > 0 && distance < thresholds[level - 1] * (1 - margin))
+      level--;
+    levels[slot] = (byte)level;
+    return level;
+  }
+
+  private void grow (int capacity) {
+    capacity = Math.max(capacity, handles.length * 2);
+    int[] newHandles = new int[capacity];
+    byte[] newLevels = new byte[capacity];
+    System.arraycopy(handles, 0, newHandles, 0, handles.length);
+    System.arraycopy(levels, 0, newLevels, 0, levels.length);
+    for (int i = handles.length; i < capacity; i++)
+      newHandles[i] = -1;
+    handles = newHandles;
+    levels = newLevels;
+  }
+}
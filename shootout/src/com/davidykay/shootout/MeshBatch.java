@@ -0,0 +1,160 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+/**
+ * Draws many copies of one mesh with a single draw call. Every copy is transformed on the CPU into a shared dynamic vertex
+ * buffer, which replaces a matrix push, a translate, a rotate and a draw call per entity with one upload and one draw per
+ * batch. The source mesh must be triangles, indexed ones are expanded once when the batch is made.
+ *
+ * This version of libgdx has no instanced drawing on GL20 either, so pre-transforming is used on both pipelines. Pass a
+ * shader to {@link #begin(ShaderProgram)} on GL20, the copies then need only the view projection matrix.
+ */
+public class MeshBatch {
+  private final float[] source;
+  private final int sourceVertices;
+  private final int vertexSize;
+  private final int positionOffset;
+  private final int normalOffset;
+
+  private final Mesh mesh;
+  private final float[] vertices;
+  private final int maxInstances;
+  private int instances;
+  /** shader of the current batch, null on GL10 **/
+  private ShaderProgram shader;
+  /** draw calls and triangles since the last {@link #begin(ShaderProgram)} **/
+  private int drawCalls;
+  private int triangles;
+
+  /**
+   * @param maxInstances copies drawn per draw call at most, adding more flushes early
+   */
+  public MeshBatch (Mesh sourceMesh, int maxInstances) {
+    VertexAttributes attributes = sourceMesh.getVertexAttributes();
+    vertexSize = attributes.vertexSize / 4;
+    float[] indexed = new float[sourceMesh.getNumVertices() * vertexSize];
+    sourceMesh.getVertices(indexed);
+    if (sourceMesh.getNumIndices() > 0) {
+      short[] indices = new short[sourceMesh.getNumIndices()];
+      sourceMesh.getIndices(indices);
+      sourceVertices = indices.length;
+      source = new float[sourceVertices * vertexSize];
+      for (int i = 0; i < indices.length; i++)
+        System.arraycopy(indexed, (indices[i] & 0xffff) * vertexSize, source, i * vertexSize, vertexSize);
+    } else {
+      sourceVertices = sourceMesh.getNumVertices();
+      source = indexed;
+    }
+
+    int position = -1, normal = -1;
+    VertexAttribute[] copies = new VertexAttribute[attributes.size()];
+    for (int i = 0; i < attributes.size(); i++) {
+      VertexAttribute attribute = attributes.get(i);
+      if (attribute.usage == Usage.Position) position = attribute.offset / 4;
+      if (attribute.usage == Usage.Normal) normal = attribute.offset / 4;
+      copies[i] = new VertexAttribute(attribute.usage, attribute.numComponents, attribute.alias);
+    }
+    if (position == -1) throw new IllegalArgumentException("Mesh has no position attribute.");
+    positionOffset = position;
+    normalOffset = normal;
+
+    this.maxInstances = maxInstances;
+    vertices = new float[maxInstances * sourceVertices * vertexSize];
+    mesh = new Mesh(false, maxInstances * sourceVertices, 0, copies);
+  }
+
+  public void begin () {
+    begin(null);
+  }
+
+  /**
+   * @param shader the bound shader to draw with on GL20, null to draw with the fixed function pipeline
+   */
+  public void begin (ShaderProgram shader) {
+    this.shader = shader;
+    instances = 0;
+    drawCalls = 0;
+    triangles = 0;
+  }
+
+  /**
+   * Adds a copy rotated around the y axis, then scaled, then moved to the given position, the same as glTranslatef, glRotatef
+   * around y and glScalef in that order.
+   * @param angle rotation around the y axis in degrees
+   */
+  public void add (float x, float y, float z, float angle, float scale) {
+    if (instances == maxInstances) flush();
+
+    final float radians = angle * (float)Math.PI / 180;
+    final float cos = (float)Math.cos(radians);
+    final float sin = (float)Math.sin(radians);
+    final float[] source = this.source;
+    final float[] vertices = this.vertices;
+    final int vertexSize = this.vertexSize;
+    final int positionOffset = this.positionOffset;
+    final int normalOffset = this.normalOffset;
+
+    int to = instances * sourceVertices * vertexSize;
+    System.arraycopy(source, 0, vertices, to, sourceVertices * vertexSize);
+    for (int v = 0; v < sourceVertices; v++, to += vertexSize) {
+      int p = to + positionOffset;
+      float px = vertices[p], pz = vertices[p + 2];
+      vertices[p] = (px * cos + pz * sin) * scale + x;
+      vertices[p + 1] = vertices[p + 1] * scale + y;
+      vertices[p + 2] = (pz * cos - px * sin) * scale + z;
+
+      if (normalOffset != -1) {
+        int n = to + normalOffset;
+        float nx = vertices[n], nz = vertices[n + 2];
+        vertices[n] = nx * cos + nz * sin;
+        vertices[n + 2] = nz * cos - nx * sin;
+      }
+    }
+    instances++;
+  }
+
+  /**
+   * Draws everything added since the last flush with whatever textures, colors and matrices are currently set.
+   */
+  public void end () {
+    flush();
+    shader = null;
+  }
+
+  /**
+   * @return draw calls of the current or last batch
+   */
+  public int getDrawCalls () {
+    return drawCalls;
+  }
+
+  /**
+   * @return triangles drawn by the current or last batch
+   */
+  public int getTriangles () {
+    return triangles;
+  }
+
+  private void flush () {
+    if (instances == 0) return;
+    int count = instances * sourceVertices;
+    mesh.setVertices(vertices, 0, count * vertexSize);
+    if (shader != null)
+      mesh.render(shader, GL10.GL_TRIANGLES, 0, count);
+    else
+      mesh.render(GL10.GL_TRIANGLES, 0, count);
+    instances = 0;
+    drawCalls++;
+    triangles += count / 3;
+  }
+
+  public void dispose () {
+    mesh.dispose();
+  }
+}
@@ -0,0 +1,190 @@
+package com.davidykay.shootout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g3d.loaders.ModelLoaderOld;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Loads the models the MeshConverter tool wrote, indexed vertices in a little endian binary file. The file is read into a
+ * direct buffer that is reused between meshes and copied from there into the mesh's own buffers, nothing is parsed and no
+ * float arrays are made. A model without a binary file is parsed from its OBJ instead.
+ *
+ * Keeps the time spent on either format, so the two can be compared on a device. Reading a binary file and creating its
+ * mesh are also available apart, {@link #read(InputStream, ByteBuffer)} touches no GL state and can run on any thread.
+ */
+public class MeshLoader {
+  public static final String BINARY = ".mesh";
+  public static final String OBJ = ".obj";
+
+  /** "SOM1" read little endian, must match the tool **/
+  private static final int MAGIC = 0x314d4f53;
+  private static final int NORMALS = 1;
+  private static final int TEXTURE_COORDINATES = 2;
+  private static final int HEADER_SIZE = 16;
+
+  /** false skips the binary files, to time the OBJ path **/
+  private final boolean binary;
+  /** file contents, grown to the largest mesh **/
+  private ByteBuffer buffer = BufferUtils.newByteBuffer(4096);
+
+  /** meshes loaded from each format and the nanoseconds it took **/
+  private int binaryMeshes;
+  private long binaryNanos;
+  private int objMeshes;
+  private long objNanos;
+
+  /**
+   * @param binary whether to load binary files where there are some
+   */
+  public MeshLoader (boolean binary) {
+    this.binary = binary;
+  }
+
+  /**
+   * @param path the internal path of the model without extension, like "data/packed/ufo"
+   */
+  public Mesh load (String path) throws IOException {
+    long start = System.nanoTime();
+    FileHandle file = Gdx.files.internal(path + BINARY);
+    Mesh mesh;
+    InputStream in;
+    if (binary && file.exists()) {
+      in = file.read();
+      try {
+        mesh = loadBinary(in);
+      } finally {
+        in.close();
+      }
+      binaryMeshes++;
+      binaryNanos += System.nanoTime() - start;
+    } else {
+      in = Gdx.files.internal(path + OBJ).read();
+      try {
+        mesh = ModelLoaderOld.loadObj(in);
+      } finally {
+        in.close();
+      }
+      if (mesh == null) throw new GdxRuntimeException("Couldn't load " + path + OBJ);
+      objMeshes++;
+      objNanos += System.nanoTime() - start;
+    }
+    return mesh;
+  }
+
+  /**
+   * Reads a binary mesh, the stream is left open.
+   */
+  public Mesh loadBinary (InputStream in) throws IOException {
+    buffer = read(in, buffer);
+    return create(buffer);
+  }
+
+  /**
+   * Reads a binary mesh into a buffer without creating the mesh, the stream is left open.
+   * @param buffer the buffer to read into, null or too small ones are replaced
+   * @return the buffer holding the whole file, from position 0 to its limit
+   */
+  public static ByteBuffer read (InputStream in, ByteBuffer buffer) throws IOException {
+    if (buffer == null) buffer = BufferUtils.newByteBuffer(4096);
+    ReadableByteChannel channel = Channels.newChannel(in);
+    buffer.clear();
+    buffer.limit(HEADER_SIZE);
+    fill(channel, buffer);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(0) != MAGIC) throw new IOException("Not a binary mesh.");
+
+    int size = HEADER_SIZE + getVertexBytes(buffer) + getIndexBytes(buffer);
+    if (buffer.capacity() < size) {
+      ByteBuffer larger = BufferUtils.newByteBuffer(size);
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    buffer.limit(size);
+    fill(channel, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Creates the mesh of a binary file, must run on the render thread.
+   * @param buffer a buffer filled by {@link #read(InputStream, ByteBuffer)}
+   */
+  public static Mesh create (ByteBuffer buffer) {
+    int flags = buffer.getInt(4), vertexCount = buffer.getInt(8), indexCount = buffer.getInt(12);
+    ArrayList<VertexAttribute> attributes = new ArrayList<VertexAttribute>();
+    attributes.add(new VertexAttribute(Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE));
+    if ((flags & NORMALS) != 0)
+      attributes.add(new VertexAttribute(Usage.Normal, 3, ShaderProgram.NORMAL_ATTRIBUTE));
+    if ((flags & TEXTURE_COORDINATES) != 0)
+      attributes.add(new VertexAttribute(Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"));
+
+    int vertexEnd = HEADER_SIZE + getVertexBytes(buffer), indexEnd = vertexEnd + getIndexBytes(buffer);
+    Mesh mesh = new Mesh(true, vertexCount, indexCount, attributes.toArray(new VertexAttribute[attributes.size()]));
+    buffer.limit(vertexEnd);
+    buffer.position(HEADER_SIZE);
+    FloatBuffer vertices = mesh.getVerticesBuffer();
+    vertices.clear();
+    vertices.put(buffer.asFloatBuffer());
+    vertices.flip();
+
+    buffer.limit(indexEnd);
+    buffer.position(vertexEnd);
+    ShortBuffer indices = mesh.getIndicesBuffer();
+    indices.clear();
+    indices.put(buffer.asShortBuffer());
+    indices.flip();
+    buffer.position(0);
+    return mesh;
+  }
+
+  private static int getVertexBytes (ByteBuffer header) {
+    int flags = header.getInt(4);
+    int vertexSize = 3 + ((flags & NORMALS) != 0 ? 3 : 0) + ((flags & TEXTURE_COORDINATES) != 0 ? 2 : 0);
+    return header.getInt(8) * vertexSize * 4;
+  }
+
+  private static int getIndexBytes (ByteBuffer header) {
+    return header.getInt(12) * 2;
+  }
+
+  /**
+   * Fills the buffer from its position to its limit with the next bytes of the channel.
+   */
+  private static void fill (ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining())
+      if (channel.read(buffer) == -1) throw new IOException("Binary mesh ends early.");
+  }
+
+  /**
+   * @return the triangles of a mesh of a model, indexed or not
+   */
+  public static int getTriangles (Mesh mesh) {
+    return (mesh.getNumIndices() > 0 ? mesh.getNumIndices() : mesh.getNumVertices()) / 3;
+  }
+
+  /**
+   * @return how many meshes were loaded and how long it took, per format
+   */
+  @Override public String toString () {
+    return binaryMeshes + " binary meshes in " + binaryNanos / 1000000f + " ms, " + objMeshes + " OBJ meshes in "
+      + objNanos / 1000000f + " ms";
+  }
+}
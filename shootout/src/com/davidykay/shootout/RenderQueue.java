@@ -0,0 +1,317 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+/**
+ * Records the draws of a frame as sort keys and replays them sorted by pass, material and depth, so each piece of GL
+ * state is set once per run of draws that need it instead of once per draw. The fixed function state of a material is
+ * compared against what the queue last set and only the differences reach GL.
+ *
+ * A key packs, from the most significant bit, the pass (4 bits), the material (6 bits), the quantized depth (10 bits) and
+ * the index of the recorded command (12 bits). Keys live in preallocated arrays and are radix sorted, recording and
+ * replaying a frame allocates nothing.
+ *
+ * Materials sort in the order they were added, add opaque ones before blended ones. Opaque materials draw front to back,
+ * blended ones back to front.
+ */
+public class RenderQueue {
+  /** enables GL_TEXTURE_2D **/
+  public static final int TEXTURE_2D = 1;
+  /** enables GL_LIGHTING **/
+  public static final int LIGHTING = 1 << 1;
+  /** enables GL_BLEND with source alpha blending **/
+  public static final int BLEND = 1 << 2;
+  /** enables GL_DEPTH_TEST **/
+  public static final int DEPTH_TEST = 1 << 3;
+  /** enables GL_CULL_FACE **/
+  public static final int CULL_FACE = 1 << 4;
+  /** the draws color their vertices, the current color is undefined afterwards **/
+  public static final int VERTEX_COLORS = 1 << 5;
+  /** the draws go through the sprite batch, which is begun before them and ended after the last one **/
+  public static final int SPRITES = 1 << 6;
+  /** the draws switch texturing on and off, bind their textures and color their vertices themselves **/
+  public static final int SELF_TEXTURED = 1 << 7;
+
+  private static final int[] CAPABILITIES = {TEXTURE_2D, LIGHTING, BLEND, DEPTH_TEST, CULL_FACE};
+  private static final int[] GL_CAPABILITIES = {GL10.GL_TEXTURE_2D, GL10.GL_LIGHTING, GL10.GL_BLEND, GL10.GL_DEPTH_TEST,
+                                                GL10.GL_CULL_FACE};
+  /** state the sprite batch sets itself **/
+  private static final int SPRITE_STATE = TEXTURE_2D | BLEND;
+
+  private static final int PASS_SHIFT = 28;
+  private static final int MATERIAL_SHIFT = 22;
+  private static final int DEPTH_SHIFT = 12;
+  private static final int MAX_PASSES = 16;
+  private static final int MAX_MATERIALS = 64;
+  private static final int MAX_DEPTH = (1 << 10) - 1;
+  private static final int MAX_COMMANDS = 1 << DEPTH_SHIFT;
+
+  /**
+   * Draws what the renderer recorded.
+   */
+  public interface Drawer {
+    /**
+     * Sets up the view of a pass, called before its first command is drawn.
+     */
+    public void beginPass (int pass);
+
+    /**
+     * Draws a recorded command, the state of its material is set.
+     * @return the draw calls it issued
+     */
+    public int draw (int command);
+  }
+
+  private final SpriteBatch spriteBatch;
+
+  /** material states, textures and colors by material **/
+  private final int[] materialStates = new int[MAX_MATERIALS];
+  private final Texture[] materialTextures = new Texture[MAX_MATERIALS];
+  private final float[] materialColors = new float[MAX_MATERIALS * 4];
+  private int materials;
+
+  /** keys and commands of the frame, and a second key array the sort swaps with **/
+  private int[] keys;
+  private int[] sorted;
+  private final int[] commands;
+  private final int[] counts = new int[256];
+  private int size;
+
+  /** the state the queue set, bits outside known have to be set again before use **/
+  private int state;
+  private int known;
+  private Texture boundTexture;
+  private boolean colorKnown;
+  private float red, green, blue, alpha;
+  private boolean blendFunctionKnown;
+
+  /** counts of the last frame **/
+  private int stateChanges;
+  private int drawCalls;
+
+  /**
+   * @param maxCommands commands recorded per frame at most
+   * @param spriteBatch the batch materials with {@link #SPRITES} draw through
+   */
+  public RenderQueue (int maxCommands, SpriteBatch spriteBatch) {
+    if (maxCommands > MAX_COMMANDS) throw new IllegalArgumentException("At most " + MAX_COMMANDS + " commands.");
+    this.spriteBatch = spriteBatch;
+    keys = new int[maxCommands];
+    sorted = new int[maxCommands];
+    commands = new int[maxCommands];
+  }
+
+  /**
+   * @param states the state bits of the material
+   * @param texture bound before the draws, null if they bind their own or draw untextured
+   * @return the material to record commands with
+   */
+  public int addMaterial (int states, Texture texture, float r, float g, float b, float a) {
+    if (materials == MAX_MATERIALS) throw new IllegalStateException("At most " + MAX_MATERIALS + " materials.");
+    materialStates[materials] = states;
+    materialTextures[materials] = texture;
+    materialColors[materials * 4] = r;
+    materialColors[materials * 4 + 1] = g;
+    materialColors[materials * 4 + 2] = b;
+    materialColors[materials * 4 + 3] = a;
+    return materials++;
+  }
+
+  /**
+   * Starts recording a frame.
+   */
+  public void begin () {
+    size = 0;
+  }
+
+  /**
+   * Records a command. Commands beyond the capacity are dropped.
+   * @param depth 0 at the near plane, 1 at the far plane
+   */
+  public void add (int pass, int material, float depth, int command) {
+    if (size == keys.length) return;
+    if (pass < 0 || pass >= MAX_PASSES) throw new IllegalArgumentException("Invalid pass: " + pass);
+    if (material < 0 || material >= materials) throw new IllegalArgumentException("Invalid material: " + material);
+
+    int quantized = (int)(Math.max(0, Math.min(1, depth)) * MAX_DEPTH);
+    if ((materialStates[material] & BLEND) != 0) quantized = MAX_DEPTH - quantized;
+    keys[size] = pass << PASS_SHIFT | material << MATERIAL_SHIFT | quantized << DEPTH_SHIFT | size;
+    commands[size] = command;
+    size++;
+  }
+
+  /**
+   * Sorts the recorded commands and draws them. Nothing is assumed about the GL state going in, everything a material
+   * needs is set the first time it is used.
+   */
+  public void execute (GL10 gl, Drawer drawer) {
+    sort();
+    known = 0;
+    boundTexture = null;
+    colorKnown = false;
+    blendFunctionKnown = false;
+    stateChanges = 0;
+    drawCalls = 0;
+
+    int pass = -1, material = -1;
+    for (int i = 0; i < size; i++) {
+      int key = keys[i];
+      int keyPass = key >>> PASS_SHIFT;
+      int keyMaterial = (key >>> MATERIAL_SHIFT) & (MAX_MATERIALS - 1);
+      if (keyPass != pass) {
+        endSprites();
+        drawer.beginPass(keyPass);
+        pass = keyPass;
+        material = -1;
+      }
+      if (keyMaterial != material) {
+        apply(gl, keyMaterial);
+        material = keyMaterial;
+      }
+
+      drawCalls += drawer.draw(commands[key & (MAX_COMMANDS - 1)]);
+
+      int states = materialStates[material];
+      if ((states & VERTEX_COLORS) != 0) colorKnown = false;
+      if ((states & SELF_TEXTURED) != 0) {
+        known &= ~TEXTURE_2D;
+        boundTexture = null;
+        colorKnown = false;
+      }
+      if ((states & TEXTURE_2D) != 0 && materialTextures[material] == null) boundTexture = null;
+    }
+    endSprites();
+  }
+
+  /**
+   * @return commands drawn in the last frame
+   */
+  public int getCommands () {
+    return size;
+  }
+
+  /**
+   * @return capabilities, texture binds, colors, blend functions and sprite batches set in the last frame
+   */
+  public int getStateChanges () {
+    return stateChanges;
+  }
+
+  /**
+   * @return draw calls of the last frame
+   */
+  public int getDrawCalls () {
+    return drawCalls;
+  }
+
+  private void apply (GL10 gl, int material) {
+    int target = materialStates[material];
+    if ((target & SPRITES) == 0) endSprites();
+    int unmanaged = 0;
+    if ((target & SPRITES) != 0) unmanaged = SPRITE_STATE;
+    if ((target & SELF_TEXTURED) != 0) unmanaged |= TEXTURE_2D;
+
+    for (int i = 0; i < CAPABILITIES.length; i++) {
+      int capability = CAPABILITIES[i];
+      if ((unmanaged & capability) != 0) continue;
+      boolean enable = (target & capability) != 0;
+      if ((known & capability) != 0 && ((state & capability) != 0) == enable) continue;
+      if (enable) {
+        gl.glEnable(GL_CAPABILITIES[i]);
+        state |= capability;
+      } else {
+        gl.glDisable(GL_CAPABILITIES[i]);
+        state &= ~capability;
+      }
+      known |= capability;
+      stateChanges++;
+    }
+
+    if ((target & SPRITES) != 0) {
+      if ((state & SPRITES) == 0) {
+        spriteBatch.begin();
+        state |= SPRITES;
+        known = (known | TEXTURE_2D) & ~BLEND;
+        state |= TEXTURE_2D;
+        boundTexture = null;
+        stateChanges++;
+      }
+      return;
+    }
+
+    if ((target & BLEND) != 0 && !blendFunctionKnown) {
+      gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+      blendFunctionKnown = true;
+      stateChanges++;
+    }
+    if ((target & SELF_TEXTURED) != 0) return;
+
+    Texture texture = materialTextures[material];
+    if (texture != null && texture != boundTexture) {
+      texture.bind();
+      boundTexture = texture;
+      stateChanges++;
+    }
+
+    if ((target & VERTEX_COLORS) == 0) {
+      final float[] colors = materialColors;
+      float r = colors[material * 4], g = colors[material * 4 + 1], b = colors[material * 4 + 2];
+      float a = colors[material * 4 + 3];
+      if (!colorKnown || r != red || g != green || b != blue || a != alpha) {
+        gl.glColor4f(r, g, b, a);
+        red = r;
+        green = g;
+        blue = b;
+        alpha = a;
+        colorKnown = true;
+        stateChanges++;
+      }
+    }
+  }
+
+  /**
+   * Ends an open sprite batch, which leaves texturing off and its own texture and blend function set. Blending is left
+   * off only if the batch drew something.
+   */
+  private void endSprites () {
+    if ((state & SPRITES) == 0) return;
+    spriteBatch.end();
+    drawCalls += spriteBatch.renderCalls;
+    state &= ~(SPRITES | SPRITE_STATE);
+    known = (known | TEXTURE_2D) & ~BLEND;
+    boundTexture = null;
+    colorKnown = false;
+    blendFunctionKnown = false;
+  }
+
+  /**
+   * Least significant digit radix sort of the keys, one byte per round. Rounds whose byte is the same in every key are
+   * skipped, which leaves most frames with two or three.
+   */
+  private void sort () {
+    final int[] counts = this.counts;
+    final int size = this.size;
+    for (int shift = 0; shift < 32; shift += 8) {
+      int[] keys = this.keys, sorted = this.sorted;
+      for (int i = 0; i < 256; i++)
+        counts[i] = 0;
+      for (int i = 0; i < size; i++)
+        counts[(keys[i] >>> shift) & 0xff]++;
+      if (size == 0 || counts[(keys[0] >>> shift) & 0xff] == size) continue;
+
+      for (int i = 0, total = 0; i < 256; i++) {
+        int count = counts[i];
+        counts[i] = total;
+        total += count;
+      }
+      for (int i = 0; i < size; i++) {
+        int key = keys[i];
+        sorted[counts[(key >>> shift) & 0xff]++] = key;
+      }
+      this.keys = sorted;
+      this.sorted = keys;
+    }
+  }
+}
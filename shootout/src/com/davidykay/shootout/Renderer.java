@@ -13,8 +13,7 @@ package com.davidykay.shootout;
  * governing permissions and limitations under the License.
  */
 
-import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.List;
 
 import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
@@ -24,70 +23,151 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL10;
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
-import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.Texture.TextureFilter;
-import com.badlogic.gdx.graphics.VertexAttribute;
-import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.g3d.loaders.ModelLoaderOld;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
-import com.davidykay.shootout.simulation.Alien;
-import com.davidykay.shootout.simulation.Block;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.davidykay.shootout.simulation.EntityView;
 import com.davidykay.shootout.simulation.Explosion;
-import com.davidykay.shootout.simulation.RayShot;
 import com.davidykay.shootout.simulation.Ship;
-import com.davidykay.shootout.simulation.Simulation;
+import com.davidykay.shootout.simulation.SimulationSnapshot;
 
 /**
- * The renderer receives a simulation and renders it.
+ * The renderer receives a snapshot of the simulation and renders it with the GL10 fixed function pipeline.
  * @author mzechner
  *
  */
-public class Renderer {
+public class Renderer implements SceneRenderer {
   private static final String TAG = "Renderer";
-  /** sprite batch to draw text **/
-  private SpriteBatch spriteBatch;
-  /** the moon mesh **/
-  private Mesh moonMesh;
-  /** the moon texture **/
-  private Texture moonTexture;
+  /** copies drawn per draw call, bounds the dynamic vertex buffers of the batches **/
+  private static final int ALIENS_PER_BATCH = 32;
+  private static final int BLOCKS_PER_BATCH = 64;
+  /** sprites per draw call of the effects **/
+  static final int EFFECTS_PER_BATCH = 512;
+  /** half size of an explosion sprite and the radius of a sphere around it **/
+  static final float EXPLOSION_SIZE = 1;
+  static final float EXPLOSION_RADIUS = EXPLOSION_SIZE * 1.415f;
+  /** half size of a ray sprite per unit of ray radius, as large as the bomb mesh rays used to be drawn with **/
+  static final float RAY_SIZE = 0.1f;
+  /** frames of the explosion flipbooks **/
+  static final int EXPLOSION_FRAMES = 16;
+  static final float PLAYER_RAY_COLOR = Color.toFloatBits(0, 215 / 255.0f, 237 / 255.0f, 1);
+  static final float ALIEN_RAY_COLOR = Color.toFloatBits(1, 1, 0, 1);
+  static final float EXPLOSION_COLOR = Color.toFloatBits(1, 1, 1, 1);
+  /** the moon sits this far below the ship, scaled to the same size **/
+  static final float MOON_RADIUS = 10.0f;
+  static final float MOON_SCALE = MOON_RADIUS;
+  /** meshes per model, the full one and the simplified ones the LodGenerator tool writes **/
+  static final int LOD_LEVELS = 3;
+  /** part of a level distance an object has to pass it by before its mesh changes **/
+  static final float LOD_MARGIN = 0.1f;
+  /** load the models from the binary files of the MeshConverter tool, false parses the OBJs to compare load times **/
+  static final boolean BINARY_MESHES = true;
+  /** the models, without extension, the moon and the alien by level of detail **/
+  static final String SHIP_MESH = "data/packed/emplacement";
+  static final String BLOCK_MESH = "data/block";
+  static final String[] MOON_MESHES = lodPaths("moon");
+  static final String[] ALIEN_MESHES = lodPaths("ufo");
+  /** the frame time the scene resolution adapts to and the part of the screen resolution it stays within **/
+  static final float TARGET_FRAME_TIME = 1 / 60f;
+  static final float MIN_RESOLUTION_SCALE = 0.5f;
+  static final float MAX_RESOLUTION_SCALE = 1;
+  /** passes of a frame, drawn in this order **/
+  private static final int PASS_BACKDROP = 0;
+  private static final int PASS_SCENE = 1;
+  private static final int PASS_UPSCALE = 2;
+  private static final int PASS_HUD = 3;
+  /** what a command recorded in the queue draws **/
+  private static final int DRAW_BACKDROP = 0;
+  private static final int DRAW_MOON = 1;
+  private static final int DRAW_SHIP = 2;
+  private static final int DRAW_ALIENS = 3;
+  private static final int DRAW_BLOCKS = 4;
+  private static final int DRAW_EFFECTS = 5;
+  private static final int DRAW_STATUS = 6;
+  private static final int DRAW_UPSCALE = 7;
+  private static final int MAX_COMMANDS = 16;
+  /** fields of the status line **/
+  static final int STATUS_LIVES = 0;
+  static final int STATUS_WAVE = 1;
+  static final int STATUS_SCORE = 2;
+  /** holds a reference to the meshes, atlases and the font while the renderer lives **/
+  private final Assets assets;
+  /** sprite batch to draw text, shared with the screens **/
+  private final SpriteBatch spriteBatch;
+  /** the moon meshes by level of detail **/
+  private Mesh[] moonMeshes;
   /** the ship mesh **/
   private Mesh shipMesh;
-  /** the ship texture **/
+  /** the alien meshes by level of detail **/
+  private Mesh[] alienMeshes;
+  /** the ship's page, and the moon and alien on one page, the meshes' texture coordinates point into them **/
+  private TextureAtlas shipAtlas;
   private Texture shipTexture;
-  /** the alien mesh **/
-  private Mesh alienMesh;
-  /** the alien texture **/
-  private Texture alienTexture;
+  private TextureAtlas sceneAtlas;
+  private Texture sceneTexture;
   /** the block mesh **/
   private Mesh blockMesh;
-  /** the shot mesh **/
-  private Mesh shotMesh;
-  /** the ray mesh **/
-  private Mesh rayMesh;
-  /** the background texture **/
-  private Texture backgroundTexture;
-  /** the earth texture **/
-  private Texture earthTexture;
-  /** the explosion mesh **/
-  private Mesh explosionMesh;
-  /** the explosion texture **/
-  private Texture explosionTexture;
-  /** the bomb explosion texture **/
-  private Texture bombExplosionTexture;
+  /** draws all aliens in a few draw calls per level of detail **/
+  private MeshBatch[] alienBatches;
+  /** draws all shield blocks in one draw call **/
+  private MeshBatch blockBatch;
+  /** skips objects outside the camera frustum **/
+  private final FrustumCuller culler = new FrustumCuller();
+  /** bounding sphere radii of the meshes at scale 1 **/
+  private float moonRadius;
+  private float alienRadius;
+  private float blockRadius;
+  /** pick the meshes by distance in bounding radii, the moon is always the entity with handle 0 **/
+  private final LodSelector moonLod = new LodSelector(LOD_MARGIN, 3, 6);
+  private final LodSelector alienLod = new LodSelector(LOD_MARGIN, 6, 10);
+  private int moonLevel;
+  /** triangles of the meshes drawn in the current frame **/
+  private int triangles;
+  /** starfield and earth, drawn from a static vertex buffer **/
+  private TextureAtlas backdropAtlas;
+  private StaticLayer backdrop;
+  /** explosion flipbooks and the ray sprite on one page **/
+  private TextureAtlas effectsAtlas;
+  private TextureRegion[] explosionFrames;
+  private TextureRegion[] bombExplosionFrames;
+  private TextureRegion raySprite;
+  /** draws all rays and explosions facing the camera **/
+  private BillboardBatch billboards;
   /** the font **/
   private BitmapFont font;
+  /** renders the backdrop and the scene below the screen resolution when frames run late **/
+  private final DynamicResolution resolution = new DynamicResolution(TARGET_FRAME_TIME, MIN_RESOLUTION_SCALE,
+                                                                     MAX_RESOLUTION_SCALE);
+  /** sorts the draws of a frame and sets the state between them **/
+  private RenderQueue queue;
+  private int spriteMaterial;
+  private int backdropMaterial;
+  private int shipMaterial;
+  private int sceneMaterial;
+  private int blockMaterial;
+  private int effectsMaterial;
+  private final RenderQueue.Drawer drawer = new RenderQueue.Drawer() {
+    @Override public void beginPass (int pass) {
+      Renderer.this.beginPass(pass);
+    }
+
+    @Override public int draw (int command) {
+      return Renderer.this.draw(command);
+    }
+  };
+  /** the frame being drawn by the queue **/
+  private Application app;
+  private SimulationSnapshot simulation;
   /** the rotation angle of all aliens around y **/
   private float alienAngle = 0;
-  /** status string **/
-  private String status = "";
-  /** keeping track of the last score so we don't constantly construct a new string **/
-  private int lastScore = 0;
-  private int lastLives = 0;
-  private int lastWave = 0;
+  /** lives, wave and score, patched in place as they change **/
+  private HudLine status;
 
   /** view and transform matrix for text rendering **/
   private Matrix4 viewMatrix = new Matrix4();
@@ -96,185 +176,178 @@ public class Renderer {
   /** perspective camera **/
   private PerspectiveCamera camera;
 
-  public Renderer (Application app) {
+  /** how far we are between the previous and the current simulation tick **/
+  private float alpha = 1;
+  /** interpolated ship position **/
+  private final Vector3 shipPosition = new Vector3();
+
+  /**
+   * @param assets has everything {@link #load(Assets)} queues loaded
+   * @param spriteBatch the batch to draw text and sprites with, not disposed by the renderer
+   */
+  public Renderer (Application app, Assets assets, SpriteBatch spriteBatch) {
+    this.assets = assets;
+    this.spriteBatch = spriteBatch;
+    load(assets);
     try {
-      spriteBatch = new SpriteBatch();
-
-      InputStream in = Gdx.files.internal("data/emplacement.obj").read();
-      shipMesh = ModelLoaderOld.loadObj(in);
-      in.close();
-
-      in = Gdx.files.internal("data/moon.obj").read();
-      moonMesh = ModelLoaderOld.loadObj(in);
-      in.close();
-
-      //in = Gdx.files.internal("data/alien.obj").read();
-      in = Gdx.files.internal("data/ufo.obj").read();
-      alienMesh = ModelLoaderOld.loadObj(in);
-      in.close();
-
-      in = Gdx.files.internal("data/block.obj").read();
-      blockMesh = ModelLoaderOld.loadObj(in);
-      in.close();
-
-      //in = Gdx.files.internal("data/shot.obj").read();
-      //in = Gdx.files.internal("data/laser.obj").read();
-      in = Gdx.files.internal("data/bomb.obj").read();
-      shotMesh = ModelLoaderOld.loadObj(in);
-      in.close();
-
-      rayMesh = shotMesh;
-
-      moonTexture = new Texture(Gdx.files.internal("data/moon.png"), Format.RGB565, true);
-      moonTexture.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-      shipTexture = new Texture(Gdx.files.internal("data/battery.png"), Format.RGB565, true);
-      shipTexture.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-
-      //alienTexture = new Texture(Gdx.files.internal("data/alien.png"), Format.RGB565, true);
-      alienTexture = new Texture(Gdx.files.internal("data/ufo.png"), Format.RGB565, true);
-      alienTexture.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-      //alienTexture.setFilter(TextureFilter.MipMap, TextureFilter.MipMap);
-      //alienTexture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
-
-      backgroundTexture = new Texture(Gdx.files.internal("data/starfield512.png"), Format.RGB565, true);
-      backgroundTexture.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-      earthTexture = new Texture(Gdx.files.internal("data/marble128.jpg"), Format.RGB565, true);
-      earthTexture.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-
-      explosionTexture = new Texture(Gdx.files.internal("data/explode.png"), Format.RGBA4444, true);
-      explosionTexture.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-      bombExplosionTexture = new Texture(Gdx.files.internal("data/explode-bomb.png"), Format.RGBA4444, true);
-      bombExplosionTexture.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-
-      explosionMesh = new Mesh(true, 4 * 16, 0, new VertexAttribute(Usage.Position, 3, "a_position"),
-        new VertexAttribute(Usage.TextureCoordinates, 2, "a_texCoord"));
-
-      float[] vertices = new float[4 * 16 * (3 + 2)];
-      int idx = 0;
-      for (int row = 0; row < 4; row++) {
-        for (int column = 0; column < 4; column++) {
-          vertices[idx++] = 1;
-          vertices[idx++] = 1;
-          vertices[idx++] = 0;
-          vertices[idx++] = 0.25f + column * 0.25f;
-          vertices[idx++] = 0 + row * 0.25f;
-
-          vertices[idx++] = -1;
-          vertices[idx++] = 1;
-          vertices[idx++] = 0;
-          vertices[idx++] = 0 + column * 0.25f;
-          vertices[idx++] = 0 + row * 0.25f;
-
-          vertices[idx++] = -1;
-          vertices[idx++] = -1;
-          vertices[idx++] = 0;
-          vertices[idx++] = 0f + column * 0.25f;
-          vertices[idx++] = 0.25f + row * 0.25f;
-
-          vertices[idx++] = 1;
-          vertices[idx++] = -1;
-          vertices[idx++] = 0;
-          vertices[idx++] = 0.25f + column * 0.25f;
-          vertices[idx++] = 0.25f + row * 0.25f;
-        }
-      }
-
-      explosionMesh.setVertices(vertices);
-      font = new BitmapFont(Gdx.files.internal(ShootOut.FONT10_FNT), Gdx.files.internal(ShootOut.FONT10_PNG), false);
 
-      camera = new PerspectiveCamera(67, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
-    } catch (Exception ex) {
-      ex.printStackTrace();
-    }
-  }
+      shipMesh = assets.get(SHIP_MESH, Mesh.class);
+      moonMeshes = getMeshes(assets, MOON_MESHES);
+      alienMeshes = getMeshes(assets, ALIEN_MESHES);
+      blockMesh = assets.get(BLOCK_MESH, Mesh.class);
 
-  public void render (Application app, Simulation simulation) {
-    GL10 gl = app.getGraphics().getGL10();
-    gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
-    gl.glViewport(0, 0, app.getGraphics().getWidth(), app.getGraphics().getHeight());
+      alienBatches = new MeshBatch[LOD_LEVELS];
+      for (int i = 0; i < LOD_LEVELS; i++)
+        alienBatches[i] = new MeshBatch(alienMeshes[i], ALIENS_PER_BATCH);
+      blockBatch = new MeshBatch(blockMesh, BLOCKS_PER_BATCH);
 
-    renderBackground(gl);
-    renderEarth(gl);
+      moonRadius = FrustumCuller.boundingRadius(moonMeshes[0]);
+      alienRadius = FrustumCuller.boundingRadius(alienMeshes[0]);
+      blockRadius = FrustumCuller.boundingRadius(blockMesh);
 
-    gl.glDisable(GL10.GL_DITHER);
-    gl.glEnable(GL10.GL_DEPTH_TEST);
-    gl.glEnable(GL10.GL_CULL_FACE);
+      shipAtlas = assets.get(ShootOut.SHIP_ATLAS, TextureAtlas.class);
+      shipTexture = findRegion(shipAtlas, "ship").getTexture();
+      sceneAtlas = assets.get(ShootOut.SCENE_ATLAS, TextureAtlas.class);
+      sceneTexture = findRegion(sceneAtlas, "alien").getTexture();
+      backdropAtlas = assets.get(ShootOut.BACKDROP_ATLAS, TextureAtlas.class);
+      backdrop = createBackdrop(backdropAtlas);
 
-    //setProjectionAndCamera(app.getGraphics(), simulation.ship, app);
-    setProjectionAndCameraAugmentedReality(app.getGraphics(), simulation, app);
-
-    setLighting(gl);
+      effectsAtlas = assets.get(ShootOut.EFFECTS_ATLAS, TextureAtlas.class);
+      explosionFrames = findFrames(effectsAtlas, "explosion");
+      bombExplosionFrames = findFrames(effectsAtlas, "bomb-explosion");
+      raySprite = findRegion(effectsAtlas, "ray");
+      billboards = new BillboardBatch(EFFECTS_PER_BATCH);
 
-    gl.glEnable(GL10.GL_TEXTURE_2D);
+      font = assets.get(ShootOut.FONT10_FNT, BitmapFont.class);
+      status = new HudLine(font, "lives: ", " wave: ", " score: ");
 
-    renderMoon(gl, simulation.ship);
-    renderShip(gl, simulation.ship, app);
-    renderAliens(gl, simulation.aliens);
+      camera = new PerspectiveCamera(67, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
 
-    gl.glDisable(GL10.GL_TEXTURE_2D);
-    renderBlocks(gl, simulation.blocks);
+      final int solid = RenderQueue.DEPTH_TEST | RenderQueue.CULL_FACE;
+      queue = new RenderQueue(MAX_COMMANDS, spriteBatch);
+      spriteMaterial = queue.addMaterial(RenderQueue.SPRITES, null, 1, 1, 1, 1);
+      backdropMaterial = queue.addMaterial(RenderQueue.SELF_TEXTURED, null, 1, 1, 1, 1);
+      shipMaterial = queue.addMaterial(solid | RenderQueue.TEXTURE_2D | RenderQueue.LIGHTING, shipTexture, 1, 1, 1, 1);
+      sceneMaterial = queue.addMaterial(solid | RenderQueue.TEXTURE_2D | RenderQueue.LIGHTING, sceneTexture, 1, 1, 1, 1);
+      blockMaterial = queue.addMaterial(solid | RenderQueue.LIGHTING | RenderQueue.BLEND, null, 0.2f, 0.2f, 1, 0.7f);
+      // The billboard batch binds the effects page itself.
+      effectsMaterial = queue.addMaterial(solid | RenderQueue.TEXTURE_2D | RenderQueue.BLEND | RenderQueue.VERTEX_COLORS,
+                                          null, 1, 1, 1, 1);
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+  }
 
-    gl.glDisable(GL10.GL_LIGHTING);
+  public void render (Application app, SimulationSnapshot simulation) {
+    render(app, simulation, 1);
+  }
 
-    //renderShots(gl, simulation.shots);
-    //renderRays(gl, simulation.mRays, true);
-    renderAlienRays(gl, simulation.mAlienRays);
-    renderPlayerRays(gl, simulation.mShipRays);
+  @Override public void render (Application app, SimulationSnapshot simulation, float alpha) {
+    this.app = app;
+    this.simulation = simulation;
+    this.alpha = alpha;
+    Ship ship = simulation.ship;
+    shipPosition.set(ship.previousPosition).lerp(ship.position, alpha);
 
-    gl.glEnable(GL10.GL_TEXTURE_2D);
-    renderExplosions(gl, simulation.explosions);
-    renderBombExplosions(gl, simulation.bombExplosions);
+    GL10 gl = app.getGraphics().getGL10();
+    resolution.update(app.getGraphics().getDeltaTime());
+    resolution.begin();
+    gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
 
-    gl.glDisable(GL10.GL_CULL_FACE);
-    gl.glDisable(GL10.GL_DEPTH_TEST);
+    //setProjectionAndCamera(app.getGraphics(), simulation.ship, app);
+    setProjectionAndCameraAugmentedReality(app.getGraphics(), simulation, app);
 
-    spriteBatch.setProjectionMatrix(viewMatrix);
-    spriteBatch.setTransformMatrix(transformMatrix);
-    spriteBatch.begin();
-    if (simulation.ship.lives != lastLives || simulation.score != lastScore || simulation.wave != lastWave) {
-      status = "lives: " + simulation.ship.lives + " wave: " + simulation.wave + " score: " + simulation.score;
-      lastLives = simulation.ship.lives;
-      lastScore = simulation.score;
-      lastWave = simulation.wave;
+    triangles = 0;
+    queue.begin();
+    queue.add(PASS_BACKDROP, backdropMaterial, 0, DRAW_BACKDROP);
+    if (culler.isVisible(0, shipPosition.y - MOON_RADIUS, 0, moonRadius * MOON_SCALE)) {
+      float distance = camera.position.dst(0, shipPosition.y - MOON_RADIUS, 0);
+      moonLevel = moonLod.select(0, distance / (moonRadius * MOON_SCALE));
+      queue.add(PASS_SCENE, sceneMaterial, distance / camera.far, DRAW_MOON);
     }
-    spriteBatch.enableBlending();
-    spriteBatch.setBlendFunction(GL10.GL_ONE, GL10.GL_ONE_MINUS_SRC_ALPHA);
-    font.draw(spriteBatch, status, 0, 320);
-    spriteBatch.end();
+    if (!ship.isExploding)
+      queue.add(PASS_SCENE, shipMaterial, depth(shipPosition.x, shipPosition.y, shipPosition.z), DRAW_SHIP);
+    if (simulation.getAliens().size() > 0) queue.add(PASS_SCENE, sceneMaterial, 0, DRAW_ALIENS);
+    if (simulation.getBlocks().size() > 0) queue.add(PASS_SCENE, blockMaterial, 0, DRAW_BLOCKS);
+    queue.add(PASS_SCENE, effectsMaterial, 0, DRAW_EFFECTS);
+    // Draws its own sprites, like the backdrop.
+    queue.add(PASS_UPSCALE, backdropMaterial, 0, DRAW_UPSCALE);
+    queue.add(PASS_HUD, spriteMaterial, 0, DRAW_STATUS);
+    queue.execute(gl, drawer);
+
+    this.app = null;
+    this.simulation = null;
 
     alienAngle += app.getGraphics().getDeltaTime() * 90;
     if (alienAngle > 360) alienAngle -= 360;
   }
 
-  private void renderBackground (GL10 gl) {
-    // TODO: Eliminate fixed number ortho projection.
-    //viewMatrix.setToOrtho2D(0, 0, 400, 320);
-    viewMatrix.setToOrtho2D(0, 0, 480, 320);
-    spriteBatch.setProjectionMatrix(viewMatrix);
-    spriteBatch.setTransformMatrix(transformMatrix);
-    spriteBatch.begin();
-    spriteBatch.disableBlending();
-    spriteBatch.setColor(Color.WHITE);
-    spriteBatch.draw(backgroundTexture, 0, 0, 480, 320, 0, 0, 512, 512, false, false);
-    spriteBatch.end();
-  }
-
-  private void renderEarth (GL10 gl) {
-    // TODO: Eliminate fixed number ortho projection.
-    final int TEXTURE_SIZE = 128;
-    viewMatrix.setToOrtho2D(0, 0, 480, 320);
-    spriteBatch.setProjectionMatrix(viewMatrix);
-    spriteBatch.setTransformMatrix(transformMatrix);
-    spriteBatch.begin();
-    spriteBatch.disableBlending();
-    spriteBatch.setColor(Color.WHITE);
-    spriteBatch.draw(earthTexture, 288, 48, TEXTURE_SIZE, TEXTURE_SIZE, 0, 0, TEXTURE_SIZE, TEXTURE_SIZE, false, false);
-    spriteBatch.end();
+  /**
+   * Sets up the view of a pass of the queue.
+   */
+  private void beginPass (int pass) {
+    if (pass == PASS_SCENE) {
+      GL10 gl = app.getGraphics().getGL10();
+      gl.glDisable(GL10.GL_DITHER);
+      camera.apply(gl);
+      setLighting(gl);
+    } else if (pass == PASS_HUD) {
+      // TODO: Eliminate fixed number ortho projection.
+      //viewMatrix.setToOrtho2D(0, 0, 400, 320);
+      viewMatrix.setToOrtho2D(0, 0, 480, 320);
+      spriteBatch.setProjectionMatrix(viewMatrix);
+      spriteBatch.setTransformMatrix(transformMatrix);
+    }
+  }
+
+  /**
+   * Draws a command of the queue.
+   * @return the draw calls it issued, sprites are counted by the queue
+   */
+  private int draw (int command) {
+    GL10 gl = app.getGraphics().getGL10();
+    switch (command) {
+    case DRAW_BACKDROP:
+      backdrop.draw();
+      return backdrop.getDrawCalls();
+    case DRAW_MOON:
+      renderMoon(gl);
+      return 1;
+    case DRAW_SHIP:
+      renderShip(gl, app);
+      return 1;
+    case DRAW_ALIENS:
+      return renderAliens(simulation.getAliens());
+    case DRAW_BLOCKS:
+      renderBlocks(simulation.getBlocks());
+      return blockBatch.getDrawCalls();
+    case DRAW_EFFECTS:
+      renderEffects(simulation);
+      return billboards.getDrawCalls();
+    case DRAW_STATUS:
+      renderStatus(simulation);
+      return 0;
+    case DRAW_UPSCALE:
+      resolution.end();
+      resolution.draw(spriteBatch);
+      return resolution.isScaled() ? 1 : 0;
+    default:
+      throw new IllegalArgumentException("Unknown command: " + command);
+    }
+  }
+
+  private void renderStatus (SimulationSnapshot simulation) {
+    status.set(STATUS_LIVES, simulation.ship.lives);
+    status.set(STATUS_WAVE, simulation.wave);
+    status.set(STATUS_SCORE, simulation.score);
+    spriteBatch.enableBlending();
+    spriteBatch.setBlendFunction(GL10.GL_ONE, GL10.GL_ONE_MINUS_SRC_ALPHA);
+    status.draw(spriteBatch, 0, 320);
   }
 
   final Vector3 dir = new Vector3();
 
-  private void setProjectionAndCameraAugmentedReality(Graphics graphics, Simulation simulation, Application app) {
+  private void setProjectionAndCameraAugmentedReality(Graphics graphics, SimulationSnapshot simulation, Application app) {
 
     //camera.position.set(0, 6, 2);
     //camera.direction.set(0, 0, -4).sub(camera.position).nor();
@@ -289,14 +362,15 @@ public class Renderer {
     camera.direction.set(0, 0, 1);
     camera.up.set(0, 1, 0);
 
-    camera.rotate(simulation.getAzimuth() , 0 , 1 , 0);
+    camera.rotate(simulation.azimuth , 0 , 1 , 0);
     Vector3 pivot = camera.direction.cpy().crs(camera.up);
 
-    camera.rotate(simulation.getPitch(), pivot.x, pivot.y, pivot.z);
-    camera.rotate(simulation.getRoll(), camera.direction.x, camera.direction.y, camera.direction.z);
+    camera.rotate(simulation.pitch, pivot.x, pivot.y, pivot.z);
+    camera.rotate(simulation.roll, camera.direction.x, camera.direction.y, camera.direction.z);
 
+    // Applied when the queue reaches the scene pass, the backdrop sprites load their own matrices.
     camera.update();
-    camera.apply(Gdx.gl10);
+    culler.begin(camera.frustum);
   }
 
   private void setProjectionAndCamera (Graphics graphics, Ship ship, Application app) {
@@ -306,71 +380,75 @@ public class Renderer {
     camera.direction.set(ship.position.x, 0, -4).sub(camera.position).nor();
 
     camera.update();
-    camera.apply(Gdx.gl10);
+    culler.begin(camera.frustum);
   }
 
   float[] direction = {1, 0.5f, 0, 0};
 
+  /**
+   * Positions the light in the current view. The queue switches lighting itself per material.
+   */
   private void setLighting (GL10 gl) {
-    gl.glEnable(GL10.GL_LIGHTING);
     gl.glEnable(GL10.GL_LIGHT0);
     gl.glLightfv(GL10.GL_LIGHT0, GL10.GL_POSITION, direction, 0);
     gl.glEnable(GL10.GL_COLOR_MATERIAL);
   }
 
-  private void renderMoon (GL10 gl, Ship ship) {
-    moonTexture.bind();
+  private void renderMoon (GL10 gl) {
     gl.glPushMatrix();
-    final float MOON_RADIUS = 10.0f;
-    final float MOON_SCALE  = MOON_RADIUS;
 
     //gl.glTranslatef(ship.position.x, ship.position.y - MOON_RADIUS, ship.position.z);
-    gl.glTranslatef(0.0f, ship.position.y - MOON_RADIUS, 0.0f);
+    gl.glTranslatef(0.0f, shipPosition.y - MOON_RADIUS, 0.0f);
     gl.glScalef(MOON_SCALE, MOON_SCALE, MOON_SCALE);
     //gl.glRotatef(45 * (-app.getInput().getAccelerometerY() / 5), 0, 0, 1);
     //gl.glRotatef(180, 0, 1, 0);
 
-    moonMesh.render(GL10.GL_TRIANGLES);
+    Mesh mesh = moonMeshes[moonLevel];
+    mesh.render(GL10.GL_TRIANGLES);
+    triangles += MeshLoader.getTriangles(mesh);
     gl.glPopMatrix();
   }
 
-  private void renderShip (GL10 gl, Ship ship, Application app) {
-    if (ship.isExploding) return;
-
-    shipTexture.bind();
+  private void renderShip (GL10 gl, Application app) {
     gl.glPushMatrix();
-    gl.glTranslatef(ship.position.x, ship.position.y, ship.position.z);
+    gl.glTranslatef(shipPosition.x, shipPosition.y, shipPosition.z);
     gl.glRotatef(45 * (-app.getInput().getAccelerometerY() / 5), 0, 0, 1);
     gl.glRotatef(180, 0, 1, 0);
     shipMesh.render(GL10.GL_TRIANGLES);
+    triangles += MeshLoader.getTriangles(shipMesh);
     gl.glPopMatrix();
   }
 
-  private void renderAliens (GL10 gl, ArrayList<Alien> aliens) {
-    alienTexture.bind();
+  /**
+   * @return the draw calls of all levels of detail
+   */
+  private int renderAliens (EntityView aliens) {
+    final MeshBatch[] batches = alienBatches;
+    for (int i = 0; i < batches.length; i++)
+      batches[i].begin();
     for (int i = 0; i < aliens.size(); i++) {
-      Alien alien = aliens.get(i);
-      gl.glPushMatrix();
-      gl.glTranslatef(alien.position.x, alien.position.y, alien.position.z);
-      gl.glRotatef(alienAngle, 0, 1, 0);
-      alienMesh.render(GL10.GL_TRIANGLES);
-      gl.glPopMatrix();
+      float x = lerpX(aliens, i), y = lerpY(aliens, i), z = lerpZ(aliens, i);
+      if (!culler.isVisible(x, y, z, alienRadius)) continue;
+      int level = alienLod.select(aliens.getHandle(i), camera.position.dst(x, y, z) / alienRadius);
+      batches[level].add(x, y, z, alienAngle, 1);
+    }
+    int drawCalls = 0;
+    for (int i = 0; i < batches.length; i++) {
+      batches[i].end();
+      drawCalls += batches[i].getDrawCalls();
+      triangles += batches[i].getTriangles();
     }
+    return drawCalls;
   }
 
-  private void renderBlocks (GL10 gl, ArrayList<Block> blocks) {
-    gl.glEnable(GL10.GL_BLEND);
-    gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
-    gl.glColor4f(0.2f, 0.2f, 1, 0.7f);
+  private void renderBlocks (EntityView blocks) {
+    blockBatch.begin();
     for (int i = 0; i < blocks.size(); i++) {
-      Block block = blocks.get(i);
-      gl.glPushMatrix();
-      gl.glTranslatef(block.position.x, block.position.y, block.position.z);
-      blockMesh.render(GL10.GL_TRIANGLES);
-      gl.glPopMatrix();
+      float x = blocks.getX(i), y = blocks.getY(i), z = blocks.getZ(i);
+      if (culler.isVisible(x, y, z, blockRadius)) blockBatch.add(x, y, z, 0, 1);
     }
-    gl.glColor4f(1, 1, 1, 1);
-    gl.glDisable(GL10.GL_BLEND);
+    blockBatch.end();
+    triangles += blockBatch.getTriangles();
   }
 
 //  private void renderShots (GL10 gl, ArrayList<Shot> shots) {
@@ -385,77 +463,162 @@ public class Renderer {
 //    gl.glColor4f(1, 1, 1, 1);
 //  }
 
-  private void renderPlayerRays (GL10 gl, ArrayList<RayShot> rays) {
-    //0, 215, 237
-    gl.glColor4f(0, 215/255.0f, 237/255.0f, 1);
-    for (RayShot ray : rays) {
-      gl.glPushMatrix();
-      gl.glTranslatef(ray.position.x, ray.position.y, ray.position.z);
-      gl.glScalef(
-          ray.radius,
-          ray.radius,
-          ray.radius
-      );
-      rayMesh.render(GL10.GL_TRIANGLES);
-      gl.glPopMatrix();
-    }
-    // Reset color to white?.
-    gl.glColor4f(1, 1, 1, 1);
-  }
-
-  private void renderAlienRays (GL10 gl, ArrayList<RayShot> rays) {
-    gl.glColor4f(1, 1, 0, 1);
-    for (RayShot ray : rays) {
-      gl.glPushMatrix();
-      gl.glTranslatef(ray.position.x, ray.position.y, ray.position.z);
-      gl.glScalef(
-          ray.radius,
-          ray.radius,
-          ray.radius
-      );
-      rayMesh.render(GL10.GL_TRIANGLES);
-      gl.glPopMatrix();
-    }
-    // Reset color to white?.
-    gl.glColor4f(1, 1, 1, 1);
+  /**
+   * Draws the rays and both kinds of explosions as sprites from the effects atlas, usually in one draw call.
+   */
+  private void renderEffects (SimulationSnapshot simulation) {
+    billboards.begin(camera, null);
+    addRays(simulation.getAlienRays(), ALIEN_RAY_COLOR);
+    addRays(simulation.getShipRays(), PLAYER_RAY_COLOR);
+    addExplosions(simulation.getExplosions(), explosionFrames);
+    addExplosions(simulation.getBombExplosions(), bombExplosionFrames);
+    billboards.end();
   }
 
-  private void renderExplosions (GL10 gl, ArrayList<Explosion> explosions) {
-    gl.glEnable(GL10.GL_BLEND);
-    gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
-    explosionTexture.bind();
-    for (int i = 0; i < explosions.size(); i++) {
-      Explosion explosion = explosions.get(i);
-      gl.glPushMatrix();
-      gl.glTranslatef(explosion.position.x, explosion.position.y, explosion.position.z);
-      explosionMesh.render(GL10.GL_TRIANGLE_FAN, (int)((explosion.aliveTime / Explosion.EXPLOSION_LIVE_TIME) * 15) * 4, 4);
-      gl.glPopMatrix();
+  private void addRays (EntityView rays, float color) {
+    for (int i = 0; i < rays.size(); i++) {
+      float x = lerpX(rays, i), y = lerpY(rays, i), z = lerpZ(rays, i), size = RAY_SIZE * rays.getRadius(i);
+      if (culler.isVisible(x, y, z, size)) billboards.draw(raySprite, x, y, z, size, color);
     }
-    gl.glDisable(GL10.GL_BLEND);
   }
 
-  private void renderBombExplosions (GL10 gl, ArrayList<Explosion> explosions) {
-    gl.glEnable(GL10.GL_BLEND);
-    gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
-    bombExplosionTexture.bind();
+  private void addExplosions (EntityView explosions, TextureRegion[] frames) {
     for (int i = 0; i < explosions.size(); i++) {
-      Explosion explosion = explosions.get(i);
-      gl.glPushMatrix();
-      gl.glTranslatef(explosion.position.x, explosion.position.y, explosion.position.z);
-      explosionMesh.render(GL10.GL_TRIANGLE_FAN, (int)((explosion.aliveTime / Explosion.EXPLOSION_LIVE_TIME) * 15) * 4, 4);
-      gl.glPopMatrix();
+      float x = explosions.getX(i), y = explosions.getY(i), z = explosions.getZ(i);
+      if (!culler.isVisible(x, y, z, EXPLOSION_RADIUS)) continue;
+      int frame = (int)((explosions.getTime(i) / Explosion.EXPLOSION_LIVE_TIME) * (EXPLOSION_FRAMES - 1));
+      frame = Math.max(0, Math.min(EXPLOSION_FRAMES - 1, frame));
+      billboards.draw(frames[frame], x, y, z, EXPLOSION_SIZE, EXPLOSION_COLOR);
     }
-    gl.glDisable(GL10.GL_BLEND);
   }
 
   ////////////////////////////////////////
   // Utility
   ////////////////////////////////////////
-  public Camera getCamera() {
+  /**
+   * @return the distance of a point from the camera, 0 at the camera and 1 at the far plane
+   */
+  private float depth (float x, float y, float z) {
+    return camera.position.dst(x, y, z) / camera.far;
+  }
+
+  /**
+   * Takes a reference to the meshes, atlases and the font both renderers draw with.
+   */
+  public static void load (Assets assets) {
+    assets.load(SHIP_MESH, Mesh.class);
+    assets.load(BLOCK_MESH, Mesh.class);
+    for (int level = 0; level < LOD_LEVELS; level++) {
+      assets.load(MOON_MESHES[level], Mesh.class);
+      assets.load(ALIEN_MESHES[level], Mesh.class);
+    }
+    assets.load(ShootOut.SHIP_ATLAS, TextureAtlas.class);
+    assets.load(ShootOut.SCENE_ATLAS, TextureAtlas.class);
+    assets.load(ShootOut.BACKDROP_ATLAS, TextureAtlas.class);
+    assets.load(ShootOut.EFFECTS_ATLAS, TextureAtlas.class);
+    assets.load(ShootOut.FONT10_FNT, BitmapFont.class);
+  }
+
+  /**
+   * Gives back the references {@link #load(Assets)} took.
+   */
+  public static void unload (Assets assets) {
+    assets.unload(SHIP_MESH, Mesh.class);
+    assets.unload(BLOCK_MESH, Mesh.class);
+    for (int level = 0; level < LOD_LEVELS; level++) {
+      assets.unload(MOON_MESHES[level], Mesh.class);
+      assets.unload(ALIEN_MESHES[level], Mesh.class);
+    }
+    assets.unload(ShootOut.SHIP_ATLAS, TextureAtlas.class);
+    assets.unload(ShootOut.SCENE_ATLAS, TextureAtlas.class);
+    assets.unload(ShootOut.BACKDROP_ATLAS, TextureAtlas.class);
+    assets.unload(ShootOut.EFFECTS_ATLAS, TextureAtlas.class);
+    assets.unload(ShootOut.FONT10_FNT, BitmapFont.class);
+  }
+
+  /**
+   * @return the paths of the full mesh of a model in the packed assets followed by its simplified ones
+   */
+  private static String[] lodPaths (String name) {
+    String[] paths = new String[LOD_LEVELS];
+    for (int level = 0; level < LOD_LEVELS; level++)
+      paths[level] = "data/packed/" + name + (level == 0 ? "" : "-lod" + level);
+    return paths;
+  }
+
+  static Mesh[] getMeshes (Assets assets, String[] paths) {
+    Mesh[] meshes = new Mesh[paths.length];
+    for (int i = 0; i < paths.length; i++)
+      meshes[i] = assets.get(paths[i], Mesh.class);
+    return meshes;
+  }
+
+  /**
+   * @return the starfield with the earth in front of it, in the 480x320 screen the 2D parts are drawn in
+   */
+  static StaticLayer createBackdrop (TextureAtlas atlas) {
+    // TODO: Eliminate fixed number ortho projection.
+    final int EARTH_SIZE = 128;
+    StaticLayer layer = new StaticLayer(480, 320, 2);
+    layer.add(findRegion(atlas, "starfield"), 0, 0, 480, 320);
+    layer.add(findRegion(atlas, "earth"), 288, 48, EARTH_SIZE, EARTH_SIZE);
+    return layer;
+  }
+
+  /**
+   * @return the region of a single image in the atlas
+   */
+  static TextureRegion findRegion (TextureAtlas atlas, String name) {
+    TextureRegion region = atlas.findRegion(name);
+    if (region == null) throw new GdxRuntimeException("No region in the atlas: " + name);
+    return region;
+  }
+
+  /**
+   * @return the frames of a flipbook in the atlas, ordered by index
+   */
+  static TextureRegion[] findFrames (TextureAtlas atlas, String name) {
+    List<AtlasRegion> regions = atlas.findRegions(name);
+    if (regions.isEmpty()) throw new GdxRuntimeException("No frames in the atlas: " + name);
+    return regions.toArray(new TextureRegion[regions.size()]);
+  }
+
+  private float lerpX (EntityView view, int i) {
+    float previous = view.getPreviousX(i);
+    return previous + (view.getX(i) - previous) * alpha;
+  }
+
+  private float lerpY (EntityView view, int i) {
+    float previous = view.getPreviousY(i);
+    return previous + (view.getY(i) - previous) * alpha;
+  }
+
+  private float lerpZ (EntityView view, int i) {
+    float previous = view.getPreviousZ(i);
+    return previous + (view.getZ(i) - previous) * alpha;
+  }
+
+  @Override public FrustumCuller getCuller () {
+    return culler;
+  }
+
+  @Override public RenderQueue getRenderQueue () {
+    return queue;
+  }
+
+  @Override public DynamicResolution getResolution () {
+    return resolution;
+  }
+
+  @Override public int getTriangles () {
+    return triangles;
+  }
+
+  @Override public Camera getCamera() {
     return camera;
   }
 
-  public void unproject(Vector3 touchLocation) {
+  @Override public void unproject(Vector3 touchLocation) {
     Vector3 newLocation = new Vector3(touchLocation);
     camera.unproject(touchLocation);
     //Gdx.app.log(TAG, String.format("unproject from: (%s) to: (%s)",
@@ -464,17 +627,19 @@ public class Renderer {
     //                               ));
   }
 
-  public void dispose () {
-    spriteBatch.dispose();
-    shipTexture.dispose();
-    alienTexture.dispose();
-    backgroundTexture.dispose();
-    explosionTexture.dispose();
-    font.dispose();
-    explosionMesh.dispose();
-    shipMesh.dispose();
-    alienMesh.dispose();
-    shotMesh.dispose();
-    blockMesh.dispose();
+  /**
+   * Nothing to restore, the fixed function state is set up every frame.
+   */
+  @Override public void resume () {
+  }
+
+  @Override public void dispose () {
+    backdrop.dispose();
+    unload(assets);
+    for (int i = 0; i < LOD_LEVELS; i++)
+      alienBatches[i].dispose();
+    blockBatch.dispose();
+    billboards.dispose();
+    resolution.dispose();
   }
 }
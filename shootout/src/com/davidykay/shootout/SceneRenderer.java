@@ -0,0 +1,55 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Vector3;
+import com.davidykay.shootout.simulation.SimulationSnapshot;
+
+/**
+ * Draws the game scene. {@link Renderer} does it with the GL10 fixed function pipeline, {@link ShaderRenderer} with GL20
+ * shaders. {@link ShootOut#newRenderer(Application, Assets, SpriteBatch)} picks the one matching the context the
+ * application was started with.
+ */
+public interface SceneRenderer {
+  /**
+   * Renders the snapshot blended between its previous and current tick.
+   * @param alpha 0 draws the state at the start of the last tick, 1 the state after it
+   */
+  public void render (Application app, SimulationSnapshot simulation, float alpha);
+
+  /**
+   * @return the camera of the last rendered frame, used to turn touches into pick rays
+   */
+  public Camera getCamera ();
+
+  /**
+   * @return the frustum culling, its counts tell how many objects the last frame drew and skipped
+   */
+  public FrustumCuller getCuller ();
+
+  /**
+   * @return the queue the last frame was drawn through, its counts tell the state changes and draw calls, null if the
+   *         renderer draws directly
+   */
+  public RenderQueue getRenderQueue ();
+
+  /**
+   * @return triangles of the meshes the last frame drew, after culling and level of detail
+   */
+  public int getTriangles ();
+
+  /**
+   * @return the scaling of the scene resolution, its scale tells the part of the screen resolution drawn at
+   */
+  public DynamicResolution getResolution ();
+
+  public void unproject (Vector3 touchLocation);
+
+  /**
+   * Restores GL state after the context was lost, once libgdx reloaded its managed textures, meshes and shaders.
+   */
+  public void resume ();
+
+  public void dispose ();
+}
@@ -0,0 +1,564 @@
+package com.davidykay.shootout;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.davidykay.shootout.simulation.EntityView;
+import com.davidykay.shootout.simulation.Explosion;
+import com.davidykay.shootout.simulation.Ship;
+import com.davidykay.shootout.simulation.SimulationSnapshot;
+
+/**
+ * Draws the same scene as {@link Renderer} with GL20 shaders. The fixed function lighting of the GL10 path, a directional
+ * light plus the default global ambient with the color as material, is done per vertex in the lit shader. Rays and
+ * explosions are camera facing sprites with their own shader.
+ *
+ * Draws are grouped by shader, uniform locations are looked up once per link and uniforms and textures are only
+ * sent when they changed since the last draw. {@link #resume()} looks the locations up again after a context loss.
+ */
+public class ShaderRenderer implements SceneRenderer {
+  /** copies drawn per draw call, bounds the dynamic vertex buffers of the batches **/
+  private static final int ALIENS_PER_BATCH = 32;
+  private static final int BLOCKS_PER_BATCH = 64;
+
+  /** the light of the GL10 path, a direction in world space **/
+  private static final float LIGHT_X = 1;
+  private static final float LIGHT_Y = 0.5f;
+  private static final float LIGHT_Z = 0;
+
+  private static final String LIT_VERTEX_SHADER =
+      "attribute vec4 a_position;\n"
+    + "attribute vec3 a_normal;\n"
+    + "attribute vec2 a_texCoord0;\n"
+    + "uniform mat4 u_projView;\n"
+    + "uniform mat4 u_model;\n"
+    + "uniform vec3 u_lightDirection;\n"
+    + "uniform vec4 u_color;\n"
+    + "varying vec4 v_color;\n"
+    + "varying vec2 v_texCoord;\n"
+    + "void main() {\n"
+    + "  vec3 normal = normalize((u_model * vec4(a_normal, 0.0)).xyz);\n"
+    // 0.2 is the default global ambient of GL10.
+    + "  float light = 0.2 + max(dot(normal, u_lightDirection), 0.0);\n"
+    + "  v_color = vec4(min(u_color.rgb * light, 1.0), u_color.a);\n"
+    + "  v_texCoord = a_texCoord0;\n"
+    + "  gl_Position = u_projView * (u_model * a_position);\n"
+    + "}\n";
+
+  /** camera facing sprites, already in world space and tinted per vertex **/
+  private static final String BILLBOARD_VERTEX_SHADER =
+      "attribute vec4 a_position;\n"
+    + "attribute vec4 a_color;\n"
+    + "attribute vec2 a_texCoord0;\n"
+    + "uniform mat4 u_projView;\n"
+    + "varying vec4 v_color;\n"
+    + "varying vec2 v_texCoord;\n"
+    + "void main() {\n"
+    + "  v_color = a_color;\n"
+    + "  v_texCoord = a_texCoord0;\n"
+    + "  gl_Position = u_projView * a_position;\n"
+    + "}\n";
+
+  /** modulates the color with the texture like GL10 does, or skips the texture **/
+  private static final String FRAGMENT_SHADER =
+      "#ifdef GL_ES\n"
+    + "precision mediump float;\n"
+    + "#endif\n"
+    + "uniform sampler2D u_texture;\n"
+    + "uniform float u_textured;\n"
+    + "varying vec4 v_color;\n"
+    + "varying vec2 v_texCoord;\n"
+    + "void main() {\n"
+    + "  vec4 texel = mix(vec4(1.0), texture2D(u_texture, v_texCoord), u_textured);\n"
+    + "  gl_FragColor = v_color * texel;\n"
+    + "}\n";
+
+  /** holds a reference to the meshes, atlases and the font while the renderer lives **/
+  private final Assets assets;
+  /** sprite batch to draw the backdrop and text, shared with the screens **/
+  private final SpriteBatch spriteBatch;
+  /** lit textured meshes **/
+  private Program litProgram;
+  /** rays and explosions **/
+  private Program billboardProgram;
+  /** the moon meshes by level of detail **/
+  private Mesh[] moonMeshes;
+  /** the ship mesh **/
+  private Mesh shipMesh;
+  /** the alien meshes by level of detail **/
+  private Mesh[] alienMeshes;
+  /** the ship's page, and the moon and alien on one page, the meshes' texture coordinates point into them **/
+  private TextureAtlas shipAtlas;
+  private Texture shipTexture;
+  private TextureAtlas sceneAtlas;
+  private Texture sceneTexture;
+  /** the block mesh **/
+  private Mesh blockMesh;
+  /** draws all aliens in a few draw calls per level of detail **/
+  private MeshBatch[] alienBatches;
+  /** draws all shield blocks in one draw call **/
+  private MeshBatch blockBatch;
+  /** skips objects outside the camera frustum **/
+  private final FrustumCuller culler = new FrustumCuller();
+  /** bounding sphere radii of the meshes at scale 1 **/
+  private float moonRadius;
+  private float alienRadius;
+  private float blockRadius;
+  /** pick the meshes by distance in bounding radii, the moon is always the entity with handle 0 **/
+  private final LodSelector moonLod = new LodSelector(Renderer.LOD_MARGIN, 3, 6);
+  private final LodSelector alienLod = new LodSelector(Renderer.LOD_MARGIN, 6, 10);
+  /** triangles of the meshes drawn in the current frame **/
+  private int triangles;
+  /** starfield and earth, drawn from a static vertex buffer **/
+  private TextureAtlas backdropAtlas;
+  private StaticLayer backdrop;
+  /** explosion flipbooks and the ray sprite on one page **/
+  private TextureAtlas effectsAtlas;
+  private TextureRegion[] explosionFrames;
+  private TextureRegion[] bombExplosionFrames;
+  private TextureRegion raySprite;
+  /** draws all rays and explosions facing the camera **/
+  private BillboardBatch billboards;
+  /** the font **/
+  private BitmapFont font;
+  /** renders the backdrop and the scene below the screen resolution when frames run late **/
+  private final DynamicResolution resolution = new DynamicResolution(Renderer.TARGET_FRAME_TIME,
+                                                                     Renderer.MIN_RESOLUTION_SCALE,
+                                                                     Renderer.MAX_RESOLUTION_SCALE);
+  /** the rotation angle of all aliens around y **/
+  private float alienAngle = 0;
+  /** lives, wave and score, patched in place as they change **/
+  private HudLine status;
+
+  /** view and transform matrix for text rendering **/
+  private final Matrix4 viewMatrix = new Matrix4();
+  private final Matrix4 transformMatrix = new Matrix4();
+  /** model matrix of the mesh being drawn and a scratch matrix to build it **/
+  private final Matrix4 model = new Matrix4();
+  private final Matrix4 rotation = new Matrix4();
+
+  /** perspective camera **/
+  private PerspectiveCamera camera;
+  private final Vector3 pivot = new Vector3();
+
+  /** texture bound to unit 0 by us, null when something else may have bound one **/
+  private Texture boundTexture;
+
+  /** how far we are between the previous and the current simulation tick **/
+  private float alpha = 1;
+  /** interpolated ship position **/
+  private final Vector3 shipPosition = new Vector3();
+
+  /**
+   * @param assets has everything {@link Renderer#load(Assets)} queues loaded
+   * @param spriteBatch the batch to draw text and sprites with, not disposed by the renderer
+   */
+  public ShaderRenderer (Application app, Assets assets, SpriteBatch spriteBatch) {
+    this.assets = assets;
+    this.spriteBatch = spriteBatch;
+    Renderer.load(assets);
+    litProgram = new Program(LIT_VERTEX_SHADER, FRAGMENT_SHADER);
+    billboardProgram = new Program(BILLBOARD_VERTEX_SHADER, FRAGMENT_SHADER);
+
+    shipMesh = assets.get(Renderer.SHIP_MESH, Mesh.class);
+    moonMeshes = Renderer.getMeshes(assets, Renderer.MOON_MESHES);
+    alienMeshes = Renderer.getMeshes(assets, Renderer.ALIEN_MESHES);
+    blockMesh = assets.get(Renderer.BLOCK_MESH, Mesh.class);
+
+    alienBatches = new MeshBatch[Renderer.LOD_LEVELS];
+    for (int i = 0; i < Renderer.LOD_LEVELS; i++)
+      alienBatches[i] = new MeshBatch(alienMeshes[i], ALIENS_PER_BATCH);
+    blockBatch = new MeshBatch(blockMesh, BLOCKS_PER_BATCH);
+
+    moonRadius = FrustumCuller.boundingRadius(moonMeshes[0]);
+    alienRadius = FrustumCuller.boundingRadius(alienMeshes[0]);
+    blockRadius = FrustumCuller.boundingRadius(blockMesh);
+
+    shipAtlas = assets.get(ShootOut.SHIP_ATLAS, TextureAtlas.class);
+    shipTexture = Renderer.findRegion(shipAtlas, "ship").getTexture();
+    sceneAtlas = assets.get(ShootOut.SCENE_ATLAS, TextureAtlas.class);
+    sceneTexture = Renderer.findRegion(sceneAtlas, "alien").getTexture();
+    backdropAtlas = assets.get(ShootOut.BACKDROP_ATLAS, TextureAtlas.class);
+    backdrop = Renderer.createBackdrop(backdropAtlas);
+
+    effectsAtlas = assets.get(ShootOut.EFFECTS_ATLAS, TextureAtlas.class);
+    explosionFrames = Renderer.findFrames(effectsAtlas, "explosion");
+    bombExplosionFrames = Renderer.findFrames(effectsAtlas, "bomb-explosion");
+    raySprite = Renderer.findRegion(effectsAtlas, "ray");
+    billboards = new BillboardBatch(Renderer.EFFECTS_PER_BATCH);
+
+    font = assets.get(ShootOut.FONT10_FNT, BitmapFont.class);
+    status = new HudLine(font, "lives: ", " wave: ", " score: ");
+
+    camera = new PerspectiveCamera(67, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+  }
+
+  @Override public void render (Application app, SimulationSnapshot simulation, float alpha) {
+    this.alpha = alpha;
+    Ship ship = simulation.ship;
+    shipPosition.set(ship.previousPosition).lerp(ship.position, alpha);
+    triangles = 0;
+
+    GL20 gl = app.getGraphics().getGL20();
+    resolution.update(app.getGraphics().getDeltaTime());
+    resolution.begin();
+    gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
+
+    backdrop.draw();
+    // The layer bound its own texture.
+    boundTexture = null;
+
+    gl.glDisable(GL20.GL_DITHER);
+    gl.glEnable(GL20.GL_DEPTH_TEST);
+    gl.glEnable(GL20.GL_CULL_FACE);
+
+    setCamera(simulation);
+
+    // Lit meshes, the textured ones all sample the scene page.
+    Program program = litProgram;
+    program.begin(camera.combined);
+    program.setTextured(true);
+    program.setColor(1, 1, 1, 1);
+    renderMoon(program);
+    renderShip(program, ship, app);
+    renderAliens(program, simulation.getAliens());
+    program.setTextured(false);
+    renderBlocks(gl, program, simulation.getBlocks());
+    program.end();
+
+    // Rays and explosions.
+    program = billboardProgram;
+    program.begin(camera.combined);
+    program.setTextured(true);
+    renderEffects(gl, program, simulation);
+    program.end();
+
+    gl.glDisable(GL20.GL_CULL_FACE);
+    gl.glDisable(GL20.GL_DEPTH_TEST);
+
+    // The HUD is drawn at the screen resolution over the scaled up scene.
+    resolution.end();
+    resolution.draw(spriteBatch);
+    boundTexture = null;
+    renderHud(simulation);
+
+    alienAngle += app.getGraphics().getDeltaTime() * 90;
+    if (alienAngle > 360) alienAngle -= 360;
+  }
+
+  private void renderHud (SimulationSnapshot simulation) {
+    viewMatrix.setToOrtho2D(0, 0, 480, 320);
+    spriteBatch.setProjectionMatrix(viewMatrix);
+    spriteBatch.setTransformMatrix(transformMatrix);
+    spriteBatch.begin();
+    status.set(Renderer.STATUS_LIVES, simulation.ship.lives);
+    status.set(Renderer.STATUS_WAVE, simulation.wave);
+    status.set(Renderer.STATUS_SCORE, simulation.score);
+    spriteBatch.enableBlending();
+    spriteBatch.setBlendFunction(GL20.GL_ONE, GL20.GL_ONE_MINUS_SRC_ALPHA);
+    status.draw(spriteBatch, 0, 320);
+    spriteBatch.end();
+  }
+
+  /**
+   * Same camera as {@link Renderer}, aimed by the device orientation.
+   */
+  private void setCamera (SimulationSnapshot simulation) {
+    camera.position.set(0, 1, 2);
+    camera.direction.set(0, 0, 1);
+    camera.up.set(0, 1, 0);
+
+    camera.rotate(simulation.azimuth, 0, 1, 0);
+    pivot.set(camera.direction).crs(camera.up);
+
+    camera.rotate(simulation.pitch, pivot.x, pivot.y, pivot.z);
+    camera.rotate(simulation.roll, camera.direction.x, camera.direction.y, camera.direction.z);
+
+    camera.update();
+    culler.begin(camera.frustum);
+  }
+
+  private void renderMoon (Program program) {
+    final float MOON_RADIUS = Renderer.MOON_RADIUS;
+    final float MOON_SCALE = Renderer.MOON_SCALE;
+    if (!culler.isVisible(0, shipPosition.y - MOON_RADIUS, 0, moonRadius * MOON_SCALE)) return;
+    float distance = camera.position.dst(0, shipPosition.y - MOON_RADIUS, 0);
+    Mesh mesh = moonMeshes[moonLod.select(0, distance / (moonRadius * MOON_SCALE))];
+
+    bind(sceneTexture);
+    model.setToTranslationAndScaling(0, shipPosition.y - MOON_RADIUS, 0, MOON_SCALE, MOON_SCALE, MOON_SCALE);
+    program.setModel(model);
+    mesh.render(program.shader, GL20.GL_TRIANGLES);
+    triangles += MeshLoader.getTriangles(mesh);
+  }
+
+  private void renderShip (Program program, Ship ship, Application app) {
+    if (ship.isExploding) return;
+
+    bind(shipTexture);
+    model.setToTranslation(shipPosition.x, shipPosition.y, shipPosition.z);
+    model.mul(rotation.setToRotation(0, 0, 1, 45 * (-app.getInput().getAccelerometerY() / 5)));
+    model.mul(rotation.setToRotation(0, 1, 0, 180));
+    program.setModel(model);
+    shipMesh.render(program.shader, GL20.GL_TRIANGLES);
+    triangles += MeshLoader.getTriangles(shipMesh);
+  }
+
+  private void renderAliens (Program program, EntityView aliens) {
+    if (aliens.size() == 0) return;
+    bind(sceneTexture);
+    program.setModelIdentity();
+    final MeshBatch[] batches = alienBatches;
+    for (int i = 0; i < batches.length; i++)
+      batches[i].begin(program.shader);
+    for (int i = 0; i < aliens.size(); i++) {
+      float x = lerpX(aliens, i), y = lerpY(aliens, i), z = lerpZ(aliens, i);
+      if (!culler.isVisible(x, y, z, alienRadius)) continue;
+      int level = alienLod.select(aliens.getHandle(i), camera.position.dst(x, y, z) / alienRadius);
+      batches[level].add(x, y, z, alienAngle, 1);
+    }
+    for (int i = 0; i < batches.length; i++) {
+      batches[i].end();
+      triangles += batches[i].getTriangles();
+    }
+  }
+
+  private void renderBlocks (GL20 gl, Program program, EntityView blocks) {
+    if (blocks.size() == 0) return;
+    gl.glEnable(GL20.GL_BLEND);
+    gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+    program.setColor(0.2f, 0.2f, 1, 0.7f);
+    program.setModelIdentity();
+    blockBatch.begin(program.shader);
+    for (int i = 0; i < blocks.size(); i++) {
+      float x = blocks.getX(i), y = blocks.getY(i), z = blocks.getZ(i);
+      if (culler.isVisible(x, y, z, blockRadius)) blockBatch.add(x, y, z, 0, 1);
+    }
+    blockBatch.end();
+    triangles += blockBatch.getTriangles();
+    gl.glDisable(GL20.GL_BLEND);
+  }
+
+  /**
+   * Draws the rays and both kinds of explosions as sprites from the effects atlas, usually in one draw call.
+   */
+  private void renderEffects (GL20 gl, Program program, SimulationSnapshot simulation) {
+    gl.glEnable(GL20.GL_BLEND);
+    gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+    billboards.begin(camera, program.shader);
+    addRays(simulation.getAlienRays(), Renderer.ALIEN_RAY_COLOR);
+    addRays(simulation.getShipRays(), Renderer.PLAYER_RAY_COLOR);
+    addExplosions(simulation.getExplosions(), explosionFrames);
+    addExplosions(simulation.getBombExplosions(), bombExplosionFrames);
+    billboards.end();
+    // The batch binds the atlas page itself.
+    boundTexture = null;
+    gl.glDisable(GL20.GL_BLEND);
+  }
+
+  private void addRays (EntityView rays, float color) {
+    for (int i = 0; i < rays.size(); i++) {
+      float x = lerpX(rays, i), y = lerpY(rays, i), z = lerpZ(rays, i), size = Renderer.RAY_SIZE * rays.getRadius(i);
+      if (culler.isVisible(x, y, z, size)) billboards.draw(raySprite, x, y, z, size, color);
+    }
+  }
+
+  private void addExplosions (EntityView explosions, TextureRegion[] frames) {
+    final int FRAMES = Renderer.EXPLOSION_FRAMES;
+    for (int i = 0; i < explosions.size(); i++) {
+      float x = explosions.getX(i), y = explosions.getY(i), z = explosions.getZ(i);
+      if (!culler.isVisible(x, y, z, Renderer.EXPLOSION_RADIUS)) continue;
+      int frame = (int)((explosions.getTime(i) / Explosion.EXPLOSION_LIVE_TIME) * (FRAMES - 1));
+      frame = Math.max(0, Math.min(FRAMES - 1, frame));
+      billboards.draw(frames[frame], x, y, z, Renderer.EXPLOSION_SIZE, Renderer.EXPLOSION_COLOR);
+    }
+  }
+
+  private void bind (Texture texture) {
+    if (texture == boundTexture) return;
+    texture.bind();
+    boundTexture = texture;
+  }
+
+  ////////////////////////////////////////
+  // Utility
+  ////////////////////////////////////////
+  private float lerpX (EntityView view, int i) {
+    float previous = view.getPreviousX(i);
+    return previous + (view.getX(i) - previous) * alpha;
+  }
+
+  private float lerpY (EntityView view, int i) {
+    float previous = view.getPreviousY(i);
+    return previous + (view.getY(i) - previous) * alpha;
+  }
+
+  private float lerpZ (EntityView view, int i) {
+    float previous = view.getPreviousZ(i);
+    return previous + (view.getZ(i) - previous) * alpha;
+  }
+
+  @Override public FrustumCuller getCuller () {
+    return culler;
+  }
+
+  /**
+   * @return null, the programs already skip redundant uniforms and texture binds
+   */
+  @Override public RenderQueue getRenderQueue () {
+    return null;
+  }
+
+  @Override public int getTriangles () {
+    return triangles;
+  }
+
+  @Override public DynamicResolution getResolution () {
+    return resolution;
+  }
+
+  @Override public Camera getCamera () {
+    return camera;
+  }
+
+  @Override public void unproject (Vector3 touchLocation) {
+    camera.unproject(touchLocation);
+  }
+
+  /**
+   * libgdx linked the shaders anew, which resets every uniform and may move them.
+   */
+  @Override public void resume () {
+    litProgram.link();
+    billboardProgram.link();
+    boundTexture = null;
+  }
+
+  @Override public void dispose () {
+    litProgram.shader.dispose();
+    billboardProgram.shader.dispose();
+    backdrop.dispose();
+    Renderer.unload(assets);
+    for (int i = 0; i < Renderer.LOD_LEVELS; i++)
+      alienBatches[i].dispose();
+    blockBatch.dispose();
+    billboards.dispose();
+    resolution.dispose();
+  }
+
+  /**
+   * A shader with its uniform locations looked up once per link. Keeps the last values it uploaded, so setting an
+   * unchanged uniform costs no GL call.
+   */
+  private static final class Program {
+    final ShaderProgram shader;
+    /** locations in the current link, -1 for the uniforms the shader does not have **/
+    private int projViewLocation;
+    private int modelLocation;
+    private int colorLocation;
+    private int texturedLocation;
+
+    private float r, g, b, a;
+    private float textured;
+    /** the model matrix uniform holds the identity **/
+    private boolean modelIdentity;
+    private final Matrix4 identity = new Matrix4();
+    private final FloatBuffer matrix = BufferUtils.newFloatBuffer(16);
+    private final IntBuffer program = BufferUtils.newIntBuffer(16);
+
+    Program (String vertexShader, String fragmentShader) {
+      shader = new ShaderProgram(vertexShader, fragmentShader);
+      if (!shader.isCompiled()) throw new GdxRuntimeException("Couldn't compile shader: " + shader.getLog());
+      link();
+    }
+
+    /**
+     * Looks the uniform locations up, forgets the uploaded values and sets the uniforms that never change. Must run
+     * again whenever libgdx linked the shader anew after a context loss, every uniform is back at 0 then.
+     */
+    void link () {
+      GL20 gl = Gdx.gl20;
+      shader.begin();
+      // The shader keeps the locations of its first link and hides its handle, so we ask for the program in use.
+      program.clear();
+      gl.glGetIntegerv(GL20.GL_CURRENT_PROGRAM, program);
+      int handle = program.get(0);
+      projViewLocation = gl.glGetUniformLocation(handle, "u_projView");
+      modelLocation = gl.glGetUniformLocation(handle, "u_model");
+      colorLocation = gl.glGetUniformLocation(handle, "u_color");
+      texturedLocation = gl.glGetUniformLocation(handle, "u_textured");
+      gl.glUniform1i(gl.glGetUniformLocation(handle, "u_texture"), 0);
+      int light = gl.glGetUniformLocation(handle, "u_lightDirection");
+      if (light != -1) {
+        float length = (float)Math.sqrt(LIGHT_X * LIGHT_X + LIGHT_Y * LIGHT_Y + LIGHT_Z * LIGHT_Z);
+        gl.glUniform3f(light, LIGHT_X / length, LIGHT_Y / length, LIGHT_Z / length);
+      }
+      shader.end();
+      r = g = b = a = -1;
+      textured = -1;
+      modelIdentity = false;
+    }
+
+    /**
+     * Binds the shader for a group of draws. Uniform values survive between groups, only the camera is sent again.
+     */
+    void begin (Matrix4 projView) {
+      shader.begin();
+      setMatrix(projViewLocation, projView);
+    }
+
+    void end () {
+      shader.end();
+    }
+
+    void setColor (float r, float g, float b, float a) {
+      if (r == this.r && g == this.g && b == this.b && a == this.a) return;
+      Gdx.gl20.glUniform4f(colorLocation, r, g, b, a);
+      this.r = r;
+      this.g = g;
+      this.b = b;
+      this.a = a;
+    }
+
+    void setTextured (boolean textured) {
+      float value = textured ? 1 : 0;
+      if (value == this.textured) return;
+      Gdx.gl20.glUniform1f(texturedLocation, value);
+      this.textured = value;
+    }
+
+    void setModel (Matrix4 model) {
+      setMatrix(modelLocation, model);
+      modelIdentity = false;
+    }
+
+    void setModelIdentity () {
+      if (modelIdentity) return;
+      setMatrix(modelLocation, identity);
+      modelIdentity = true;
+    }
+
+    private void setMatrix (int location, Matrix4 value) {
+      matrix.clear();
+      matrix.put(value.val);
+      matrix.flip();
+      Gdx.gl20.glUniformMatrix4fv(location, 1, false, matrix);
+    }
+  }
+}
@@ -18,33 +18,70 @@ import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Files.FileType;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.davidykay.shootout.screens.GameLoop;
 import com.davidykay.shootout.screens.GameOver;
 import com.davidykay.shootout.screens.MainMenu;
 import com.davidykay.shootout.screens.Screen;
 
 public class ShootOut implements ApplicationListener {
-  public static final String BACKGROUND = "data/starfield512.png";
-  public static final String TITLE = "data/title.png";
-
+  /** atlases written by the AtlasPacker in shootout-tools, one page per texture format and the ship on its own **/
+  public static final String SHIP_ATLAS = "data/packed/ship.pack";
+  public static final String SCENE_ATLAS = "data/packed/scene.pack";
+  public static final String BACKDROP_ATLAS = "data/packed/backdrop.pack";
+  public static final String TITLE_ATLAS = "data/packed/title.pack";
+  public static final String EFFECTS_ATLAS = "data/packed/effects.pack";
+
+  /** fonts, their images are named in the files **/
   public static final String FONT_FNT = "data/font16.fnt";
-  public static final String FONT_PNG = "data/font16.png";
   public static final String FONT10_FNT = "data/font10.fnt";
-  public static final String FONT10_PNG = "data/font10.png";
+
+  /** ask the launchers for a GL20 context and draw with shaders, false uses the GL10 fixed function pipeline **/
+  public static final boolean USE_GL20 = false;
+
+  /** threads decoding assets and the time a frame may spend finishing them on the render thread **/
+  private static final int LOADER_THREADS = 2;
+  private static final long LOAD_BUDGET_NANOS = 4000000;
 
   /** flag indicating whether we were initialized already **/
   private boolean isInitialized = false;
 
   /** the current screen **/
   private Screen screen;
+  /** the game, built for the first one and restarted for every one after **/
+  private GameLoop gameLoop;
+
+  /** the assets of all screens, loaded in the background while the menus are shown **/
+  private Assets assets;
+  /** draws the 2D parts of every screen **/
+  private SpriteBatch spriteBatch;
+  /** the starfield behind the menus **/
+  private StaticLayer menuBackground;
+
+  /**
+   * @return the shader renderer if the application got a GL20 context, the fixed function renderer otherwise
+   */
+  public static SceneRenderer newRenderer (Application app, Assets assets, SpriteBatch spriteBatch) {
+    if (app.getGraphics().isGL20Available()) return new ShaderRenderer(app, assets, spriteBatch);
+    return new Renderer(app, assets, spriteBatch);
+  }
 
   @Override public void dispose () {
-
+    if (!isInitialized) return;
+    if (screen != gameLoop) screen.dispose();
+    if (gameLoop != null) gameLoop.dispose();
+    menuBackground.dispose();
+    spriteBatch.dispose();
+    assets.dispose();
   }
 
   @Override public void render () {
     Application app = Gdx.app;
 
+    // upload a slice of what the loader decoded
+    assets.update(LOAD_BUDGET_NANOS);
+
     // update the screen
     screen.update(app);
 
@@ -54,22 +91,29 @@ public class ShootOut implements ApplicationListener {
     // when the screen is done we change to the
     // next screen
     if (screen.isDone()) {
-      // dispose the current screen
-      screen.dispose();
+      // dispose the current screen, the game loop is only stopped so the next game can reuse it
+      if (screen == gameLoop)
+        gameLoop.stop();
+      else
+        screen.dispose();
 
       // if this screen is a main menu screen we switch to
       // the game loop
-      if (screen instanceof MainMenu)
-        screen = new GameLoop(app);
-      else
+      if (screen instanceof MainMenu) {
+        if (gameLoop == null)
+          gameLoop = new GameLoop(app, assets, spriteBatch);
+        else
+          gameLoop.restart();
+        screen = gameLoop;
+      } else
         // if this screen is a game loop screen we switch to the
         // game over screen
         if (screen instanceof GameLoop)
-          screen = new GameOver(app);
+          screen = new GameOver(app, assets, spriteBatch, menuBackground);
         else
           // if this screen is a game over screen we switch to the
           // main menu screen
-          if (screen instanceof GameOver) screen = new MainMenu(app);
+          if (screen instanceof GameOver) screen = new MainMenu(app, assets, spriteBatch, menuBackground);
     }
   }
 
@@ -79,7 +123,20 @@ public class ShootOut implements ApplicationListener {
 
   @Override public void create () {
     if (!isInitialized) {
-      screen = new MainMenu(Gdx.app);
+      assets = new Assets(LOADER_THREADS);
+      spriteBatch = new SpriteBatch();
+
+      // The menu has to show right away.
+      assets.load(BACKDROP_ATLAS, TextureAtlas.class);
+      MainMenu.load(assets);
+      assets.finishLoading();
+      menuBackground = new StaticLayer(480, 320, 1);
+      menuBackground.add(assets.get(BACKDROP_ATLAS, TextureAtlas.class).findRegion("starfield"), 0, 0, 480, 320);
+
+      // The game's assets load while the menu is shown. These references are held for the application's lifetime, so
+      // going from one screen to the next never loads anything again.
+      GameLoop.load(assets);
+      screen = new MainMenu(Gdx.app, assets, spriteBatch, menuBackground);
       Music music = Gdx.audio.newMusic(Gdx.files.getFileHandle("data/trollface.ogg", FileType.Internal));
       music.setLooping(true);
       music.play();
@@ -89,13 +146,15 @@ public class ShootOut implements ApplicationListener {
 
   @Override
   public void pause() {
-    // TODO Auto-generated method stub
+    // the simulation thread would keep playing the game in the background
+    if (gameLoop != null) gameLoop.pause();
 
   }
 
   @Override
   public void resume() {
-    // TODO Auto-generated method stub
+    // the game loop outlives the screens, its renderer has to pick up the reloaded shaders
+    if (gameLoop != null) gameLoop.resume();
     System.out.println("resume");
   }
 }
@@ -4,6 +4,12 @@ import com.badlogic.gdx.backends.jogl.JoglApplication;
 
 public class ShootOutDesktop {
   public static void main (String[] argv) {
-    new JoglApplication(new ShootOut(), "Hello World", 800, 480, false);
+    // --gl20 and --gl10 override the default pipeline.
+    boolean useGL20 = ShootOut.USE_GL20;
+    for (String arg : argv) {
+      if (arg.equals("--gl20")) useGL20 = true;
+      if (arg.equals("--gl10")) useGL20 = false;
+    }
+    new JoglApplication(new ShootOut(), "Hello World", 800, 480, useGL20);
   }
 }
@@ -0,0 +1,69 @@
+package com.davidykay.shootout;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Matrix4;
+
+/**
+ * 2D images that never change, like the starfield behind the game and the menus. They are written once into the static
+ * vertex buffer of a {@link SpriteCache} and drawn with one call per atlas page, nothing is rebuilt per frame. The buffer
+ * is managed, so it comes back by itself when the context is lost, and the images are placed in a fixed virtual screen,
+ * so a resize only needs the new viewport.
+ */
+public class StaticLayer {
+  private final SpriteCache cache;
+  private final Matrix4 projection = new Matrix4();
+  /** the cache once built, -1 while images are added **/
+  private int id = -1;
+  /** page of the last added image and how many runs of pages there are **/
+  private Texture texture;
+  private int drawCalls;
+
+  /**
+   * @param width the width of the virtual screen the images are placed in
+   * @param height the height of the virtual screen
+   * @param maxImages images the layer holds at most
+   */
+  public StaticLayer (float width, float height, int maxImages) {
+    cache = new SpriteCache(maxImages, false);
+    projection.setToOrtho2D(0, 0, width, height);
+    cache.beginCache();
+  }
+
+  /**
+   * Adds an image, drawn over the ones added before it. Images can only be added before the first {@link #draw()}, add
+   * images from the same page one after another.
+   */
+  public void add (TextureRegion region, float x, float y, float width, float height) {
+    if (id != -1) throw new IllegalStateException("The layer is drawn already.");
+    if (region.getTexture() != texture) {
+      texture = region.getTexture();
+      drawCalls++;
+    }
+    cache.add(region, x, y, width, height);
+  }
+
+  /**
+   * Draws the layer with its own matrices and textures. Blending and depth testing are up to the caller, texturing is off
+   * afterwards.
+   */
+  public void draw () {
+    if (id == -1) id = cache.endCache();
+    cache.setProjectionMatrix(projection);
+    cache.begin();
+    cache.draw(id);
+    cache.end();
+  }
+
+  /**
+   * @return draw calls of each {@link #draw()}
+   */
+  public int getDrawCalls () {
+    return drawCalls;
+  }
+
+  public void dispose () {
+    cache.dispose();
+  }
+}
@@ -0,0 +1,88 @@
+package com.davidykay.shootout.headless;
+
+import com.davidykay.shootout.simulation.Simulation;
+
+/**
+ * Checks that {@link Simulation#update(float)} allocates nothing once it is warm. An {@link AutoPilotInput} plays, so
+ * shots fly, pop and explode and waves are cleared, and a game that is lost starts over with {@link Simulation#reset()}.
+ * The warm up ticks are not measured, they let the JIT compile the tick and the scratch space grow to its working size.
+ * Only the bytes allocated inside update() are summed, the input and the resets are left out.
+ *
+ * The JIT keeps compiling for a while after the warm up and allocates a few hundred bytes on the measuring thread when it
+ * swaps in new code, at no fixed tick. So the measured ticks are split into windows and the check only fails if every
+ * window allocated: a tick that allocates does so in every window, a compilation does not.
+ *
+ * <pre>
+ * AllocationCheck [--windows N] [--ticks N] [--warmup N] [--seed N] [--rows N --columns N]
+ * </pre>
+ *
+ * --ticks is the length of a window. Exits with 1 if every window allocated and with 2 if the JVM cannot count
+ * allocations.
+ */
+public class AllocationCheck {
+  private static final float DELTA = 1 / 60f;
+
+  public static void main (String[] argv) {
+    int windows = 5;
+    int ticks = 50000;
+    int warmup = 100000;
+    long seed = 1;
+    int rows = (int)Simulation.ENEMY_ROWS;
+    int columns = (int)Simulation.ENEMY_COLUMNS;
+    for (int i = 0; i < argv.length; i++) {
+      String arg = argv[i];
+      if (arg.equals("--windows"))
+        windows = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--ticks"))
+        ticks = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--warmup"))
+        warmup = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--seed"))
+        seed = Long.parseLong(argv[++i]);
+      else if (arg.equals("--rows"))
+        rows = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--columns"))
+        columns = Integer.parseInt(argv[++i]);
+      else
+        throw new IllegalArgumentException("unknown argument: " + arg);
+    }
+
+    AllocationCounter allocations = new AllocationCounter();
+    if (!allocations.isSupported()) {
+      System.out.println("this JVM cannot count allocations");
+      System.exit(2);
+    }
+
+    Simulation simulation = new Simulation(seed, rows, columns);
+    InputSource input = new AutoPilotInput(20, 0.5f);
+    input.begin(seed);
+    int games = 1;
+    int tick = 0;
+    long[] allocated = new long[windows];
+    for (int i = 0; i < warmup + windows * ticks; i++) {
+      if (simulation.ship.lives <= 0) {
+        simulation.reset();
+        input.begin(seed + games++);
+        tick = 0;
+      }
+      long before = allocations.allocatedBytes();
+      simulation.update(DELTA);
+      if (i >= warmup) allocated[(i - warmup) / ticks] += allocations.allocatedBytes() - before;
+      input.apply(tick++, DELTA, simulation);
+    }
+
+    boolean clean = false;
+    StringBuilder bytes = new StringBuilder();
+    for (int window = 0; window < windows; window++) {
+      if (window > 0) bytes.append(' ');
+      bytes.append(allocated[window]);
+      if (allocated[window] == 0) clean = true;
+    }
+    System.out.println(String.format("warm up ticks: %d windows: %d x %d ticks games: %d allocated bytes per window: %s",
+                                     warmup, windows, ticks, games, bytes));
+    if (!clean) {
+      System.out.println("Simulation.update() allocates in steady state");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.davidykay.shootout.headless;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the bytes allocated by the current thread where the JVM supports it, i.e. HotSpot and OpenJDK on the desktop.
+ */
+class AllocationCounter {
+  private final com.sun.management.ThreadMXBean threads;
+
+  AllocationCounter () {
+    com.sun.management.ThreadMXBean threads = null;
+    try {
+      Object bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) threads = (com.sun.management.ThreadMXBean)bean;
+      if (threads != null && !threads.isThreadAllocatedMemorySupported()) threads = null;
+    } catch (Throwable t) {
+      threads = null;
+    }
+    this.threads = threads;
+  }
+
+  boolean isSupported () {
+    return threads != null;
+  }
+
+  /**
+   * @return the bytes allocated by the calling thread so far, or -1 if unsupported
+   */
+  long allocatedBytes () {
+    if (threads == null) return -1;
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
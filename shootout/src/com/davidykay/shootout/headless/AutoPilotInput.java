@@ -0,0 +1,53 @@
+package com.davidykay.shootout.headless;
+
+import java.util.Random;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.davidykay.shootout.simulation.EntityView;
+import com.davidykay.shootout.simulation.Simulation;
+
+/**
+ * A simple player that fires at a random alien every few ticks with some aiming error, from where the AR camera sits.
+ */
+public class AutoPilotInput implements InputSource {
+  /** where GameLoop's pick rays start from **/
+  private static final float CAMERA_X = 0;
+  private static final float CAMERA_Y = 1;
+  private static final float CAMERA_Z = 2;
+
+  private final int fireInterval;
+  private final float aimError;
+  private final Random random = new Random();
+  private final Ray ray = new Ray(new Vector3(), new Vector3());
+
+  /**
+   * @param fireInterval ticks between two shots
+   * @param aimError the largest random offset added to each component of the aim point
+   */
+  public AutoPilotInput (int fireInterval, float aimError) {
+    this.fireInterval = fireInterval;
+    this.aimError = aimError;
+  }
+
+  @Override public void begin (long seed) {
+    random.setSeed(seed);
+  }
+
+  @Override public void apply (int tick, float delta, Simulation simulation) {
+    if (tick % fireInterval != 0) return;
+    EntityView aliens = simulation.getAliens();
+    if (aliens.size() == 0) return;
+
+    int target = random.nextInt(aliens.size());
+    ray.origin.set(CAMERA_X, CAMERA_Y, CAMERA_Z);
+    ray.direction.set(aliens.getX(target) + error() - CAMERA_X,
+                      aliens.getY(target) + error() - CAMERA_Y,
+                      aliens.getZ(target) + error() - CAMERA_Z).nor();
+    simulation.tapRay(ray);
+  }
+
+  private float error () {
+    return (random.nextFloat() * 2 - 1) * aimError;
+  }
+}
@@ -0,0 +1,220 @@
+package com.davidykay.shootout.headless;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import com.davidykay.shootout.simulation.EventTrace;
+import com.davidykay.shootout.simulation.Simulation;
+import com.davidykay.shootout.simulation.SimulationListener;
+import com.davidykay.shootout.simulation.SimulationLog;
+
+/**
+ * Runs the simulation without libgdx, GL or audio and reports throughput and the outcome. Meant for CI throughput checks and
+ * for playing lots of games on a server.
+ *
+ * <pre>
+ * HeadlessRunner [--ticks N] [--games N] [--seed N] [--rate HZ] [--brute-force] [--script FILE [--period N]]
+ *                [--fire-interval N] [--aim-error F] [--warmup N] [--trace N] [--verbose]
+ *                [--rows N --columns N] [--workers N]
+ * </pre>
+ *
+ * Each game runs until the ship is out of lives or the tick limit is reached. Game i is seeded with seed + i, so a run is
+ * reproducible. Without a script an {@link AutoPilotInput} plays. With --trace the last N simulation events are recorded and
+ * dumped after the last game, or as soon as a game crashes.
+ */
+public class HeadlessRunner implements SimulationListener {
+  private int ticks = 100000;
+  private int games = 1;
+  private long seed = 1;
+  private float rate = 60;
+  private boolean bruteForce = false;
+  private int rows = (int)Simulation.ENEMY_ROWS;
+  private int columns = (int)Simulation.ENEMY_COLUMNS;
+  private int workers = 1;
+  private boolean verbose = false;
+  private int traceCapacity = 0;
+  private int warmupGames = 0;
+  private InputSource input;
+
+  private long explosions;
+  private long pops;
+  private long shots;
+  private long rays;
+
+  /** reads the bytes the ticks allocate **/
+  private final AllocationCounter allocations = new AllocationCounter();
+  /** bytes allocated inside {@link Simulation#update(float)} by the games played so far **/
+  private long allocatedBytes;
+
+  public static void main (String[] argv) throws IOException {
+    HeadlessRunner runner = new HeadlessRunner();
+    runner.parse(argv);
+    runner.run(System.out);
+  }
+
+  private void parse (String[] argv) throws IOException {
+    String script = null;
+    int period = 0;
+    int fireInterval = 20;
+    float aimError = 0.5f;
+    for (int i = 0; i < argv.length; i++) {
+      String arg = argv[i];
+      if (arg.equals("--ticks"))
+        ticks = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--games"))
+        games = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--seed"))
+        seed = Long.parseLong(argv[++i]);
+      else if (arg.equals("--rate"))
+        rate = Float.parseFloat(argv[++i]);
+      else if (arg.equals("--brute-force"))
+        bruteForce = true;
+      else if (arg.equals("--script"))
+        script = argv[++i];
+      else if (arg.equals("--period"))
+        period = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--fire-interval"))
+        fireInterval = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--aim-error"))
+        aimError = Float.parseFloat(argv[++i]);
+      else if (arg.equals("--warmup"))
+        warmupGames = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--trace"))
+        traceCapacity = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--rows"))
+        rows = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--columns"))
+        columns = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--workers"))
+        workers = Integer.parseInt(argv[++i]);
+      else if (arg.equals("--verbose"))
+        verbose = true;
+      else
+        throw new IllegalArgumentException("unknown argument: " + arg);
+    }
+
+    if (script != null) {
+      FileReader reader = new FileReader(script);
+      try {
+        input = new ScriptedInput(reader, period);
+      } finally {
+        reader.close();
+      }
+    } else {
+      input = new AutoPilotInput(fireInterval, aimError);
+    }
+  }
+
+  private void run (PrintStream out) {
+    final float delta = 1 / rate;
+    final EventTrace trace = traceCapacity > 0 ? new EventTrace(traceCapacity) : EventTrace.OFF;
+    final SimulationLog log = new PrintStreamLog(out);
+
+    // Warm up games are played and thrown away so the JIT has compiled the tick before we measure.
+    for (int game = 0; game < warmupGames; game++)
+      play(seed + game, delta, EventTrace.OFF, null);
+    explosions = pops = shots = rays = 0;
+    allocatedBytes = 0;
+
+    long totalTicks = 0;
+    long totalScore = 0;
+    int bestScore = 0;
+    long start = System.nanoTime();
+    for (int game = 0; game < games; game++) {
+      Simulation simulation = new Simulation(seed + game, rows, columns);
+      trace.clear();
+      int played;
+      try {
+        played = play(seed + game, delta, trace, simulation);
+      } catch (RuntimeException ex) {
+        trace.dump(log);
+        throw ex;
+      }
+      totalTicks += played;
+      totalScore += simulation.score;
+      bestScore = Math.max(bestScore, simulation.score);
+      if (games == 1 || verbose) printGame(out, game, played, simulation);
+    }
+    long elapsed = System.nanoTime() - start;
+    trace.dump(log);
+
+    double seconds = elapsed / 1e9;
+    out.println(String.format("games: %d ticks: %d time: %.3f s ticks/sec: %.0f collisions: %s workers: %d",
+                              games, totalTicks, seconds, totalTicks / seconds, bruteForce ? "brute force" : "spatial hash",
+                              workers));
+    out.println(String.format("score: mean %.1f best %d", (double)totalScore / games, bestScore));
+    out.println(String.format("events: explosion %d pop %d shot %d ray %d", explosions, pops, shots, rays));
+    if (allocations.isSupported())
+      out.println(String.format("allocated: %d bytes, %.2f bytes/tick", allocatedBytes,
+                                (double)allocatedBytes / totalTicks));
+  }
+
+  /**
+   * Plays one game. Only the allocations inside {@link Simulation#update(float)} are added to {@link #allocatedBytes},
+   * building the simulation, starting its workers and the input are left out.
+   * @param simulation the simulation to play, null to create a throw away one
+   * @return the number of ticks played
+   */
+  private int play (long gameSeed, float delta, EventTrace trace, Simulation simulation) {
+    if (simulation == null) simulation = new Simulation(gameSeed, rows, columns);
+    simulation.useSpatialHash = !bruteForce;
+    simulation.setWorkers(workers);
+    simulation.listener = this;
+    simulation.trace = trace;
+    input.begin(gameSeed);
+
+    int tick = 0;
+    boolean countAllocations = allocations.isSupported();
+    while (tick < ticks && simulation.ship.lives > 0) {
+      if (countAllocations) {
+        long before = allocations.allocatedBytes();
+        simulation.update(delta);
+        allocatedBytes += allocations.allocatedBytes() - before;
+      } else {
+        simulation.update(delta);
+      }
+      input.apply(tick, delta, simulation);
+      tick++;
+    }
+    simulation.setWorkers(1);
+    return tick;
+  }
+
+  private void printGame (PrintStream out, int game, int played, Simulation simulation) {
+    out.println(String.format("game %d seed %d: ticks %d score %d wave %d lives %d", game, seed + game, played,
+                              simulation.score, simulation.wave, simulation.ship.lives));
+    out.println(String.format("  entities: aliens %d ship rays %d alien rays %d explosions %d bomb explosions %d",
+                              simulation.getAliens().size(), simulation.getShipRays().size(),
+                              simulation.getAlienRays().size(), simulation.getExplosions().size(),
+                              simulation.getBombExplosions().size()));
+  }
+
+  @Override public void explosion () {
+    explosions++;
+  }
+
+  @Override public void pop () {
+    pops++;
+  }
+
+  @Override public void shot () {
+    shots++;
+  }
+
+  @Override public void ray () {
+    rays++;
+  }
+
+  private static class PrintStreamLog implements SimulationLog {
+    private final PrintStream out;
+
+    PrintStreamLog (PrintStream out) {
+      this.out = out;
+    }
+
+    @Override public void log (String tag, String message) {
+      out.println(tag + ": " + message);
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.davidykay.shootout.headless;
+
+import com.davidykay.shootout.simulation.Simulation;
+
+/**
+ * Stands in for the player when the simulation runs without a screen. Called once per tick, after the tick, which is where
+ * GameLoop applies touch and steering input as well.
+ */
+public interface InputSource {
+  /**
+   * Called before a new game starts so the source can reset itself.
+   * @param seed the seed of the game, sources with randomness should derive theirs from it
+   */
+  public void begin (long seed);
+
+  public void apply (int tick, float delta, Simulation simulation);
+}
@@ -0,0 +1,129 @@
+package com.davidykay.shootout.headless;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.davidykay.shootout.simulation.Simulation;
+
+/**
+ * Replays input from a script. Each line is a tick followed by a command, blank lines and lines starting with # are ignored:
+ *
+ * <pre>
+ * 120 tap 0.1 -0.05 -1      fire along the given direction from the camera
+ * 130 left 0.5              steer left for one tick at the given scale
+ * 140 right 0.5             steer right for one tick at the given scale
+ * 150 orient 10 -20 0       feed a device orientation (azimuth, pitch, roll)
+ * </pre>
+ *
+ * Lines must be sorted by tick. With a period set, the script starts over every period ticks.
+ */
+public class ScriptedInput implements InputSource {
+  private static final int TAP = 0;
+  private static final int LEFT = 1;
+  private static final int RIGHT = 2;
+  private static final int ORIENT = 3;
+
+  private int[] ticks = new int[16];
+  private int[] commands = new int[16];
+  private float[] args = new float[16 * 3];
+  private int count;
+  private final int period;
+
+  private int next;
+  private final Ray ray = new Ray(new Vector3(), new Vector3());
+
+  /**
+   * @param period ticks after which the script repeats, 0 to play it once
+   */
+  public ScriptedInput (Reader script, int period) throws IOException {
+    this.period = period;
+    BufferedReader reader = new BufferedReader(script);
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      line = line.trim();
+      if (line.length() == 0 || line.startsWith("#")) continue;
+      try {
+        parse(line.split("\\s+"));
+      } catch (RuntimeException ex) {
+        throw new IOException("bad script line " + lineNumber + ": " + line);
+      }
+    }
+  }
+
+  private void parse (String[] tokens) {
+    if (count == ticks.length) grow();
+    ticks[count] = Integer.parseInt(tokens[0]);
+    String command = tokens[1];
+    if (command.equals("tap"))
+      commands[count] = TAP;
+    else if (command.equals("left"))
+      commands[count] = LEFT;
+    else if (command.equals("right"))
+      commands[count] = RIGHT;
+    else if (command.equals("orient"))
+      commands[count] = ORIENT;
+    else
+      throw new IllegalArgumentException(command);
+    for (int i = 2; i < tokens.length && i < 5; i++)
+      args[count * 3 + i - 2] = Float.parseFloat(tokens[i]);
+    if (count > 0 && ticks[count] < ticks[count - 1]) throw new IllegalArgumentException("not sorted");
+    count++;
+  }
+
+  private void grow () {
+    int[] newTicks = new int[count * 2];
+    int[] newCommands = new int[count * 2];
+    float[] newArgs = new float[count * 2 * 3];
+    System.arraycopy(ticks, 0, newTicks, 0, count);
+    System.arraycopy(commands, 0, newCommands, 0, count);
+    System.arraycopy(args, 0, newArgs, 0, count * 3);
+    ticks = newTicks;
+    commands = newCommands;
+    args = newArgs;
+  }
+
+  @Override public void begin (long seed) {
+    next = 0;
+  }
+
+  @Override public void apply (int tick, float delta, Simulation simulation) {
+    int scriptTick = tick;
+    if (period > 0) {
+      scriptTick = tick % period;
+      if (scriptTick == 0) next = 0;
+    }
+
+    while (next < count && ticks[next] <= scriptTick) {
+      if (ticks[next] == scriptTick) run(next, delta, simulation);
+      next++;
+    }
+  }
+
+  private void run (int index, float delta, Simulation simulation) {
+    float a = args[index * 3];
+    float b = args[index * 3 + 1];
+    float c = args[index * 3 + 2];
+    switch (commands[index]) {
+    case TAP:
+      ray.origin.set(0, 1, 2);
+      ray.direction.set(a, b, c).nor();
+      simulation.tapRay(ray);
+      break;
+    case LEFT:
+      simulation.moveShipLeft(delta, a);
+      break;
+    case RIGHT:
+      simulation.moveShipRight(delta, a);
+      break;
+    case ORIENT:
+      simulation.updateOrientation(a, b, c);
+      break;
+    }
+  }
+}
@@ -14,24 +14,54 @@
 package com.davidykay.shootout.screens;
 
 import com.badlogic.gdx.Application;
-import com.badlogic.gdx.Files.FileType;
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.math.Intersector;
 import com.badlogic.gdx.math.Plane;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.Ray;
+import com.davidykay.shootout.Assets;
+import com.davidykay.shootout.AudioManager;
+import com.davidykay.shootout.FrustumCuller;
+import com.davidykay.shootout.RenderQueue;
+import com.davidykay.shootout.GdxSimulationLog;
 import com.davidykay.shootout.Renderer;
+import com.davidykay.shootout.SceneRenderer;
+import com.davidykay.shootout.ShootOut;
+import com.davidykay.shootout.simulation.EventTrace;
+import com.davidykay.shootout.simulation.FixedTimestep;
+import com.davidykay.shootout.simulation.InputQueue;
 import com.davidykay.shootout.simulation.Simulation;
 import com.davidykay.shootout.simulation.SimulationListener;
+import com.davidykay.shootout.simulation.SimulationSnapshot;
+import com.davidykay.shootout.simulation.SimulationThread;
 
+/**
+ * The game itself. It is built once and kept for the application's lifetime: {@link #stop()} ends a game and
+ * {@link #restart()} starts the next one on the same renderer, sounds and simulation, so nothing is loaded or allocated
+ * in between.
+ */
 public class GameLoop implements Screen, SimulationListener {
   private static final String TAG = "GameLoop";
+  /** record simulation events and dump them to the log if the game crashes **/
+  private static final boolean TRACE = false;
+  private static final int TRACE_CAPACITY = 4096;
 
   private static final boolean FLAT_MODE = false;
+  private static final boolean ACCELEROMETER_STEERING = false;
+  /** log how many objects the frustum culling drew and skipped and what the frame cost, once a second **/
+  private static final boolean LOG_RENDERING = false;
+  /** per frame limits the log warns about **/
+  private static final int DRAW_CALL_BUDGET = 12;
+  private static final int STATE_CHANGE_BUDGET = 32;
+
+  /** tick the simulation on its own thread so it overlaps with rendering, false ticks it before each frame **/
+  private static final boolean SIMULATION_THREAD = true;
+  /** input commands that can be waiting for the simulation **/
+  private static final int INPUT_CAPACITY = 64;
 
   // TODO: Stop fixing these!
   private static final int RESOLUTION_X = 800;
@@ -44,110 +74,262 @@ public class GameLoop implements Screen, SimulationListener {
   private static final float TOUCH_SCALING_FACTOR_Y = (TOUCH_SCALING_FACTOR * ASPECT_RATIO) / RESOLUTION_Y;
   //private static final float SAFETY_BUFFER = TOUCH_SCALING_FACTOR / 2;
 
-  /** the simulation **/
+  /** the plane flat mode traces touches onto **/
+  private static final Plane GAME_PLANE = new Plane(new Vector3(0, 0, 0), new Vector3(1, 0, 0), new Vector3(0, 0, 1));
+
+  /** simulation ticks per second, gameplay does not change with it so weak devices can go lower **/
+  private static final float SIMULATION_RATE = 60;
+  /** the most ticks we run to catch up after a slow frame **/
+  private static final int MAX_CATCH_UP_STEPS = 5;
+
+  private static final String EXPLOSION_SOUND = "data/Echoing Boom.ogg";
+  private static final String POP_SOUND = "data/Dull Pop.ogg";
+  private static final String SHOT_SOUND = "data/Mid Laser.ogg";
+  private static final String RAY_SOUND = "data/Long Laser.ogg";
+
+  /** sound effects playing at once, a burst of hits would clip and keep the mixer busy otherwise **/
+  private static final int VOICES = 6;
+
+  /** holds a reference to the sounds and everything the renderer draws with until the game loop is disposed **/
+  private final Assets assets;
+  /** the simulation, owned by {@link #simulationThread} while it runs **/
   private final Simulation simulation;
   /** the renderer **/
-  private final Renderer renderer;
+  private final SceneRenderer renderer;
+  /** splits frame time into fixed simulation ticks **/
+  private final FixedTimestep timestep = new FixedTimestep(SIMULATION_RATE, MAX_CATCH_UP_STEPS);
+  /** player input on its way to the simulation **/
+  private final InputQueue input = new InputQueue(INPUT_CAPACITY);
+  /** runs the simulation, null if it is ticked inline **/
+  private final SimulationThread simulationThread;
+  /** the snapshot drawn by the next frame **/
+  private SimulationSnapshot snapshot;
+  /** where the last touch was traced onto the game plane **/
+  private final Vector3 pickPoint = new Vector3();
+  /** a game is being played, it ticks unless the application is paused **/
+  private boolean running;
+  /** the simulation thread was stopped by {@link #pause()} and has to be started again **/
+  private boolean paused;
+  /** steering last sent to the simulation **/
+  private float steering;
+  /** listener events of the last snapshot, the previous snapshot object may already be refilled **/
+  private int explosionEvents;
+  private int popEvents;
+  private int shotEvents;
+  private int rayEvents;
+  /** seconds since the rendering counts were last logged **/
+  private float renderingLogTime;
+  /** plays the sounds of the simulation events within the voice budget **/
+  private final AudioManager audio = new AudioManager(VOICES, 4);
   /** explosion sound **/
-  private final Sound explosion;
+  private final int explosion;
   /** pop sound **/
-  private final Sound pop;
+  private final int pop;
   /** shot sound **/
-  private final Sound shot;
+  private final int shot;
   /** ray shot sound **/
-  private final Sound ray;
+  private final int ray;
 
-  public GameLoop (Application app) {
+  /**
+   * Takes a reference to the sounds and everything the renderer draws with, the game can start once they are loaded.
+   */
+  public static void load (Assets assets) {
+    Renderer.load(assets);
+    assets.load(EXPLOSION_SOUND, Sound.class);
+    assets.load(POP_SOUND, Sound.class);
+    assets.load(SHOT_SOUND, Sound.class);
+    assets.load(RAY_SOUND, Sound.class);
+  }
+
+  /**
+   * Gives back the references {@link #load(Assets)} took.
+   */
+  public static void unload (Assets assets) {
+    Renderer.unload(assets);
+    assets.unload(EXPLOSION_SOUND, Sound.class);
+    assets.unload(POP_SOUND, Sound.class);
+    assets.unload(SHOT_SOUND, Sound.class);
+    assets.unload(RAY_SOUND, Sound.class);
+  }
+
+  /**
+   * Builds the game and starts the first one.
+   * @param assets has everything {@link #load(Assets)} queues loaded
+   * @param spriteBatch the batch shared by the screens
+   */
+  public GameLoop (Application app, Assets assets, SpriteBatch spriteBatch) {
+    this.assets = assets;
+    load(assets);
     simulation = new Simulation();
     simulation.listener = this;
-    renderer = new Renderer(app);
-    explosion = app.getAudio().newSound(app.getFiles().getFileHandle("data/Echoing Boom.ogg", FileType.Internal));
-    pop = app.getAudio().newSound(app.getFiles().getFileHandle("data/Dull Pop.ogg", FileType.Internal));
-    shot = app.getAudio().newSound(app.getFiles().getFileHandle("data/Mid Laser.ogg", FileType.Internal));
-    ray = app.getAudio().newSound(app.getFiles().getFileHandle("data/Long Laser.ogg", FileType.Internal));
+    if (TRACE) simulation.trace = new EventTrace(TRACE_CAPACITY);
+    renderer = ShootOut.newRenderer(app, assets, spriteBatch);
+    // Lengths in seconds. The ship blowing up matters most, then the player's own shots, alien fire can be missed.
+    explosion = audio.add(assets.get(EXPLOSION_SOUND, Sound.class), 0.72f, 3, 2, 0.1f);
+    ray = audio.add(assets.get(RAY_SOUND, Sound.class), 0.42f, 2, 3, 0.05f);
+    pop = audio.add(assets.get(POP_SOUND, Sound.class), 0.3f, 1, 2, 0.05f);
+    shot = audio.add(assets.get(SHOT_SOUND, Sound.class), 0.33f, 0, 2, 0.05f);
+
+    if (SIMULATION_THREAD) {
+      simulationThread = new SimulationThread(simulation, timestep, input);
+    } else {
+      simulationThread = null;
+      snapshot = new SimulationSnapshot();
+    }
+    start();
+  }
+
+  /**
+   * Starts a new game after {@link #stop()}. The simulation is reset in place and the renderer and sounds are kept.
+   */
+  public void restart () {
+    simulation.reset();
+    timestep.reset();
+    input.clear();
+    steering = 0;
+    start();
+  }
+
+  private void start () {
+    running = true;
+    if (simulationThread != null) {
+      simulationThread.start();
+      snapshot = simulationThread.getSnapshot();
+    } else {
+      snapshot.copyFrom(simulation);
+    }
+  }
+
+  /**
+   * Ends the game, the simulation stops ticking until {@link #restart()}.
+   */
+  public void stop () {
+    running = false;
+    paused = false;
+    if (simulationThread != null) simulationThread.stop();
+  }
+
+  /**
+   * Stops the simulation thread while the application is in the background, so the game does not go on unseen and the
+   * CPU can sleep.
+   */
+  public void pause () {
+    if (!running || paused || simulationThread == null) return;
+    simulationThread.stop();
+    paused = true;
+  }
+
+  /**
+   * Restores the renderer's GL state after the context was lost, whether a game is running or not, and carries on with
+   * a paused game. The time spent in the background is dropped.
+   */
+  public void resume () {
+    renderer.resume();
+    timestep.reset();
+    if (!paused) return;
+    paused = false;
+    simulationThread.start();
+    snapshot = simulationThread.getSnapshot();
   }
 
   @Override public void dispose () {
+    stop();
     renderer.dispose();
-    shot.dispose();
-    explosion.dispose();
+    unload(assets);
   }
 
   @Override public boolean isDone () {
-    return simulation.ship.lives == 0;
+    return snapshot.ship.lives == 0;
   }
 
   @Override public void render (Application app) {
-    app.getGraphics().getGL10().glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
-    renderer.render(app, simulation);
+    app.getGraphics().getGLCommon().glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+    float alpha = simulationThread != null ? snapshot.getAlpha(System.nanoTime()) : timestep.getAlpha();
+    renderer.render(app, snapshot, alpha);
+    if (LOG_RENDERING) logRendering(app);
+  }
+
+  private void logRendering (Application app) {
+    renderingLogTime += app.getGraphics().getDeltaTime();
+    if (renderingLogTime < 1) return;
+    renderingLogTime = 0;
+    FrustumCuller culler = renderer.getCuller();
+    app.log(TAG, "drawn: " + culler.getDrawn() + " culled: " + culler.getCulled() + " triangles: "
+      + renderer.getTriangles() + " resolution scale: " + renderer.getResolution().getScale());
+    app.log(TAG, "assets: " + assets);
+    app.log(TAG, "audio: " + audio);
+    RenderQueue queue = renderer.getRenderQueue();
+    if (queue == null) return;
+    app.log(TAG, "commands: " + queue.getCommands() + " draw calls: " + queue.getDrawCalls() + " state changes: "
+      + queue.getStateChanges());
+    if (queue.getDrawCalls() > DRAW_CALL_BUDGET || queue.getStateChanges() > STATE_CHANGE_BUDGET)
+      app.log(TAG, "over budget, at most " + DRAW_CALL_BUDGET + " draw calls and " + STATE_CHANGE_BUDGET
+        + " state changes");
   }
 
   @Override public void update (Application app) {
-    simulation.update(app.getGraphics().getDeltaTime());
+    try {
+      readInput(app);
+      if (simulationThread != null) {
+        simulationThread.checkFailure();
+        snapshot = simulationThread.getSnapshot();
+        requestSounds(snapshot);
+      } else {
+        updateSimulation(app);
+      }
+      audio.update(app.getGraphics().getDeltaTime());
+    } catch (RuntimeException ex) {
+      // The trace belongs to the simulation thread until it stopped.
+      if (simulationThread != null) simulationThread.stop();
+      dumpTrace(app);
+      throw ex;
+    }
+  }
 
-    Input input = app.getInput();
-    final boolean ACCELEROMETER_STEERING = false;
-    if (ACCELEROMETER_STEERING) {
-      if (input.getAccelerometerY() < 0)
-        simulation.moveShipLeft(app.getGraphics().getDeltaTime(), Math.abs(input.getAccelerometerY()) / 10);
-      else
-        simulation.moveShipRight(app.getGraphics().getDeltaTime(), Math.abs(input.getAccelerometerY()) / 10);
+  /**
+   * Writes the recent simulation events to the application log. Does nothing unless tracing is on. With the simulation
+   * thread this is only safe once the thread stopped.
+   */
+  public void dumpTrace (Application app) {
+    simulation.trace.dump(new GdxSimulationLog(app));
+  }
+
+  private void updateSimulation (Application app) {
+    // Steering is applied per tick so it moves the ship the same distance at any tick rate.
+    int steps = timestep.advance(app.getGraphics().getDeltaTime());
+    for (int i = 0; i < steps; i++) {
+      float delta = timestep.getStep();
+      input.apply(simulation);
+      simulation.update(delta);
+      input.steer(simulation, delta);
     }
+    if (steps > 0) snapshot.copyFrom(simulation);
+  }
 
-    if (input.isKeyPressed(Keys.DPAD_LEFT)) simulation.moveShipLeft(app.getGraphics().getDeltaTime(), 0.5f);
-    if (input.isKeyPressed(Keys.DPAD_RIGHT)) simulation.moveShipRight(app.getGraphics().getDeltaTime(), 0.5f);
+  /**
+   * Sends this frame's touches, steering and orientation to the simulation.
+   */
+  private void readInput (Application app) {
+    Input input = app.getInput();
+    steer(input);
 
     if (input.justTouched()) {
       final float x = input.getX();
       final float y = input.getY();
-      Vector3 nearVector = new Vector3(x, y, 0);
-      Vector3 farVector = new Vector3(x, y, 1);
-
-      renderer.unproject(nearVector);
-      renderer.unproject(farVector);
-
-      /** Vector tracing between the near plane and the far plane **/
-      Vector3 inVector = new Vector3(nearVector);
-
-      final Plane gamePlane = new Plane(
-          new Vector3(0, 0, 0),
-          new Vector3(1, 0, 0),
-          new Vector3(0, 0, 1)
-          );
-
-      Ray pickRay = renderer.getCamera().getPickRay(
-          x,
-          y
-      );
-
-      Vector3 intersection = new Vector3();
-      Vector3 finalVector;
+      Ray pickRay = renderer.getCamera().getPickRay(x, y);
 
       if (FLAT_MODE) {
         // Flat Mode
-        if (Intersector.intersectRayPlane(
-            pickRay,
-            gamePlane,
-            intersection)
-           ) {
-          finalVector = new Vector3(intersection);
-          if (finalVector.equals(nearVector)) {
-            Gdx.app.log(TAG, String.format("Near Vector! finalVector:(%s)",
-                                           finalVector.toString()));
-          } else {
-            Gdx.app.log(TAG, String.format("INTERSECTION! finalVector:(%s)",
-                                           finalVector.toString()));
-          }
-        } else {
-          Gdx.app.log(TAG, String.format("NO INTERSECTION. nearVector:(%s)",
-                                         nearVector.toString()));
-          finalVector = new Vector3(nearVector);
+        boolean picked = Intersector.intersectRayPlane(pickRay, GAME_PLANE, pickPoint);
+        if (!picked) {
+          pickPoint.set(x, y, 0);
+          renderer.unproject(pickPoint);
         }
+        // The simulation thread traces where the touch landed.
+        this.input.tap(x, y, pickRay, pickPoint, picked);
       } else {
         // 3D Mode
 
-        finalVector = new Vector3(nearVector);
-
         //for (Alien alien : aliens) {
         //  if (
         //      Intersector.intersectRayPlane(
@@ -159,11 +341,9 @@ public class GameLoop implements Screen, SimulationListener {
 
         //  }
         //}
-      }
 
-      //simulation.tapShot(nearVector);
-      //simulation.tapShot(finalVector);
-      simulation.tapRay(pickRay);
+        this.input.tap(x, y, pickRay);
+      }
     } else {
       // If we haven't been touched, let's look at the orientation. This in an attempt to lower
       // impulse from user's finger.
@@ -171,23 +351,48 @@ public class GameLoop implements Screen, SimulationListener {
       float pitch   = input.getPitch();
       float roll    = input.getRoll();
 
-      simulation.updateOrientation(azimuth, pitch, roll);
+      this.input.orientation(azimuth, pitch, roll);
     }
   }
 
+  private void steer (Input input) {
+    float steering = 0;
+    if (ACCELEROMETER_STEERING) steering += input.getAccelerometerY() / 10;
+
+    if (input.isKeyPressed(Keys.DPAD_LEFT)) steering -= 0.5f;
+    if (input.isKeyPressed(Keys.DPAD_RIGHT)) steering += 0.5f;
+
+    // Steering is held by the simulation, only changes have to be sent.
+    if (steering != this.steering && this.input.steer(steering)) this.steering = steering;
+  }
+
+  /**
+   * Queues the sounds for the events the simulation thread reported since the last snapshot we saw.
+   */
+  private void requestSounds (SimulationSnapshot snapshot) {
+    audio.request(explosion, snapshot.explosionEvents - explosionEvents);
+    audio.request(pop, snapshot.popEvents - popEvents);
+    audio.request(shot, snapshot.shotEvents - shotEvents);
+    audio.request(ray, snapshot.rayEvents - rayEvents);
+    explosionEvents = snapshot.explosionEvents;
+    popEvents = snapshot.popEvents;
+    shotEvents = snapshot.shotEvents;
+    rayEvents = snapshot.rayEvents;
+  }
+
   @Override public void explosion () {
-    explosion.play();
+    audio.request(explosion);
   }
 
   @Override public void pop () {
-    pop.play();
+    audio.request(pop);
   }
 
   @Override public void shot () {
-    shot.play();
+    audio.request(shot);
   }
 
   @Override public void ray () {
-    ray.play();
+    audio.request(ray);
   }
 }
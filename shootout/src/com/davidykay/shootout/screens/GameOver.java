@@ -14,17 +14,18 @@
 package com.davidykay.shootout.screens;
 
 import com.badlogic.gdx.Application;
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL10;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.BitmapFont.HAlignment;
 import com.badlogic.gdx.graphics.g2d.BitmapFont.TextBounds;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Matrix4;
+import com.davidykay.shootout.Assets;
 import com.davidykay.shootout.ShootOut;
+import com.davidykay.shootout.StaticLayer;
 
 /**
  * The game over screen displays the final score and a game over text and waits for the user to touch the screen in which case it
@@ -34,12 +35,14 @@ import com.davidykay.shootout.ShootOut;
  *
  */
 public class GameOver implements Screen {
-  /** the SpriteBatch used to draw the background, logo and text **/
+  /** the SpriteBatch used to draw the logo and text, shared by the screens **/
   private final SpriteBatch spriteBatch;
-  /** the background texture **/
-  private final Texture background;
-  /** the logo texture **/
-  private final Texture logo;
+  /** the background, drawn from a static vertex buffer, shared with the main menu **/
+  private final StaticLayer background;
+  /** holds a reference to the title and the font while the screen lives **/
+  private final Assets assets;
+  /** the logo region **/
+  private final TextureRegion logo;
   /** the font **/
   private final BitmapFont font;
   /** is done flag **/
@@ -48,22 +51,24 @@ public class GameOver implements Screen {
   private final Matrix4 viewMatrix = new Matrix4();
   private final Matrix4 transformMatrix = new Matrix4();
 
-  public GameOver (Application app) {
-    spriteBatch = new SpriteBatch();
-    background = new Texture(Gdx.files.internal(ShootOut.BACKGROUND));
-    background.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+  /**
+   * @param assets has everything {@link MainMenu#load(Assets)} queues loaded, the game over screen draws the same
+   * @param spriteBatch the batch shared by the screens
+   * @param background the starfield shared by the menus
+   */
+  public GameOver (Application app, Assets assets, SpriteBatch spriteBatch, StaticLayer background) {
+    this.assets = assets;
+    this.spriteBatch = spriteBatch;
+    this.background = background;
+    MainMenu.load(assets);
 
-    logo = new Texture(Gdx.files.internal(ShootOut.TITLE));
-    logo.setFilter(TextureFilter.Linear, TextureFilter.Linear);
-
-    font = new BitmapFont(Gdx.files.internal(ShootOut.FONT_FNT), Gdx.files.internal(ShootOut.FONT_PNG), false);
+    // the bottom half of the title image is the game over logo
+    logo = new TextureRegion(assets.get(ShootOut.TITLE_ATLAS, TextureAtlas.class).findRegion("title"), 0, 256, 512, 256);
+    font = assets.get(ShootOut.FONT_FNT, BitmapFont.class);
   }
 
   @Override public void dispose () {
-    spriteBatch.dispose();
-    background.dispose();
-    logo.dispose();
-    font.dispose();
+    MainMenu.unload(assets);
   }
 
   @Override public boolean isDone () {
@@ -71,17 +76,16 @@ public class GameOver implements Screen {
   }
 
   @Override public void render (Application app) {
-    app.getGraphics().getGL10().glClear(GL10.GL_COLOR_BUFFER_BIT);
+    app.getGraphics().getGLCommon().glClear(GL10.GL_COLOR_BUFFER_BIT);
+    background.draw();
 
     viewMatrix.setToOrtho2D(0, 0, 480, 320);
     spriteBatch.setProjectionMatrix(viewMatrix);
     spriteBatch.setTransformMatrix(transformMatrix);
     spriteBatch.begin();
-    spriteBatch.disableBlending();
-    spriteBatch.setColor(Color.WHITE);
-    spriteBatch.draw(background, 0, 0, 480, 320, 0, 0, 512, 512, false, false);
     spriteBatch.enableBlending();
-    spriteBatch.draw(logo, 0, 320-128, 480, 128, 0, 256, 512, 256, false, false);
+    spriteBatch.setColor(Color.WHITE);
+    spriteBatch.draw(logo, 0, 320-128, 480, 128);
     String text = "You have failed Earth.\nTouch to continue.";
     TextBounds bounds = font.getMultiLineBounds(text);
     spriteBatch.setBlendFunction(GL10.GL_ONE, GL10.GL_ONE_MINUS_SRC_ALPHA);
@@ -14,70 +14,97 @@
 package com.davidykay.shootout.screens;
 
 import com.badlogic.gdx.Application;
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL10;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Matrix4;
+import com.davidykay.shootout.Assets;
 import com.davidykay.shootout.ShootOut;
+import com.davidykay.shootout.StaticLayer;
 
 /**
  * The main menu screen showing a background, the logo of the game and a label telling the user to touch the screen to start the
  * game. Waits for the touch and returns isDone() == true when it's done so that the ochestrating ShootOut class can switch to
- * the next screen.
+ * the next screen. The game's assets load while the menu is shown, until they are the label shows the progress and a touch
+ * only starts the game once they are done.
  * @author mzechner
  *
  */
 public class MainMenu implements Screen {
-  /** the SpriteBatch used to draw the background, logo and text **/
+  /** the SpriteBatch used to draw the logo and text, shared by the screens **/
   private final SpriteBatch spriteBatch;
-  /** the background texture **/
-  private final Texture background;
-  /** the logo texture **/
-  private final Texture logo;
+  /** the background, drawn from a static vertex buffer, shared with the game over screen **/
+  private final StaticLayer background;
+  /** the logo region **/
+  private final TextureRegion logo;
   /** the font **/
   private final BitmapFont font;
+  /** holds a reference to the title and the font while the screen lives, and loads the game's assets **/
+  private final Assets assets;
+  /** touched flag, the game starts once its assets are loaded **/
+  private boolean isTouched = false;
   /** is done flag **/
   private boolean isDone = false;
   /** view & transform matrix **/
   private final Matrix4 viewMatrix = new Matrix4();
   private final Matrix4 transformMatrix = new Matrix4();
 
-  public MainMenu (Application app) {
-    spriteBatch = new SpriteBatch();
-    background = new Texture(Gdx.files.internal(ShootOut.BACKGROUND));
-    background.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+  /**
+   * Takes a reference to the title and the font the menus draw with.
+   */
+  public static void load (Assets assets) {
+    assets.load(ShootOut.TITLE_ATLAS, TextureAtlas.class);
+    assets.load(ShootOut.FONT_FNT, BitmapFont.class);
+  }
+
+  /**
+   * Gives back the references {@link #load(Assets)} took.
+   */
+  public static void unload (Assets assets) {
+    assets.unload(ShootOut.TITLE_ATLAS, TextureAtlas.class);
+    assets.unload(ShootOut.FONT_FNT, BitmapFont.class);
+  }
 
-    logo = new Texture(Gdx.files.internal(ShootOut.TITLE));
-    logo.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+  /**
+   * @param assets has everything {@link #load(Assets)} queues loaded
+   * @param spriteBatch the batch shared by the screens
+   * @param background the starfield shared by the menus
+   */
+  public MainMenu (Application app, Assets assets, SpriteBatch spriteBatch, StaticLayer background) {
+    this.assets = assets;
+    this.spriteBatch = spriteBatch;
+    this.background = background;
+    load(assets);
 
-    font = new BitmapFont(Gdx.files.internal(ShootOut.FONT_FNT), Gdx.files.internal(ShootOut.FONT_PNG), false);
+    // the top half of the title image is the logo of the menu
+    logo = new TextureRegion(assets.get(ShootOut.TITLE_ATLAS, TextureAtlas.class).findRegion("title"), 0, 0, 512, 256);
+    font = assets.get(ShootOut.FONT_FNT, BitmapFont.class);
   }
 
   @Override public void render (Application app) {
-    app.getGraphics().getGL10().glClear(GL10.GL_COLOR_BUFFER_BIT);
+    app.getGraphics().getGLCommon().glClear(GL10.GL_COLOR_BUFFER_BIT);
+    background.draw();
 
     viewMatrix.setToOrtho2D(0, 0, 480, 320);
     spriteBatch.setProjectionMatrix(viewMatrix);
     spriteBatch.setTransformMatrix(transformMatrix);
     spriteBatch.begin();
-    spriteBatch.disableBlending();
-    spriteBatch.setColor(Color.WHITE);
-    spriteBatch.draw(background, 0, 0, 480, 320, 0, 0, 512, 512, false, false);
     spriteBatch.enableBlending();
-    spriteBatch.draw(logo, 0, 320-128, 480, 128, 0, 0, 512, 256, false, false);
+    spriteBatch.setColor(Color.WHITE);
+    spriteBatch.draw(logo, 0, 320-128, 480, 128);
     spriteBatch.setBlendFunction(GL10.GL_ONE, GL10.GL_ONE_MINUS_SRC_ALPHA);
-    String text = "Touch to start!";
+    String text = assets.isFinished() ? "Touch to start!" : "Loading " + (int)(assets.getProgress() * 100) + "%";
     float width = font.getBounds(text).width;
     font.draw(spriteBatch, text, 240 - width / 2, 128);
     spriteBatch.end();
   }
 
   @Override public void update (Application app) {
-    isDone = app.getInput().isTouched();
+    if (app.getInput().isTouched()) isTouched = true;
+    isDone = isTouched && assets.isFinished();
   }
 
   @Override public boolean isDone () {
@@ -85,9 +112,6 @@ public class MainMenu implements Screen {
   }
 
   @Override public void dispose () {
-    spriteBatch.dispose();
-    background.dispose();
-    logo.dispose();
-    font.dispose();
+    unload(assets);
   }
 }
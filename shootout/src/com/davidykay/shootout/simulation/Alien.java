@@ -13,12 +13,7 @@
 
 package com.davidykay.shootout.simulation;
 
-import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.math.Vector3;
-
 public class Alien {
-  private static final String TAG = "Alien";
-  private static final boolean DEBUG = false;
 
   //public static float ALIEN_RADIUS = 0.75f;
   public static float ALIEN_RADIUS = 1.0f;
@@ -30,47 +25,82 @@ public class Alien {
   public final static int STATE_MOVE_DOWN = 1;
   public final static int STATE_MOVE_RIGHT = 2;
 
-  public final Vector3 position = new Vector3();
-  public int state = STATE_MOVE_LEFT;
-  public boolean wasLastStateLeft = true;
-  public float movedDistance = Simulation.PLAYFIELD_MAX_X / 2;;
+  /**
+   * Adds an alien moving left, half way through its first sweep.
+   * @return the index of the new alien
+   */
+  static int spawn (EntityStore aliens, float x, float y, float z) {
+    int i = aliens.add(x, y, z);
+    aliens.radius[i] = ALIEN_RADIUS;
+    aliens.state[i] = STATE_MOVE_LEFT;
+    // dirX remembers the last sideways direction while moving down.
+    aliens.dirX[i] = -1;
+    aliens.time[i] = Simulation.PLAYFIELD_MAX_X / 2;
+    return i;
+  }
 
-  public Alien (Vector3 position) {
-    this.position.set(position);
+  /**
+   * Moves all aliens along their zig zag path. The time column holds the distance moved in the current state.
+   */
+  static void update (EntityStore aliens, float delta, float speedMultiplier, EventTrace trace, int tick) {
+    update(aliens, 0, aliens.size, delta, speedMultiplier);
+    if (trace.enabled) recordMoves(aliens, trace, tick);
   }
 
-  public void update (float delta, float speedMultiplier) {
-    movedDistance += delta * ALIEN_VELOCITY * speedMultiplier;
-    if (state == STATE_MOVE_LEFT) {
-      position.x -= delta * ALIEN_VELOCITY * speedMultiplier;
-      if (movedDistance > Simulation.PLAYFIELD_MAX_X) {
-        state = STATE_MOVE_DOWN;
-        movedDistance = 0;
-        wasLastStateLeft = true;
+  /**
+   * Moves the aliens in [from, to). Aliens don't depend on each other, so disjoint ranges can be moved concurrently.
+   */
+  static void update (EntityStore aliens, int from, int to, float delta, float speedMultiplier) {
+    final float distance = delta * ALIEN_VELOCITY * speedMultiplier;
+    final float[] x = aliens.x;
+    final float[] z = aliens.z;
+    final float[] dirX = aliens.dirX;
+    final float[] movedDistance = aliens.time;
+    final int[] state = aliens.state;
+
+    for (int i = from; i < to; i++) {
+      movedDistance[i] += distance;
+      if (state[i] == STATE_MOVE_LEFT) {
+        x[i] -= distance;
+        if (movedDistance[i] > Simulation.PLAYFIELD_MAX_X) {
+          state[i] = STATE_MOVE_DOWN;
+          movedDistance[i] = 0;
+          dirX[i] = -1;
+        }
       }
-    }
-    if (state == STATE_MOVE_RIGHT) {
-      position.x += delta * ALIEN_VELOCITY * speedMultiplier;
-      if (movedDistance > Simulation.PLAYFIELD_MAX_X) {
-        state = STATE_MOVE_DOWN;
-        movedDistance = 0;
-        wasLastStateLeft = false;
+      if (state[i] == STATE_MOVE_RIGHT) {
+        x[i] += distance;
+        if (movedDistance[i] > Simulation.PLAYFIELD_MAX_X) {
+          state[i] = STATE_MOVE_DOWN;
+          movedDistance[i] = 0;
+          dirX[i] = 1;
+        }
       }
-    }
-    if (state == STATE_MOVE_DOWN) {
-      position.z += delta * ALIEN_VELOCITY * speedMultiplier;
-      if (movedDistance > 1) {
-        if (wasLastStateLeft)
-          state = STATE_MOVE_RIGHT;
-        else
-          state = STATE_MOVE_LEFT;
-        movedDistance = 0;
+      if (state[i] == STATE_MOVE_DOWN) {
+        z[i] += distance;
+        if (movedDistance[i] > 1) {
+          if (dirX[i] < 0)
+            state[i] = STATE_MOVE_RIGHT;
+          else
+            state[i] = STATE_MOVE_LEFT;
+          movedDistance[i] = 0;
+        }
       }
     }
+  }
 
-    if (DEBUG) {
-      Gdx.app.log(TAG, String.format("alien moved to: (%s)",
-                                     position.toString()));
-    }
+  /**
+   * @return the furthest any alien can move in one tick. An alien turning a corner moves along both axes in the same tick.
+   */
+  static float maxMotion (float delta, float speedMultiplier) {
+    return 2 * delta * ALIEN_VELOCITY * speedMultiplier;
+  }
+
+  /**
+   * Traces the positions of all aliens, in index order.
+   */
+  static void recordMoves (EntityStore aliens, EventTrace trace, int tick) {
+    for (int i = 0; i < aliens.size; i++)
+      trace.record(EventTrace.ALIEN_MOVED, tick, aliens.x[i], aliens.y[i], aliens.z[i]);
   }
 }
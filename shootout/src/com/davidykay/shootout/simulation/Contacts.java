@@ -0,0 +1,68 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * A reusable list of contacts between two entity stores found during one tick. Each contact pairs an index in the first
+ * store with an index in the second and the fraction of the tick at which they touched, so hits can be resolved in the
+ * order they happened.
+ *
+ * Only allocates when it has to grow.
+ */
+final class Contacts {
+  int[] first = new int[16];
+  int[] second = new int[16];
+  /** time of impact as a fraction of the tick, 0 is the start **/
+  float[] time = new float[16];
+  int size;
+
+  void clear () {
+    size = 0;
+  }
+
+  void add (int first, int second, float time) {
+    if (size == this.time.length) grow(size * 2);
+    this.first[size] = first;
+    this.second[size] = second;
+    this.time[size] = time;
+    size++;
+  }
+
+  /**
+   * Sorts the contacts by time of impact. Ties go to the lower first index, then the lower second index, so the order
+   * does not depend on the order the contacts were added in.
+   */
+  void sort () {
+    // Insertion sort, a tick rarely has more than a handful of contacts.
+    for (int i = 1; i < size; i++) {
+      int a = first[i], b = second[i];
+      float t = time[i];
+      int j = i - 1;
+      while (j >= 0 && before(t, a, b, j)) {
+        first[j + 1] = first[j];
+        second[j + 1] = second[j];
+        time[j + 1] = time[j];
+        j--;
+      }
+      first[j + 1] = a;
+      second[j + 1] = b;
+      time[j + 1] = t;
+    }
+  }
+
+  private boolean before (float t, int a, int b, int index) {
+    if (t != time[index]) return t < time[index];
+    if (a != first[index]) return a < first[index];
+    return b < second[index];
+  }
+
+  private void grow (int capacity) {
+    int[] newFirst = new int[capacity];
+    int[] newSecond = new int[capacity];
+    float[] newTime = new float[capacity];
+    System.arraycopy(first, 0, newFirst, 0, size);
+    System.arraycopy(second, 0, newSecond, 0, size);
+    System.arraycopy(time, 0, newTime, 0, size);
+    first = newFirst;
+    second = newSecond;
+    time = newTime;
+  }
+}
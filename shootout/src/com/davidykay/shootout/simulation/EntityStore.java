@@ -0,0 +1,291 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * Packed storage for a group of entities. Every attribute lives in its own primitive column so the per tick loops in the
+ * simulation walk plain arrays instead of chasing objects. Removal swaps the last entity into the hole, which is O(1) but
+ * changes the order, so entities are also given handles that stay valid until they are removed.
+ *
+ * Nothing here allocates unless the store has to grow past its capacity.
+ */
+public class EntityStore implements EntityView {
+  private static final int SLOT_BITS = 20;
+  private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+  private static final int GENERATION_MASK = (1 << (32 - SLOT_BITS)) - 1;
+
+  float[] x;
+  float[] y;
+  float[] z;
+  /** position at the start of the current tick, used to interpolate between ticks **/
+  float[] prevX;
+  float[] prevY;
+  float[] prevZ;
+  float[] dirX;
+  float[] dirY;
+  float[] dirZ;
+  float[] radius;
+  float[] time;
+  int[] state;
+  /** set by {@link #kill(int)} to defer a removal until {@link #removeDead()} **/
+  boolean[] dead;
+  int size;
+
+  /** handle of each entity, indexed like the columns **/
+  private int[] handles;
+  /** index of the entity owning each handle slot, -1 if the slot is free **/
+  private int[] slotIndex;
+  private int[] slotGeneration;
+  private int[] freeSlots;
+  private int freeCount;
+  private int slotCount;
+
+  public EntityStore (int capacity) {
+    capacity = Math.max(1, capacity);
+    x = new float[capacity];
+    y = new float[capacity];
+    z = new float[capacity];
+    prevX = new float[capacity];
+    prevY = new float[capacity];
+    prevZ = new float[capacity];
+    dirX = new float[capacity];
+    dirY = new float[capacity];
+    dirZ = new float[capacity];
+    radius = new float[capacity];
+    time = new float[capacity];
+    state = new int[capacity];
+    dead = new boolean[capacity];
+    handles = new int[capacity];
+    slotIndex = new int[capacity];
+    slotGeneration = new int[capacity];
+    freeSlots = new int[capacity];
+  }
+
+  /**
+   * Appends an entity with all other attributes zeroed.
+   * @return the index of the new entity
+   */
+  int add (float x, float y, float z) {
+    if (size == this.x.length) grow(size * 2);
+    int index = size++;
+    this.x[index] = x;
+    this.y[index] = y;
+    this.z[index] = z;
+    prevX[index] = x;
+    prevY[index] = y;
+    prevZ[index] = z;
+    dirX[index] = 0;
+    dirY[index] = 0;
+    dirZ[index] = 0;
+    radius[index] = 0;
+    time[index] = 0;
+    state[index] = 0;
+    dead[index] = false;
+
+    int slot = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+    slotIndex[slot] = index;
+    handles[index] = (slotGeneration[slot] << SLOT_BITS) | slot;
+    return index;
+  }
+
+  /**
+   * Removes the entity at the given index by moving the last entity into its place.
+   */
+  void remove (int index) {
+    int slot = handles[index] & SLOT_MASK;
+    slotIndex[slot] = -1;
+    slotGeneration[slot] = (slotGeneration[slot] + 1) & GENERATION_MASK;
+    freeSlots[freeCount++] = slot;
+
+    int last = --size;
+    if (index != last) {
+      x[index] = x[last];
+      y[index] = y[last];
+      z[index] = z[last];
+      prevX[index] = prevX[last];
+      prevY[index] = prevY[last];
+      prevZ[index] = prevZ[last];
+      dirX[index] = dirX[last];
+      dirY[index] = dirY[last];
+      dirZ[index] = dirZ[last];
+      radius[index] = radius[last];
+      time[index] = time[last];
+      state[index] = state[last];
+      dead[index] = dead[last];
+      handles[index] = handles[last];
+      slotIndex[handles[index] & SLOT_MASK] = index;
+    }
+  }
+
+  /**
+   * Remembers the current positions as the previous ones. Called at the start of every tick.
+   */
+  void storePrevious () {
+    System.arraycopy(x, 0, prevX, 0, size);
+    System.arraycopy(y, 0, prevY, 0, size);
+    System.arraycopy(z, 0, prevZ, 0, size);
+  }
+
+  /**
+   * Marks an entity for removal without disturbing the indices of the others.
+   */
+  void kill (int index) {
+    dead[index] = true;
+  }
+
+  /**
+   * Removes all entities marked by {@link #kill(int)}.
+   * @return whether anything was removed
+   */
+  boolean removeDead () {
+    boolean removed = false;
+    // Walking backwards means the entity swapped into a hole was already looked at.
+    for (int i = size - 1; i >= 0; i--) {
+      if (dead[i]) {
+        remove(i);
+        removed = true;
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Turns this store into a copy of the other one, handles included. Grows if needed, otherwise does not allocate.
+   */
+  void copyFrom (EntityStore other) {
+    if (x.length < other.x.length) grow(other.x.length);
+    final int size = other.size;
+    System.arraycopy(other.x, 0, x, 0, size);
+    System.arraycopy(other.y, 0, y, 0, size);
+    System.arraycopy(other.z, 0, z, 0, size);
+    System.arraycopy(other.prevX, 0, prevX, 0, size);
+    System.arraycopy(other.prevY, 0, prevY, 0, size);
+    System.arraycopy(other.prevZ, 0, prevZ, 0, size);
+    System.arraycopy(other.dirX, 0, dirX, 0, size);
+    System.arraycopy(other.dirY, 0, dirY, 0, size);
+    System.arraycopy(other.dirZ, 0, dirZ, 0, size);
+    System.arraycopy(other.radius, 0, radius, 0, size);
+    System.arraycopy(other.time, 0, time, 0, size);
+    System.arraycopy(other.state, 0, state, 0, size);
+    System.arraycopy(other.dead, 0, dead, 0, size);
+    System.arraycopy(other.handles, 0, handles, 0, size);
+    System.arraycopy(other.slotIndex, 0, slotIndex, 0, other.slotCount);
+    System.arraycopy(other.slotGeneration, 0, slotGeneration, 0, other.slotCount);
+    System.arraycopy(other.freeSlots, 0, freeSlots, 0, other.freeCount);
+    this.size = size;
+    slotCount = other.slotCount;
+    freeCount = other.freeCount;
+  }
+
+  void clear () {
+    for (int i = size - 1; i >= 0; i--)
+      remove(i);
+  }
+
+  private void grow (int capacity) {
+    x = copy(x, capacity);
+    y = copy(y, capacity);
+    z = copy(z, capacity);
+    prevX = copy(prevX, capacity);
+    prevY = copy(prevY, capacity);
+    prevZ = copy(prevZ, capacity);
+    dirX = copy(dirX, capacity);
+    dirY = copy(dirY, capacity);
+    dirZ = copy(dirZ, capacity);
+    radius = copy(radius, capacity);
+    time = copy(time, capacity);
+    state = copy(state, capacity);
+    boolean[] newDead = new boolean[capacity];
+    System.arraycopy(dead, 0, newDead, 0, size);
+    dead = newDead;
+    handles = copy(handles, capacity);
+    slotIndex = copy(slotIndex, capacity);
+    slotGeneration = copy(slotGeneration, capacity);
+    freeSlots = copy(freeSlots, capacity);
+  }
+
+  private static float[] copy (float[] array, int capacity) {
+    float[] copy = new float[capacity];
+    System.arraycopy(array, 0, copy, 0, array.length);
+    return copy;
+  }
+
+  private static int[] copy (int[] array, int capacity) {
+    int[] copy = new int[capacity];
+    System.arraycopy(array, 0, copy, 0, array.length);
+    return copy;
+  }
+
+  //////////////////////////////////////////////////////////////////////
+  // EntityView
+  //////////////////////////////////////////////////////////////////////
+
+  @Override public int size () {
+    return size;
+  }
+
+  @Override public float getX (int index) {
+    return x[index];
+  }
+
+  @Override public float getY (int index) {
+    return y[index];
+  }
+
+  @Override public float getZ (int index) {
+    return z[index];
+  }
+
+  @Override public float getPreviousX (int index) {
+    return prevX[index];
+  }
+
+  @Override public float getPreviousY (int index) {
+    return prevY[index];
+  }
+
+  @Override public float getPreviousZ (int index) {
+    return prevZ[index];
+  }
+
+  @Override public float getDirectionX (int index) {
+    return dirX[index];
+  }
+
+  @Override public float getDirectionY (int index) {
+    return dirY[index];
+  }
+
+  @Override public float getDirectionZ (int index) {
+    return dirZ[index];
+  }
+
+  @Override public float getRadius (int index) {
+    return radius[index];
+  }
+
+  @Override public float getTime (int index) {
+    return time[index];
+  }
+
+  @Override public int getState (int index) {
+    return state[index];
+  }
+
+  @Override public int getHandle (int index) {
+    return handles[index];
+  }
+
+  /**
+   * @return the slot of a handle, smaller than the most entities the store ever held at once. A slot is reused after its
+   *         entity is removed, with a new handle.
+   */
+  public static int slotOf (int handle) {
+    return handle & SLOT_MASK;
+  }
+
+  @Override public int indexOf (int handle) {
+    int slot = handle & SLOT_MASK;
+    if (slot >= slotCount) return -1;
+    if (slotGeneration[slot] != handle >>> SLOT_BITS) return -1;
+    return slotIndex[slot];
+  }
+}
@@ -0,0 +1,46 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * Read-only access to one group of entities, e.g. all aliens. Entities are packed, so an index is only valid until the
+ * simulation ticks again. Use {@link #getHandle(int)} to keep referring to the same entity across ticks.
+ */
+public interface EntityView {
+  public int size ();
+
+  public float getX (int index);
+
+  public float getY (int index);
+
+  public float getZ (int index);
+
+  /**
+   * @return the x coordinate at the start of the last tick, renderers blend between this and {@link #getX(int)}
+   */
+  public float getPreviousX (int index);
+
+  public float getPreviousY (int index);
+
+  public float getPreviousZ (int index);
+
+  public float getDirectionX (int index);
+
+  public float getDirectionY (int index);
+
+  public float getDirectionZ (int index);
+
+  public float getRadius (int index);
+
+  /**
+   * @return the per entity timer, e.g. the alive time of an explosion or the distance an alien moved in its current state
+   */
+  public float getTime (int index);
+
+  public int getState (int index);
+
+  public int getHandle (int index);
+
+  /**
+   * @return the current index of the entity with the given handle or -1 if it was removed
+   */
+  public int indexOf (int handle);
+}
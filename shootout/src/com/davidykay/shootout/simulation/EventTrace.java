@@ -0,0 +1,137 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * A binary event recorder for debugging the simulation. Events are written as fixed size primitive records (event id, tick and
+ * three floats) into a ring buffer that is allocated once, so recording never allocates and never formats strings. The buffer
+ * only gets decoded into text when it is dumped, e.g. on demand or after a crash, and then holds the most recent events.
+ *
+ * Tracing is off when the {@link #OFF} instance is installed. Hot loops read {@link #enabled} once up front, so a disabled
+ * trace costs a field read per loop.
+ */
+public final class EventTrace {
+  /** a ray moved, x, y, z **/
+  public static final int RAY_MOVED = 0;
+  /** an alien moved, x, y, z **/
+  public static final int ALIEN_MOVED = 1;
+  /** a raw orientation sample was queued, azimuth, pitch, roll **/
+  public static final int ORIENTATION_SAMPLE = 2;
+  /** the averaged orientation changed, roll, pitch, azimuth **/
+  public static final int ORIENTATION_AVERAGE = 3;
+  /** the player fired, direction x, y, z **/
+  public static final int PLAYER_FIRED = 4;
+  /** an alien fired, x, y, z **/
+  public static final int ALIEN_FIRED = 5;
+  /** a player shot and an alien shot destroyed each other, x, y, z **/
+  public static final int SHOTS_POPPED = 6;
+  /** an alien was shot down, x, y, z **/
+  public static final int ALIEN_KILLED = 7;
+  /** the ship was hit, lives left **/
+  public static final int SHIP_HIT = 8;
+  /** a new wave started, wave, multiplier **/
+  public static final int WAVE_STARTED = 9;
+  /** the screen was touched, screen x, y **/
+  public static final int TOUCH = 10;
+  /** a touch was traced onto the game plane, x, y, z **/
+  public static final int TOUCH_PICKED = 11;
+  /** a touch missed the game plane, near plane x, y, z **/
+  public static final int TOUCH_MISSED = 12;
+
+  private static final String[] FORMATS = {
+    "rayShot moving to: (%f, %f, %f)",
+    "alien moved to: (%f, %f, %f)",
+    "NEW Orientation: (%f, %f, %f)",
+    "AVERAGE Orientation: (%f, %f, %f)",
+    "player fired along: (%f, %f, %f)",
+    "alien fired from: (%f, %f, %f)",
+    "shots popped at: (%f, %f, %f)",
+    "alien killed at: (%f, %f, %f)",
+    "ship hit, lives: %.0f",
+    "wave %.0f started, multiplier %f",
+    "touch at: (%.0f, %.0f)",
+    "touch picked: (%f, %f, %f)",
+    "touch missed, near vector: (%f, %f, %f)",
+  };
+
+  private static final String TAG = "Trace";
+  /** ints per record: event, tick, three float bit patterns **/
+  private static final int RECORD_SIZE = 5;
+
+  /** the trace that records nothing **/
+  public static final EventTrace OFF = new EventTrace();
+
+  public final boolean enabled;
+  private final int[] records;
+  private final int mask;
+  /** total number of records written, the next record goes to written & mask **/
+  private long written;
+
+  private EventTrace () {
+    enabled = false;
+    records = new int[0];
+    mask = 0;
+  }
+
+  /**
+   * @param capacity the number of most recent events kept, rounded up to a power of two
+   */
+  public EventTrace (int capacity) {
+    int size = 1;
+    while (size < capacity)
+      size <<= 1;
+    enabled = true;
+    records = new int[size * RECORD_SIZE];
+    mask = size - 1;
+  }
+
+  public void record (int event, int tick) {
+    record(event, tick, 0, 0, 0);
+  }
+
+  public void record (int event, int tick, float a) {
+    record(event, tick, a, 0, 0);
+  }
+
+  public void record (int event, int tick, float a, float b) {
+    record(event, tick, a, b, 0);
+  }
+
+  public void record (int event, int tick, float a, float b, float c) {
+    if (!enabled) return;
+    int offset = (int)(written++ & mask) * RECORD_SIZE;
+    final int[] records = this.records;
+    records[offset] = event;
+    records[offset + 1] = tick;
+    records[offset + 2] = Float.floatToRawIntBits(a);
+    records[offset + 3] = Float.floatToRawIntBits(b);
+    records[offset + 4] = Float.floatToRawIntBits(c);
+  }
+
+  /**
+   * @return the number of events currently held, at most the capacity
+   */
+  public int size () {
+    return (int)Math.min(written, mask + 1);
+  }
+
+  public void clear () {
+    written = 0;
+  }
+
+  /**
+   * Decodes the held events, oldest first, and writes one line per event to the log.
+   */
+  public void dump (SimulationLog log) {
+    if (!enabled) return;
+    int count = size();
+    log.log(TAG, count + " of " + written + " events");
+    for (long i = written - count; i < written; i++) {
+      int offset = (int)(i & mask) * RECORD_SIZE;
+      int event = records[offset];
+      float a = Float.intBitsToFloat(records[offset + 2]);
+      float b = Float.intBitsToFloat(records[offset + 3]);
+      float c = Float.intBitsToFloat(records[offset + 4]);
+      String message = event >= 0 && event < FORMATS.length ? String.format(FORMATS[event], a, b, c) : "unknown event " + event;
+      log.log(TAG, "[" + records[offset + 1] + "] " + message);
+    }
+  }
+}
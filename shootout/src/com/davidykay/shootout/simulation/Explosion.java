@@ -13,18 +13,21 @@
 
 package com.davidykay.shootout.simulation;
 
-import com.badlogic.gdx.math.Vector3;
-
 public class Explosion {
 	public static final float EXPLOSION_LIVE_TIME = 1;
-	public float aliveTime = 0;
-	public final Vector3 position = new Vector3();
 
-	public Explosion (Vector3 position) {
-		this.position.set(position);
+	static int spawn (EntityStore explosions, float x, float y, float z) {
+		return explosions.add(x, y, z);
 	}
 
-	public void update (float delta) {
-		aliveTime += delta;
+	/**
+	 * Ages all explosions and removes the ones that burnt out. The time column holds the alive time.
+	 */
+	static void update (EntityStore explosions, float delta) {
+		final float[] aliveTime = explosions.time;
+		for (int i = explosions.size - 1; i >= 0; i--) {
+			aliveTime[i] += delta;
+			if (aliveTime[i] > EXPLOSION_LIVE_TIME) explosions.remove(i);
+		}
 	}
 }
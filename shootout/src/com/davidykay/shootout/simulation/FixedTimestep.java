@@ -0,0 +1,71 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * Turns variable frame times into a whole number of fixed length simulation ticks. Leftover time is carried over to the
+ * next frame and exposed as an interpolation factor for rendering. If a frame is so slow that more than the catch up cap
+ * of ticks would be needed, the surplus time is dropped so the game slows down instead of spiralling.
+ */
+public class FixedTimestep {
+  private float step;
+  private int maxStepsPerFrame;
+  private float accumulator;
+
+  /**
+   * @param ticksPerSecond the simulation rate
+   * @param maxStepsPerFrame the most ticks a single frame may run
+   */
+  public FixedTimestep (float ticksPerSecond, int maxStepsPerFrame) {
+    setTicksPerSecond(ticksPerSecond);
+    this.maxStepsPerFrame = maxStepsPerFrame;
+  }
+
+  /**
+   * Adds the frame time to the accumulator.
+   * @return the number of ticks of {@link #getStep()} seconds to run this frame
+   */
+  public int advance (float frameDelta) {
+    accumulator += frameDelta;
+    int steps = (int)(accumulator / step);
+    if (steps > maxStepsPerFrame) {
+      steps = maxStepsPerFrame;
+      accumulator = 0;
+    } else {
+      accumulator -= steps * step;
+    }
+    return steps;
+  }
+
+  /**
+   * Drops the leftover time, so the next frame starts on a tick.
+   */
+  public void reset () {
+    accumulator = 0;
+  }
+
+  /**
+   * @return how far the frame is between the last tick and the next one, from 0 to 1
+   */
+  public float getAlpha () {
+    return Math.min(1, accumulator / step);
+  }
+
+  public float getStep () {
+    return step;
+  }
+
+  public void setTicksPerSecond (float ticksPerSecond) {
+    this.step = 1 / ticksPerSecond;
+  }
+
+  public float getTicksPerSecond () {
+    return 1 / step;
+  }
+
+  public void setMaxStepsPerFrame (int maxStepsPerFrame) {
+    this.maxStepsPerFrame = maxStepsPerFrame;
+  }
+
+  public int getMaxStepsPerFrame () {
+    return maxStepsPerFrame;
+  }
+}
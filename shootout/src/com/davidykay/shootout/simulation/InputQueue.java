@@ -0,0 +1,179 @@
+package com.davidykay.shootout.simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+
+/**
+ * Carries player input from the thread reading the device to the thread running the simulation. Exactly one thread may
+ * offer commands and exactly one may apply them. The queue is a fixed ring of primitive slots, so neither side locks or
+ * allocates. When the ring is full new commands are dropped.
+ */
+public final class InputQueue {
+  private static final int TAP = 0;
+  private static final int STEER = 1;
+  private static final int ORIENTATION = 2;
+  /** taps that carry where they were traced onto the game plane, or the near plane point if they missed it **/
+  private static final int PICKED_TAP = 3;
+  private static final int MISSED_TAP = 4;
+  /** floats reserved per command **/
+  private static final int ARGUMENTS = 11;
+
+  private final int mask;
+  private final int[] types;
+  private final float[] arguments;
+  /** next slot to apply, only advanced by the consumer **/
+  private final AtomicInteger head = new AtomicInteger();
+  /** next slot to fill, only advanced by the producer **/
+  private final AtomicInteger tail = new AtomicInteger();
+
+  /** held steering, owned by the consumer. Negative moves left, positive right **/
+  private float steering;
+
+  /**
+   * @param capacity the number of commands that fit, rounded up to a power of two
+   */
+  public InputQueue (int capacity) {
+    int size = 1;
+    while (size < capacity)
+      size <<= 1;
+    mask = size - 1;
+    types = new int[size];
+    arguments = new float[size * ARGUMENTS];
+  }
+
+  /**
+   * Producer side. Fires along the pick ray of a touch.
+   * @return false if the queue was full
+   */
+  public boolean tap (float screenX, float screenY, Ray ray) {
+    int slot = claim();
+    if (slot == -1) return false;
+    putTap(slot, screenX, screenY, ray);
+    return commit(slot, TAP);
+  }
+
+  /**
+   * Producer side. Fires along the pick ray of a touch and traces where the touch was picked on the game plane.
+   * @param point the picked point, or the near plane point if the ray missed the plane
+   * @return false if the queue was full
+   */
+  public boolean tap (float screenX, float screenY, Ray ray, Vector3 point, boolean picked) {
+    int slot = claim();
+    if (slot == -1) return false;
+    putTap(slot, screenX, screenY, ray);
+    int offset = slot * ARGUMENTS;
+    arguments[offset + 8] = point.x;
+    arguments[offset + 9] = point.y;
+    arguments[offset + 10] = point.z;
+    return commit(slot, picked ? PICKED_TAP : MISSED_TAP);
+  }
+
+  private void putTap (int slot, float screenX, float screenY, Ray ray) {
+    int offset = slot * ARGUMENTS;
+    arguments[offset] = screenX;
+    arguments[offset + 1] = screenY;
+    arguments[offset + 2] = ray.origin.x;
+    arguments[offset + 3] = ray.origin.y;
+    arguments[offset + 4] = ray.origin.z;
+    arguments[offset + 5] = ray.direction.x;
+    arguments[offset + 6] = ray.direction.y;
+    arguments[offset + 7] = ray.direction.z;
+  }
+
+  /**
+   * Producer side. Sets the steering that is applied every tick until it changes.
+   * @param scale negative moves the ship left, positive right, 1 is full speed
+   * @return false if the queue was full
+   */
+  public boolean steer (float scale) {
+    int slot = claim();
+    if (slot == -1) return false;
+    arguments[slot * ARGUMENTS] = scale;
+    return commit(slot, STEER);
+  }
+
+  /**
+   * Producer side. Passes raw device orientation to {@link Simulation#updateOrientation(float, float, float)}.
+   * @return false if the queue was full
+   */
+  public boolean orientation (float azimuth, float pitch, float roll) {
+    int slot = claim();
+    if (slot == -1) return false;
+    int offset = slot * ARGUMENTS;
+    arguments[offset] = azimuth;
+    arguments[offset + 1] = pitch;
+    arguments[offset + 2] = roll;
+    return commit(slot, ORIENTATION);
+  }
+
+  /**
+   * Consumer side. Applies all queued commands to the simulation in the order they were offered.
+   */
+  public void apply (Simulation simulation) {
+    int h = head.get();
+    final int t = tail.get();
+    for (; h != t; h++) {
+      int slot = h & mask;
+      int offset = slot * ARGUMENTS;
+      switch (types[slot]) {
+      case TAP:
+      case PICKED_TAP:
+      case MISSED_TAP:
+        simulation.trace.record(EventTrace.TOUCH, simulation.getTick(), arguments[offset], arguments[offset + 1]);
+        if (types[slot] != TAP) {
+          int event = types[slot] == PICKED_TAP ? EventTrace.TOUCH_PICKED : EventTrace.TOUCH_MISSED;
+          simulation.trace.record(event, simulation.getTick(), arguments[offset + 8], arguments[offset + 9],
+                                  arguments[offset + 10]);
+        }
+        simulation.tapRay(arguments[offset + 2], arguments[offset + 3], arguments[offset + 4],
+                          arguments[offset + 5], arguments[offset + 6], arguments[offset + 7]);
+        break;
+      case STEER:
+        steering = arguments[offset];
+        break;
+      case ORIENTATION:
+        simulation.updateOrientation(arguments[offset], arguments[offset + 1], arguments[offset + 2]);
+        break;
+      }
+    }
+    // Hands the slots back to the producer only after they were read.
+    head.lazySet(h);
+  }
+
+  /**
+   * Consumer side. Moves the ship by the held steering, once per tick.
+   */
+  public void steer (Simulation simulation, float delta) {
+    if (steering < 0)
+      simulation.moveShipLeft(delta, -steering);
+    else if (steering > 0)
+      simulation.moveShipRight(delta, steering);
+  }
+
+  /**
+   * Consumer side, or the producer while nothing consumes. Drops the queued commands and the held steering without
+   * applying them, like before a new game.
+   */
+  public void clear () {
+    head.lazySet(tail.get());
+    steering = 0;
+  }
+
+  /**
+   * @return the slot to fill or -1 if the queue is full
+   */
+  private int claim () {
+    int t = tail.get();
+    if (t - head.get() > mask) return -1;
+    return t & mask;
+  }
+
+  private boolean commit (int slot, int type) {
+    types[slot] = type;
+    // Publishes the slot, the consumer sees everything written before.
+    tail.lazySet(tail.get() + 1);
+    return true;
+  }
+}
@@ -1,49 +1,48 @@
 package com.davidykay.shootout.simulation;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.Vector3;
-import com.badlogic.gdx.math.collision.Ray;
 
 public class RayShot {
-  private static final String TAG = "RayShot";
   private static float PLAYER_SHOT_VELOCITY = 10;
   private static float ALIEN_SHOT_VELOCITY = 5;
 
   private static float PLAYER_SHOT_RADIUS = 1;
   private static float  ALIEN_SHOT_RADIUS = 2;
 
-  /** Speed which our shots move at. */
-  private float shotVelocity;
-  public float radius;
-  public final Vector3 position = new Vector3();
-  /** A unit vector which shows our current direction. */
-  public final Vector3 direction = new Vector3();
-  public boolean isAlienShot;
-  public boolean hasLeftField = false;
-
-  public RayShot (Ray ray, boolean isAlienShot) {
-    this(ray.origin, ray.direction, isAlienShot);
+  /**
+   * Adds a shot travelling along the given direction, which must be a unit vector.
+   * @return the index of the new shot
+   */
+  static int spawn (EntityStore rays, float x, float y, float z, Vector3 direction, boolean isAlienShot) {
+    int i = rays.add(x, y, z);
+    rays.dirX[i] = direction.x;
+    rays.dirY[i] = direction.y;
+    rays.dirZ[i] = direction.z;
+    rays.radius[i] = isAlienShot ? ALIEN_SHOT_RADIUS : PLAYER_SHOT_RADIUS;
+    return i;
   }
 
-  public RayShot (Vector3 position, Vector3 direction, boolean isAlienShot) {
-    this.position.set(position);
-    this.direction.set(direction);
-    this.isAlienShot = isAlienShot;
-    this.shotVelocity = isAlienShot ? ALIEN_SHOT_VELOCITY : PLAYER_SHOT_VELOCITY;
-    this.radius       = isAlienShot ? ALIEN_SHOT_RADIUS : PLAYER_SHOT_RADIUS;
-  }
-
-  public void update (float delta) {
-    position.x += direction.x * shotVelocity * delta;
-    position.y += direction.y * shotVelocity * delta;
-    position.z += direction.z * shotVelocity * delta;
-
-    Gdx.app.log(TAG, String.format("rayShot moving to: (%f, %f, %f)",
-                             position.x,
-                             position.y,
-                             position.z));
-
-    if (position.z > Simulation.PLAYFIELD_MAX_Z) hasLeftField = true;
-    if (position.z < Simulation.PLAYFIELD_MIN_Z) hasLeftField = true;
+  /**
+   * Moves all shots in the store and removes the ones that left the playfield. A store only ever holds shots of one side.
+   */
+  static void update (EntityStore rays, boolean isAlienShot, float delta, EventTrace trace, int tick) {
+    final boolean tracing = trace.enabled;
+    final float distance = (isAlienShot ? ALIEN_SHOT_VELOCITY : PLAYER_SHOT_VELOCITY) * delta;
+    final float[] x = rays.x;
+    final float[] y = rays.y;
+    final float[] z = rays.z;
+    final float[] dirX = rays.dirX;
+    final float[] dirY = rays.dirY;
+    final float[] dirZ = rays.dirZ;
+
+    for (int i = rays.size - 1; i >= 0; i--) {
+      x[i] += dirX[i] * distance;
+      y[i] += dirY[i] * distance;
+      z[i] += dirZ[i] * distance;
+
+      if (tracing) trace.record(EventTrace.RAY_MOVED, tick, x[i], y[i], z[i]);
+
+      if (z[i] > Simulation.PLAYFIELD_MAX_Z || z[i] < Simulation.PLAYFIELD_MIN_Z) rays.remove(i);
+    }
   }
 }
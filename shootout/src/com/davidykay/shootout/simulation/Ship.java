@@ -19,11 +19,25 @@ public class Ship {
   //public static final float SHIP_RADIUS = 1;
   public static final float SHIP_RADIUS = 2;
   public static final float SHIP_VELOCITY = 20;
+  public static final int START_LIVES = 3;
   public final Vector3 position = new Vector3(0, 0, 0);
-  public int lives = 3;
+  /** position at the start of the current tick, used to interpolate between ticks **/
+  public final Vector3 previousPosition = new Vector3(0, 0, 0);
+  public int lives = START_LIVES;
   public boolean isExploding = false;
   public float explodeTime = 0;
 
+  /**
+   * Puts the ship back where a new game starts it.
+   */
+  public void reset () {
+    position.set(0, 0, 0);
+    previousPosition.set(0, 0, 0);
+    lives = START_LIVES;
+    isExploding = false;
+    explodeTime = 0;
+  }
+
   public void update (float delta) {
     if (isExploding) {
       explodeTime += delta;
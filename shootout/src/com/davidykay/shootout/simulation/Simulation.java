@@ -17,10 +17,8 @@
 package com.davidykay.shootout.simulation;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.Random;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.Ray;
 
@@ -38,55 +36,121 @@ public class Simulation {
   public final static float PLAYFIELD_MAX_Y = 2;
 
   public final static float MAX_SHOTS = 8;
+  /** how often the aliens fire on average at multiplier 1 **/
+  public final static float ALIEN_SHOTS_PER_SECOND = 0.6f;
+
+  /**
+   * smallest formation worth handing to the worker threads, waking them costs more than moving a few aliens. The
+   * value is a guess, not a measured crossover: the only numbers so far came from a single core machine, where the
+   * workers can never win. Time the workers=4 benchmarks against the serial ones on a multi core device before relying
+   * on it.
+   **/
+  public final static int MIN_PARALLEL_ALIENS = 512;
+
+  /** edge length of a broadphase cell, roughly the largest collision distance we test for **/
+  public final static float COLLISION_CELL_SIZE = 4;
 
   private static final String TAG = "Simulation";
-  private static final boolean DEBUG = false;
 
-  public ArrayList<Alien> aliens     = new ArrayList<Alien>();
-  public ArrayList<Block> blocks         = new ArrayList<Block>();
-  public ArrayList<Explosion> explosions = new ArrayList<Explosion>();
-  public ArrayList<Explosion> bombExplosions = new ArrayList<Explosion>();
-  public Ship ship;
+  final EntityStore aliens;
+  public ArrayList<Block> blocks           = new ArrayList<Block>();
+  final EntityStore explosions     = new EntityStore(16);
+  final EntityStore bombExplosions = new EntityStore(16);
+  public final Ship ship = new Ship();
 
-  //public ArrayList<RayShot> mRays = new ArrayList<RayShot>();
-  public ArrayList<RayShot> mShipRays = new ArrayList<RayShot>();
-  public ArrayList<RayShot> mAlienRays = new ArrayList<RayShot>();
+  final EntityStore mShipRays  = new EntityStore((int)MAX_SHOTS);
+  final EntityStore mAlienRays = new EntityStore(16);
   public transient SimulationListener listener;
+  /** debug event recorder, off by default **/
+  public transient EventTrace trace = EventTrace.OFF;
   public float multiplier = 1;
   public int score;
   public int wave = 1;
-
-  private ArrayList<Explosion> removedExplosions = new ArrayList<Explosion>();
-  private ArrayList<RayShot> removedRays = new ArrayList<RayShot>();
+  /** number of ticks run so far **/
+  private int tick;
+  /** most player shots in flight at once **/
+  public int maxShots = (int)MAX_SHOTS;
+  /**
+   * find the aliens hit by player shots through the spatial hash, set to false to use the brute force loop. The shot
+   * vs shot and ship passes always test every entity, they only see a handful of shots or one ship path, and the
+   * benchmarks have brute force ahead of the hash for them at every formation size.
+   **/
+  public boolean useSpatialHash = true;
+
+  final SpatialHash alienHash = newPlayfieldHash();
+  private boolean alienHashDirty = true;
+  /** scratch list for the contacts found by a collision pass **/
+  private final Contacts contacts = new Contacts();
+  /** furthest any alien moved this tick **/
+  private float alienMotion;
+
+  /** runs the alien loops on several threads, null to run them on the calling thread **/
+  private WorkerPool workers;
+  /** scratch space of each worker, indexed by chunk **/
+  private Contacts[] workerContacts = { new Contacts() };
+  private int[][] workerQueryResults = new int[1][];
+  private int[] workerHit = new int[1];
+  private float[] workerHitTime = new float[1];
+  /** tick length handed to the worker tasks **/
+  private float taskDelta;
+
+  private final Random random;
+  /** size of the alien formation spawned each wave **/
+  private final int rows;
+  private final int columns;
+  private final Vector3 shotDirection = new Vector3();
 
   //////////////////////////////////////////////////////////////////////
   // Initialization
   //////////////////////////////////////////////////////////////////////
 
   public Simulation () {
-    populate();
+    this(new Random(), (int)ENEMY_ROWS, (int)ENEMY_COLUMNS);
   }
 
-  private void populate () {
-    ship = new Ship();
+  /**
+   * Creates a simulation whose formation and alien fire are fully determined by the seed, given the same inputs.
+   */
+  public Simulation (long seed) {
+    this(new Random(seed), (int)ENEMY_ROWS, (int)ENEMY_COLUMNS);
+  }
 
-    Random random = new Random();
+  /**
+   * Creates a seeded simulation with a bigger or smaller formation than the default {@link #ENEMY_ROWS} x
+   * {@link #ENEMY_COLUMNS}.
+   */
+  public Simulation (long seed, int rows, int columns) {
+    this(new Random(seed), rows, columns);
+  }
 
-    final float ROW_SIZE = 2.5f;
-    final float COLUMN_SIZE = 2.5f;
+  private Simulation (Random random, int rows, int columns) {
+    this.random = random;
+    this.rows = rows;
+    this.columns = columns;
+    this.aliens = new EntityStore(rows * columns);
+    populate();
+  }
 
-    for (int row = 0; row < ENEMY_ROWS; row++) {
-      for (int column = 0; column < ENEMY_COLUMNS; column++) {
-        Alien alien = new Alien(
-            new Vector3(
-                -PLAYFIELD_MAX_X / 2 + column * COLUMN_SIZE,
-                random.nextInt(6),
-                PLAYFIELD_MIN_Z + row * ROW_SIZE
-            )
+  /**
+   * Spawns a fresh formation into the (empty) alien store. Slots freed by the previous wave are reused, so this does not
+   * allocate.
+   */
+  private void populate () {
+    // Big formations are packed tighter so they still start inside the playfield.
+    final float ROW_SIZE = Math.min(2.5f, (PLAYFIELD_MAX_Z - PLAYFIELD_MIN_Z) * 0.6f / rows);
+    final float COLUMN_SIZE = Math.min(2.5f, (PLAYFIELD_MAX_X - PLAYFIELD_MIN_X) / columns);
+
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        Alien.spawn(
+            aliens,
+            -PLAYFIELD_MAX_X / 2 + column * COLUMN_SIZE,
+            random.nextInt(6),
+            PLAYFIELD_MIN_Z + row * ROW_SIZE
         );
-        aliens.add(alien);
       }
     }
+    alienHashDirty = true;
 
     //for (int shield = 0; shield < 3; shield++) {
     //  blocks.add(new Block(new Vector3(-10 + shield * 10 - 1, 0, -2)));
@@ -97,132 +161,263 @@ public class Simulation {
     //}
   }
 
+  /**
+   * Starts a new game in place. The entity stores, hashes and scratch space are kept and the formation is spawned into the
+   * freed slots, so a restart does not allocate. The random sequence continues where the last game left it, a seeded
+   * simulation only replays the same games if it is reset after the same inputs.
+   */
+  public void reset () {
+    aliens.clear();
+    explosions.clear();
+    bombExplosions.clear();
+    mShipRays.clear();
+    mAlienRays.clear();
+    blocks.clear();
+    ship.reset();
+    multiplier = 1;
+    score = 0;
+    wave = 1;
+    tick = 0;
+    mOrientationHead = 0;
+    mOrientationCount = 0;
+    mAzimuth = 0;
+    mPitch = 0;
+    mRoll = 0;
+    populate();
+    trace.record(EventTrace.WAVE_STARTED, tick, wave, multiplier);
+  }
+
+  //////////////////////////////////////////////////////////////////////
+  // Entities
+  //////////////////////////////////////////////////////////////////////
+
+  public EntityView getAliens () {
+    return aliens;
+  }
+
+  public EntityView getShipRays () {
+    return mShipRays;
+  }
+
+  public EntityView getAlienRays () {
+    return mAlienRays;
+  }
+
+  public EntityView getExplosions () {
+    return explosions;
+  }
+
+  public EntityView getBombExplosions () {
+    return bombExplosions;
+  }
+
   //////////////////////////////////////////////////////////////////////
   // Game Logic
   //////////////////////////////////////////////////////////////////////
 
+  /**
+   * Advances the game by one tick. The simulation is not thread safe, all calls have to come from the same thread. Use
+   * {@link SimulationThread} to run it on a thread of its own.
+   */
   public void update (float delta) {
-    synchronized (mShipRays) {
-      ship.update(delta);
-      updateAliens(delta);
-      updateRays(delta);
-      updateExplosions(delta);
-      checkShipCollision();
-      checkAlienCollision();
-      //checkBlockCollision();
-      checkNextLevel();
-      //synchronized (mShipRays) {
-      //}
-    }
+    tick++;
+    storePrevious();
+    ship.update(delta);
+    updateAliens(delta);
+    updateRays(delta);
+    updateExplosions(delta);
+    checkShipCollision();
+    checkAlienCollision();
+    //checkBlockCollision();
+    checkNextLevel();
+  }
+
+  private void storePrevious () {
+    ship.previousPosition.set(ship.position);
+    aliens.storePrevious();
+    mShipRays.storePrevious();
+    mAlienRays.storePrevious();
+    explosions.storePrevious();
+    bombExplosions.storePrevious();
   }
 
   private void updateAliens (float delta) {
-    for (int i = 0; i < aliens.size(); i++) {
-      Alien alien = aliens.get(i);
-      alien.update(delta, multiplier);
+    if (isParallel()) {
+      taskDelta = delta;
+      workers.run(moveAliens);
+      if (trace.enabled) Alien.recordMoves(aliens, trace, tick);
+    } else {
+      Alien.update(aliens, delta, multiplier, trace, tick);
     }
+    alienMotion = Alien.maxMotion(delta, multiplier);
+    alienHashDirty = true;
   }
 
   private void updateRays (float delta) {
-    removedRays.clear();
-
-    ArrayList<RayShot> rays = getAllRays();
+    // Move, and remove the ones that left the building.
+    RayShot.update(mAlienRays, true, delta, trace, tick);
+    RayShot.update(mShipRays, false, delta, trace, tick);
 
-    //for (RayShot ray : rays) {
-    for (int i = 0; i < rays.size(); i++) {
-      RayShot ray = rays.get(i);
-      // Move.
-      ray.update(delta);
-      // If they've left the building, remove.
-      if (ray.hasLeftField) removedRays.add(ray);
+    // Check player shots against computer shots.
+    checkRayCollision();
+
+    // UFOs shoot! The chance scales with the tick length so the fire rate does not depend on the tick rate.
+    if (random.nextFloat() < ALIEN_SHOTS_PER_SECOND * multiplier * delta && aliens.size > 0) {
+      int index = (int)(random.nextFloat() * (aliens.size - 1));
+      float x = aliens.x[index];
+      float y = aliens.y[index];
+      float z = aliens.z[index];
+      shotDirection.set(-x, -y, -z).nor();
+      RayShot.spawn(mAlienRays, x, y, z, shotDirection, true);
+      trace.record(EventTrace.ALIEN_FIRED, tick, x, y, z);
+      if (listener != null) listener.shot();
     }
+  }
 
-    // Clear up removed
-    //for (RayShot ray : removedRays) {
-    for (int i = 0; i < removedRays.size(); i++) {
-      RayShot ray = removedRays.get(i);
-      if (ray.isAlienShot) {
-        mAlienRays.remove(ray);
-      } else {
-        mShipRays.remove(ray);
-      }
+  public void updateExplosions (float delta) {
+    //Ship Explosions
+    Explosion.update(explosions, delta);
+
+    //Bomb Explosions
+    Explosion.update(bombExplosions, delta);
+  }
+
+  //////////////////////////////////////////////////////////////////////
+  // Collision
+  //////////////////////////////////////////////////////////////////////
+
+  /**
+   * Player shots and computer shots destroy each other. Both move during the tick, so their paths are tested, and the
+   * pairs that touched first pop first. A shot can only pop once.
+   */
+  private void checkRayCollision () {
+    if (mShipRays.size == 0 || mAlienRays.size == 0) return;
+
+    final Contacts contacts = this.contacts;
+    findPoppedRays(contacts);
+    contacts.sort();
+    for (int k = 0; k < contacts.size; k++) {
+      int shipRay = contacts.first[k];
+      int alienRay = contacts.second[k];
+      if (!mShipRays.dead[shipRay] && !mAlienRays.dead[alienRay]) popRays(shipRay, alienRay);
     }
+    removePoppedRays();
+  }
 
-    // Check player shots against computer shots.
-rays:
-    for (int i = 0; i < mShipRays.size(); i++) {
-      RayShot ray = mShipRays.get(i);
-      for (int j = 0; j < mAlienRays.size(); j++) {
-        RayShot enemyRay = mAlienRays.get(j);
-        if (enemyRay.position.dst(ray.position) < ray.radius + enemyRay.radius) {
-          // Boom!
-          mShipRays.remove(ray);
-          mAlienRays.remove(enemyRay);
-          bombExplosions.add(new Explosion(enemyRay.position));
-          score += Alien.SHOT_POINTS;
-
-          if (listener != null) listener.pop();
-          continue rays;
-        }
+  /**
+   * Brute force collision detection. Collects every player shot and computer shot whose paths touched this tick.
+   * @param contacts receives player shot indices, computer shot indices and times of impact
+   */
+  void findPoppedRays (Contacts contacts) {
+    contacts.clear();
+    final EntityStore shipRays = mShipRays;
+    final EntityStore alienRays = mAlienRays;
+    for (int i = 0; i < shipRays.size; i++) {
+      for (int j = 0; j < alienRays.size; j++) {
+        float t = timeOfImpact(shipRays, i, alienRays, j, shipRays.radius[i] + alienRays.radius[j]);
+        if (t >= 0) contacts.add(i, j, t);
       }
     }
+  }
 
-    // UFOs shoot!
-    if (Math.random() < 0.01 * multiplier && aliens.size() > 0) {
-      int index = (int)(Math.random() * (aliens.size() - 1));
-      Vector3 position = aliens.get(index).position;
-      Vector3 direction = new Vector3(0,0,0).sub(position).nor();
-      RayShot shot = new RayShot(position,
-                                 direction,
-                                 true);
-      mAlienRays.add(shot);
-      if (listener != null) listener.shot();
+  private void popRays (int shipRay, int alienRay) {
+    // Boom!
+    mShipRays.kill(shipRay);
+    mAlienRays.kill(alienRay);
+    Explosion.spawn(bombExplosions, mAlienRays.x[alienRay], mAlienRays.y[alienRay], mAlienRays.z[alienRay]);
+    trace.record(EventTrace.SHOTS_POPPED, tick, mAlienRays.x[alienRay], mAlienRays.y[alienRay], mAlienRays.z[alienRay]);
+    score += Alien.SHOT_POINTS;
+
+    if (listener != null) listener.pop();
+  }
+
+  private void removePoppedRays () {
+    mShipRays.removeDead();
+    mAlienRays.removeDead();
+  }
+
+  /**
+   * Player shots take out the aliens they touched this tick, earliest hit first. Every shot kills at most one alien.
+   */
+  private void checkAlienCollision () {
+    //if (mRays.isEmpty()) return;
+    if (mShipRays.size == 0 || aliens.size == 0) return;
+
+    final Contacts contacts = this.contacts;
+    if (useSpatialHash)
+      findShotAliensHashed(contacts);
+    else
+      findShotAliens(contacts);
+    if (contacts.size == 0) return;
+
+    contacts.sort();
+    final EntityStore shipRays = mShipRays;
+    for (int k = 0; k < contacts.size; k++) {
+      int shipRay = contacts.first[k];
+      int hitAlien = contacts.second[k];
+      if (shipRays.dead[shipRay] || aliens.dead[hitAlien]) continue;
+
+      shipRays.kill(shipRay);
+      aliens.kill(hitAlien);
+      Explosion.spawn(explosions, aliens.x[hitAlien], aliens.y[hitAlien], aliens.z[hitAlien]);
+      trace.record(EventTrace.ALIEN_KILLED, tick, aliens.x[hitAlien], aliens.y[hitAlien], aliens.z[hitAlien]);
+      if (listener != null) listener.explosion();
+      score += Alien.ALIEN_POINTS;
     }
+    shipRays.removeDead();
+    if (aliens.removeDead()) alienHashDirty = true;
   }
 
-  public void updateExplosions (float delta) {
-    //Ship Explosions
-    removedExplosions.clear();
-    for (int i = 0; i < explosions.size(); i++) {
-      Explosion explosion = explosions.get(i);
-      explosion.update(delta);
-      if (explosion.aliveTime > Explosion.EXPLOSION_LIVE_TIME) removedExplosions.add(explosion);
+  /**
+   * Brute force collision detection. Collects every player shot and alien whose paths touched this tick.
+   * @param contacts receives player shot indices, alien indices and times of impact
+   */
+  void findShotAliens (Contacts contacts) {
+    contacts.clear();
+    if (isParallel()) {
+      // Split the aliens, there are far more of them than shots.
+      workers.run(findShotAliens);
+      mergeWorkerContacts(contacts);
+    } else {
+      findShotAliens(contacts, 0, aliens.size);
     }
+  }
 
-    for (int i = 0; i < removedExplosions.size(); i++)
-      explosions.remove(removedExplosions.get(i));
+  private void findShotAliens (Contacts contacts, int fromAlien, int toAlien) {
+    final EntityStore shipRays = mShipRays;
+    for (int i = 0; i < shipRays.size; i++) {
+      for (int j = fromAlien; j < toAlien; j++) {
+        float t = timeOfImpact(shipRays, i, aliens, j, Alien.ALIEN_RADIUS);
+        if (t >= 0) contacts.add(i, j, t);
+      }
+    }
+  }
 
-    //Bomb Explosions
-    removedExplosions.clear();
-    for (int i = 0; i < bombExplosions.size(); i++) {
-      Explosion explosion = bombExplosions.get(i);
-      explosion.update(delta);
-      if (explosion.aliveTime > Explosion.EXPLOSION_LIVE_TIME) removedExplosions.add(explosion);
+  /**
+   * Same as {@link #findShotAliens(Contacts)}, but looks up the aliens near the path of each player shot instead of
+   * testing every alien.
+   */
+  void findShotAliensHashed (Contacts contacts) {
+    contacts.clear();
+    ensureAlienHash();
+    if (isParallel()) {
+      // Split the shots, every worker queries the hash into its own buffer.
+      workers.run(findShotAliensHashed);
+      mergeWorkerContacts(contacts);
+    } else {
+      findShotAliensHashed(contacts, 0, mShipRays.size, 0);
     }
-    for (int i = 0; i < removedExplosions.size(); i++)
-      bombExplosions.remove(removedExplosions.get(i));
   }
 
-  private void checkAlienCollision () {
-    //if (mRays.isEmpty()) return;
-    if (mShipRays.isEmpty()) return;
-
-    // Brute force collision detection.
-aliens:
-    for (int j = 0; j < aliens.size(); j++) {
-      Alien alien = aliens.get(j);
-shots:
-      for (RayShot ray : mShipRays) {
-        if (alien.position.dst(ray.position) < Alien.ALIEN_RADIUS) {
-          mShipRays.remove(ray);
-          aliens.remove(alien);
-          explosions.add(new Explosion(alien.position));
-          if (listener != null) listener.explosion();
-          score += Alien.ALIEN_POINTS;
-
-          // Go to the next alien.
-          break aliens;
-        }
+  private void findShotAliensHashed (Contacts contacts, int fromRay, int toRay, int chunk) {
+    final EntityStore shipRays = mShipRays;
+    final int[] results = queryBuffer(chunk, alienHash);
+    for (int i = fromRay; i < toRay; i++) {
+      int found = queryPath(alienHash, shipRays, i, Alien.ALIEN_RADIUS + alienMotion, results);
+      for (int k = 0; k < found; k++) {
+        int j = results[k];
+        float t = timeOfImpact(shipRays, i, aliens, j, Alien.ALIEN_RADIUS);
+        if (t >= 0) contacts.add(i, j, t);
       }
     }
   }
@@ -232,30 +427,240 @@ shots:
    */
   private void checkShipCollision () {
     // Check for collision with rays
-    for (RayShot ray : mAlienRays) {
-      if (ray.position.dst(ship.position) < Ship.SHIP_RADIUS) {
-        ship.lives--;
-        mAlienRays.remove(ray);
-        ship.isExploding = true;
-        explosions.add(new Explosion(ship.position));
-        if (listener != null) listener.explosion();
-        break;
-      }
+    int hitRay = findShipHit(mAlienRays);
+    if (hitRay != -1) {
+      ship.lives--;
+      trace.record(EventTrace.SHIP_HIT, tick, ship.lives);
+      mAlienRays.remove(hitRay);
+      ship.isExploding = true;
+      Explosion.spawn(explosions, ship.position.x, ship.position.y, ship.position.z);
+      if (listener != null) listener.explosion();
     }
 
     // Check for collision with ufos.
-    for (int i = 0; i < aliens.size(); i++) {
-      Alien alien = aliens.get(i);
-      if (alien.position.dst(ship.position) < Ship.SHIP_RADIUS) {
-        ship.lives--;
-        aliens.remove(alien);
-        ship.isExploding = true;
-        explosions.add(new Explosion(alien.position));
-        explosions.add(new Explosion(ship.position));
-        if (listener != null) listener.explosion();
-        break;
+    int hitAlien = findShipHit(aliens);
+    if (hitAlien != -1) {
+      ship.lives--;
+      trace.record(EventTrace.SHIP_HIT, tick, ship.lives);
+      ship.isExploding = true;
+      Explosion.spawn(explosions, aliens.x[hitAlien], aliens.y[hitAlien], aliens.z[hitAlien]);
+      Explosion.spawn(explosions, ship.position.x, ship.position.y, ship.position.z);
+      aliens.remove(hitAlien);
+      alienHashDirty = true;
+      if (listener != null) listener.explosion();
+    }
+  }
+
+  /**
+   * @return the index of the entity whose path came within {@link Ship#SHIP_RADIUS} of the ship first this tick, the lowest
+   *         index on a tie, or -1
+   */
+  int findShipHit (EntityStore store) {
+    if (!isParallel() || store != aliens) {
+      findShipHit(store, 0, store.size, 0);
+      return workerHit[0];
+    }
+
+    workers.run(findShipHitAliens);
+    // Chunks hold ascending index ranges, so taking the first of equal times keeps the lowest index.
+    int hit = -1;
+    float hitTime = 2;
+    for (int chunk = 0; chunk < workers.getWorkers(); chunk++) {
+      if (workerHit[chunk] != -1 && workerHitTime[chunk] < hitTime) {
+        hit = workerHit[chunk];
+        hitTime = workerHitTime[chunk];
+      }
+    }
+    return hit;
+  }
+
+  /**
+   * Scans [from, to) and leaves the first hit and its time of impact in {@link #workerHit} and {@link #workerHitTime}.
+   */
+  private void findShipHit (EntityStore store, int from, int to, int chunk) {
+    int hit = -1;
+    float hitTime = 2;
+    for (int i = from; i < to; i++) {
+      float t = timeOfImpact(store, i, ship.previousPosition, ship.position, Ship.SHIP_RADIUS);
+      if (t >= 0 && t < hitTime) {
+        hit = i;
+        hitTime = t;
       }
     }
+    workerHit[chunk] = hit;
+    workerHitTime[chunk] = hitTime;
+  }
+
+  //////////////////////////////////////////////////////////////////////
+  // Parallel tick
+  //////////////////////////////////////////////////////////////////////
+
+  /**
+   * Splits alien movement and the alien side of the collision checks across the given number of threads, for formations
+   * with thousands of aliens. Smaller formations than {@link #MIN_PARALLEL_ALIENS} still run on the calling thread. Hits
+   * are merged in a fixed order, so score, explosions and listener calls are the same as with a single thread. Pass 1 to
+   * run everything on the calling thread again, which also stops the worker threads. Must not be called while
+   * {@link #update(float)} is running.
+   */
+  public void setWorkers (int count) {
+    if (count < 1) throw new IllegalArgumentException("count must be at least 1: " + count);
+    if (count == getWorkers()) return;
+    if (workers != null) workers.dispose();
+    workers = count > 1 ? new WorkerPool(count) : null;
+
+    workerContacts = new Contacts[count];
+    for (int i = 0; i < count; i++)
+      workerContacts[i] = new Contacts();
+    workerQueryResults = new int[count][];
+    workerHit = new int[count];
+    workerHitTime = new float[count];
+  }
+
+  /**
+   * @return the number of threads the alien loops are split across, 1 if they run on the calling thread
+   */
+  public int getWorkers () {
+    return workers != null ? workers.getWorkers() : 1;
+  }
+
+  private boolean isParallel () {
+    return workers != null && aliens.size >= MIN_PARALLEL_ALIENS;
+  }
+
+  private final WorkerPool.Task moveAliens = new WorkerPool.Task() {
+    @Override public void run (int chunk, int chunks) {
+      Alien.update(aliens, chunkStart(aliens.size, chunk, chunks), chunkStart(aliens.size, chunk + 1, chunks), taskDelta,
+                   multiplier);
+    }
+  };
+
+  private final WorkerPool.Task findShotAliens = new WorkerPool.Task() {
+    @Override public void run (int chunk, int chunks) {
+      Contacts contacts = workerContacts[chunk];
+      contacts.clear();
+      findShotAliens(contacts, chunkStart(aliens.size, chunk, chunks), chunkStart(aliens.size, chunk + 1, chunks));
+    }
+  };
+
+  private final WorkerPool.Task findShotAliensHashed = new WorkerPool.Task() {
+    @Override public void run (int chunk, int chunks) {
+      Contacts contacts = workerContacts[chunk];
+      contacts.clear();
+      int rays = mShipRays.size;
+      findShotAliensHashed(contacts, chunkStart(rays, chunk, chunks), chunkStart(rays, chunk + 1, chunks), chunk);
+    }
+  };
+
+  private final WorkerPool.Task findShipHitAliens = new WorkerPool.Task() {
+    @Override public void run (int chunk, int chunks) {
+      findShipHit(aliens, chunkStart(aliens.size, chunk, chunks), chunkStart(aliens.size, chunk + 1, chunks), chunk);
+    }
+  };
+
+  /**
+   * Appends the contacts found by each worker in chunk order.
+   */
+  private void mergeWorkerContacts (Contacts contacts) {
+    for (int chunk = 0; chunk < workerContacts.length; chunk++) {
+      Contacts found = workerContacts[chunk];
+      for (int k = 0; k < found.size; k++)
+        contacts.add(found.first[k], found.second[k], found.time[k]);
+    }
+  }
+
+  /**
+   * @return the query buffer of the given worker, big enough for every id in the hash
+   */
+  private int[] queryBuffer (int chunk, SpatialHash hash) {
+    int[] buffer = workerQueryResults[chunk];
+    if (buffer == null || buffer.length < hash.size()) {
+      buffer = new int[Math.max(16, hash.size() * 2)];
+      workerQueryResults[chunk] = buffer;
+    }
+    return buffer;
+  }
+
+  private static int chunkStart (int size, int chunk, int chunks) {
+    return (int)((long)size * chunk / chunks);
+  }
+
+  /**
+   * Forces the broadphase to rebuild on its next use, as if every entity had moved.
+   */
+  void invalidateCollisionHashes () {
+    alienHashDirty = true;
+  }
+
+  private void ensureAlienHash () {
+    if (!alienHashDirty) return;
+    fillHash(alienHash, aliens);
+    alienHashDirty = false;
+  }
+
+  private static void fillHash (SpatialHash hash, EntityStore store) {
+    hash.begin();
+    for (int i = 0; i < store.size; i++)
+      hash.add(store.x[i], store.y[i], store.z[i]);
+    hash.end();
+  }
+
+  private static SpatialHash newPlayfieldHash () {
+    return new SpatialHash(PLAYFIELD_MIN_X, PLAYFIELD_MIN_Y, PLAYFIELD_MIN_Z,
+                           PLAYFIELD_MAX_X, PLAYFIELD_MAX_Y, PLAYFIELD_MAX_Z,
+                           COLLISION_CELL_SIZE);
+  }
+
+  /**
+   * Finds the entities in the hash that could have touched the path of entity i during this tick.
+   * @param reach the collision distance plus the furthest any entity in the hash moved this tick
+   * @param results receives the ids
+   */
+  private static int queryPath (SpatialHash hash, EntityStore store, int i, float reach, int[] results) {
+    float halfX = (store.x[i] - store.prevX[i]) / 2;
+    float halfY = (store.y[i] - store.prevY[i]) / 2;
+    float halfZ = (store.z[i] - store.prevZ[i]) / 2;
+    float halfLength = (float)Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ);
+    float x = store.prevX[i] + halfX, y = store.prevY[i] + halfY, z = store.prevZ[i] + halfZ;
+    return hash.query(x, y, z, halfLength + reach, results);
+  }
+
+  /**
+   * Sweeps two entities from their previous to their current positions.
+   * @return the fraction of the tick at which they first came within reach of each other, or -1 if they never did
+   */
+  private static float timeOfImpact (EntityStore a, int i, EntityStore b, int j, float reach) {
+    return timeOfImpact(a.prevX[i] - b.prevX[j], a.prevY[i] - b.prevY[j], a.prevZ[i] - b.prevZ[j],
+                        (a.x[i] - a.prevX[i]) - (b.x[j] - b.prevX[j]),
+                        (a.y[i] - a.prevY[i]) - (b.y[j] - b.prevY[j]),
+                        (a.z[i] - a.prevZ[i]) - (b.z[j] - b.prevZ[j]),
+                        reach);
+  }
+
+  private static float timeOfImpact (EntityStore a, int i, Vector3 from, Vector3 to, float reach) {
+    return timeOfImpact(a.prevX[i] - from.x, a.prevY[i] - from.y, a.prevZ[i] - from.z,
+                        (a.x[i] - a.prevX[i]) - (to.x - from.x),
+                        (a.y[i] - a.prevY[i]) - (to.y - from.y),
+                        (a.z[i] - a.prevZ[i]) - (to.z - from.z),
+                        reach);
+  }
+
+  /**
+   * Intersects the segment from (x, y, z) to (x, y, z) + (dx, dy, dz) with a sphere of the given radius around the origin,
+   * which is the relative motion of two moving spheres.
+   * @return the smallest t in [0, 1] at which the segment is inside the sphere, or -1
+   */
+  private static float timeOfImpact (float x, float y, float z, float dx, float dy, float dz, float radius) {
+    float c = x * x + y * y + z * z - radius * radius;
+    // Already touching at the start of the tick.
+    if (c < 0) return 0;
+    // Not moving closer.
+    float b = x * dx + y * dy + z * dz;
+    if (b >= 0) return -1;
+    float a = dx * dx + dy * dy + dz * dz;
+    float discriminant = b * b - a * c;
+    if (discriminant < 0) return -1;
+    float t = (-b - (float)Math.sqrt(discriminant)) / a;
+    return t <= 1 ? t : -1;
   }
 
   //private void checkBlockCollision () {
@@ -274,31 +679,21 @@ shots:
   //}
 
   private void checkNextLevel () {
-    if (aliens.size() == 0 && ship.lives > 0) {
+    if (aliens.size == 0 && ship.lives > 0) {
       blocks.clear();
       //mRays.clear();
       mAlienRays.clear();
       mShipRays.clear();
-      Vector3 shipPosition = ship.position;
-      int lives = ship.lives;
+      // The ship keeps its position and lives, but stops exploding like a new one would.
+      ship.isExploding = false;
+      ship.explodeTime = 0;
       populate();
-      ship.position.set(shipPosition);
-      ship.lives = lives;
       multiplier += 0.1f;
       wave++;
+      trace.record(EventTrace.WAVE_STARTED, tick, wave, multiplier);
     }
   }
 
-  //////////////////////////////////////////////////////////////////////
-  // Utility
-  //////////////////////////////////////////////////////////////////////
-
-  private ArrayList<RayShot>getAllRays() {
-    ArrayList<RayShot> newList = new ArrayList<RayShot>(mAlienRays);
-    newList.addAll(mShipRays);
-    return newList;
-  }
-
   //////////////////////////////////////////////////////////////////////
   // Player Input
   //////////////////////////////////////////////////////////////////////
@@ -328,18 +723,17 @@ shots:
   }
 
   public void tapRay(Ray ray) {
-    if (mShipRays.size() < MAX_SHOTS) {
-      Vector3 direction = new Vector3(0, 0, -1);
-      RayShot vanilla = new RayShot(ray, false);
-      RayShot custom  = new RayShot(
-          ray.origin,
-          direction,
-          false
-          );
-      RayShot rayshot = vanilla;
-      synchronized (mShipRays) {
-        mShipRays.add(rayshot);
-      }
+    tapRay(ray.origin.x, ray.origin.y, ray.origin.z, ray.direction.x, ray.direction.y, ray.direction.z);
+  }
+
+  /**
+   * Fires a player shot from the origin along the direction, which must be a unit vector.
+   */
+  public void tapRay(float originX, float originY, float originZ, float directionX, float directionY, float directionZ) {
+    if (mShipRays.size < maxShots) {
+      shotDirection.set(directionX, directionY, directionZ);
+      RayShot.spawn(mShipRays, originX, originY, originZ, shotDirection, false);
+      trace.record(EventTrace.PLAYER_FIRED, tick, directionX, directionY, directionZ);
       if (listener != null) listener.ray();
     }
   }
@@ -348,10 +742,14 @@ shots:
   // Orientation Logic
   //////////////////////////////////////////////////////////////////////
 
-  private LinkedList<Orientation> mOrientations = new LinkedList<Orientation>();
   //private static final int MAX_ORIENTATIONS = 15;
   private static final int MAX_ORIENTATIONS = 30;
 
+  /** ring buffer of the last orientations, slots are reused once the ring is full **/
+  private final Orientation[] mOrientations = new Orientation[MAX_ORIENTATIONS];
+  private int mOrientationHead;
+  private int mOrientationCount;
+
   private float mAzimuth;
   private float mPitch  ;
   private float mRoll   ;
@@ -360,12 +758,13 @@ shots:
     float azimuth = 0.0f;
     float pitch   = 0.0f;
     float roll    = 0.0f;
-    for (Orientation o : mOrientations) {
+    int count = mOrientationCount;
+    for (int i = 0; i < count; i++) {
+      Orientation o = mOrientations[i];
       azimuth += o.azimuth;
       pitch   += o.pitch;
       roll    += o.roll;
     }
-    int count = mOrientations.size();
     // Average out the values.
     // We can loop around in yaw/azimuth.
     mAzimuth = (azimuth / count) % 360;
@@ -377,25 +776,30 @@ shots:
    * Add a given orientation to our queue.
    */
   public void addOrientation(Orientation orientation) {
+    pushOrientation(orientation.azimuth, orientation.pitch, orientation.roll);
+  }
+
+  private void pushOrientation(float azimuth, float pitch, float roll) {
 
     // Note that these are taken from StackOverflow:
     // http://stackoverflow.com/questions/5274514/how-do-i-use-the-android-compass-orientation-to-aim-an-opengl-camera
-    mOrientations.offer(orientation);
-    if (mOrientations.size() > MAX_ORIENTATIONS) {
-      mOrientations.remove();
+    Orientation orientation = mOrientations[mOrientationHead];
+    if (orientation == null) {
+      orientation = new Orientation(azimuth, pitch, roll);
+      mOrientations[mOrientationHead] = orientation;
+    } else {
+      orientation.azimuth = azimuth;
+      orientation.pitch   = pitch;
+      orientation.roll    = roll;
     }
+    mOrientationHead = (mOrientationHead + 1) % MAX_ORIENTATIONS;
+    if (mOrientationCount < MAX_ORIENTATIONS) mOrientationCount++;
     // TODO: Technically we don't care until we retrieve.
     // Average out our values
     averageOrientationValues();
 
-    if (DEBUG) {
-      Gdx.app.log(TAG, String.format("NEW Orientation: %s",
-                                     orientation.toString()));
-      Gdx.app.log(TAG, String.format("AVERAGE Orientation: (%f, %f, %f)",
-                                     mRoll,
-                                     mPitch,
-                                     mAzimuth));
-    }
+    trace.record(EventTrace.ORIENTATION_SAMPLE, tick, azimuth, pitch, roll);
+    trace.record(EventTrace.ORIENTATION_AVERAGE, tick, mRoll, mPitch, mAzimuth);
   }
 
   /**
@@ -426,12 +830,18 @@ shots:
     }
 
     // Massaged values
-    Orientation orientation = new Orientation(
+    pushOrientation(
         massagedAzimuth,
         adjustedRoll,
         adjustedPitch);
-    addOrientation(orientation);
   }
+  /**
+   * @return the number of ticks run so far
+   */
+  public int getTick() {
+    return tick;
+  }
+
   public float getAzimuth() {
     return mAzimuth;
   }
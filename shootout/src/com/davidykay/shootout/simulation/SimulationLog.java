@@ -0,0 +1,9 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * Where decoded {@link EventTrace} dumps are written. The simulation has no idea whether it runs inside a libgdx application,
+ * a headless runner or a benchmark, so it never logs through Gdx directly.
+ */
+public interface SimulationLog {
+  public void log (String tag, String message);
+}
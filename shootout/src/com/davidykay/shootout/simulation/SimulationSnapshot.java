@@ -0,0 +1,99 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * A copy of everything needed to draw one tick of the simulation, so a renderer can draw it while the simulation goes on
+ * ticking on another thread. Snapshots are reused, filling one only allocates when an entity group outgrows it.
+ */
+public final class SimulationSnapshot {
+  final EntityStore aliens = new EntityStore((int)(Simulation.ENEMY_ROWS * Simulation.ENEMY_COLUMNS));
+  final EntityStore shipRays = new EntityStore((int)Simulation.MAX_SHOTS);
+  final EntityStore alienRays = new EntityStore(16);
+  final EntityStore explosions = new EntityStore(16);
+  final EntityStore bombExplosions = new EntityStore(16);
+  final EntityStore blocks = new EntityStore(16);
+
+  /** position, lives and explosion state of the ship **/
+  public final Ship ship = new Ship();
+  public int score;
+  public int wave;
+  public int tick;
+  public float azimuth;
+  public float pitch;
+  public float roll;
+
+  /** listener events since the simulation started, compare against an earlier snapshot to find the new ones **/
+  public int explosionEvents;
+  public int popEvents;
+  public int shotEvents;
+  public int rayEvents;
+
+  /** {@link System#nanoTime()} when the snapshot was taken **/
+  public long takenNanos;
+  /** length of the tick that produced the snapshot, in seconds **/
+  public float step;
+
+  /**
+   * Copies the state of the simulation. Must be called on the thread running the simulation.
+   */
+  public void copyFrom (Simulation simulation) {
+    aliens.copyFrom(simulation.aliens);
+    shipRays.copyFrom(simulation.mShipRays);
+    alienRays.copyFrom(simulation.mAlienRays);
+    explosions.copyFrom(simulation.explosions);
+    bombExplosions.copyFrom(simulation.bombExplosions);
+    blocks.clear();
+    for (int i = 0; i < simulation.blocks.size(); i++) {
+      Block block = simulation.blocks.get(i);
+      blocks.add(block.position.x, block.position.y, block.position.z);
+    }
+
+    Ship source = simulation.ship;
+    ship.position.set(source.position);
+    ship.previousPosition.set(source.previousPosition);
+    ship.lives = source.lives;
+    ship.isExploding = source.isExploding;
+    ship.explodeTime = source.explodeTime;
+    score = simulation.score;
+    wave = simulation.wave;
+    tick = simulation.getTick();
+    azimuth = simulation.getAzimuth();
+    pitch = simulation.getPitch();
+    roll = simulation.getRoll();
+  }
+
+  /**
+   * @return how far the given time is between the start and the end of the tick that produced the snapshot, clamped to 1
+   */
+  public float getAlpha (long nowNanos) {
+    if (step <= 0) return 1;
+    float alpha = (nowNanos - takenNanos) / (step * 1e9f);
+    return Math.max(0, Math.min(1, alpha));
+  }
+
+  public EntityView getAliens () {
+    return aliens;
+  }
+
+  public EntityView getShipRays () {
+    return shipRays;
+  }
+
+  public EntityView getAlienRays () {
+    return alienRays;
+  }
+
+  public EntityView getExplosions () {
+    return explosions;
+  }
+
+  public EntityView getBombExplosions () {
+    return bombExplosions;
+  }
+
+  /**
+   * @return the shield blocks, only their positions are set
+   */
+  public EntityView getBlocks () {
+    return blocks;
+  }
+}
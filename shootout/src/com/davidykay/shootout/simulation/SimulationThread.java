@@ -0,0 +1,145 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * Runs a simulation on a thread of its own at a fixed tick rate. After every batch of ticks the state is copied into a
+ * {@link SimulationSnapshot} and published through a {@link TripleBuffer}, so the render thread always draws the newest
+ * finished tick while the next one is already being computed. Input comes in through an {@link InputQueue}.
+ *
+ * Once started, the simulation belongs to this thread and must not be touched from anywhere else until {@link #stop()}
+ * returns. Listener events are counted into the snapshots instead of being called on the simulation thread. A stopped
+ * thread can be started again, after a {@link Simulation#reset()} for example.
+ */
+public class SimulationThread implements Runnable, SimulationListener {
+  private final Simulation simulation;
+  private final FixedTimestep timestep;
+  private final InputQueue input;
+  private final TripleBuffer<SimulationSnapshot> snapshots;
+
+  private Thread thread;
+  private volatile boolean running;
+  private volatile Throwable failure;
+
+  /** listener events so far, only touched by the simulation thread **/
+  private int explosions;
+  private int pops;
+  private int shots;
+  private int rays;
+
+  public SimulationThread (Simulation simulation, FixedTimestep timestep, InputQueue input) {
+    this.simulation = simulation;
+    this.timestep = timestep;
+    this.input = input;
+    snapshots = new TripleBuffer<SimulationSnapshot>(new SimulationSnapshot(), new SimulationSnapshot(),
+                                                     new SimulationSnapshot());
+  }
+
+  /**
+   * Publishes the current state, so there is something to draw before the first tick, and starts ticking.
+   */
+  public void start () {
+    publish();
+    simulation.listener = this;
+    running = true;
+    thread = new Thread(this, "Simulation");
+    thread.start();
+  }
+
+  /**
+   * Stops the thread and waits for it to finish. The simulation can be used from the calling thread afterwards.
+   */
+  public void stop () {
+    if (thread == null) return;
+    running = false;
+    thread.interrupt();
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    thread = null;
+    simulation.listener = null;
+  }
+
+  /**
+   * Render thread side.
+   * @return the newest snapshot, untouched by the simulation until the next call
+   */
+  public SimulationSnapshot getSnapshot () {
+    return snapshots.getFront();
+  }
+
+  /**
+   * Rethrows on the calling thread whatever stopped the simulation thread, if anything did.
+   */
+  public void checkFailure () {
+    Throwable failure = this.failure;
+    if (failure == null) return;
+    if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+    if (failure instanceof Error) throw (Error)failure;
+    throw new RuntimeException(failure);
+  }
+
+  @Override public void run () {
+    try {
+      long last = System.nanoTime();
+      while (running) {
+        long now = System.nanoTime();
+        int steps = timestep.advance((now - last) / 1e9f);
+        last = now;
+
+        for (int i = 0; i < steps; i++) {
+          float delta = timestep.getStep();
+          input.apply(simulation);
+          simulation.update(delta);
+          input.steer(simulation, delta);
+        }
+        if (steps > 0) publish();
+
+        // Sleep until the next tick is due.
+        long sleepNanos = (long)((1 - timestep.getAlpha()) * timestep.getStep() * 1e9f);
+        if (sleepNanos > 0) {
+          try {
+            Thread.sleep(sleepNanos / 1000000, (int)(sleepNanos % 1000000));
+          } catch (InterruptedException ex) {
+            // stop() wakes us up.
+          }
+        }
+      }
+    } catch (Throwable ex) {
+      failure = ex;
+      running = false;
+    }
+  }
+
+  private void publish () {
+    SimulationSnapshot snapshot = snapshots.getBack();
+    snapshot.copyFrom(simulation);
+    snapshot.explosionEvents = explosions;
+    snapshot.popEvents = pops;
+    snapshot.shotEvents = shots;
+    snapshot.rayEvents = rays;
+    snapshot.step = timestep.getStep();
+    snapshot.takenNanos = System.nanoTime();
+    snapshots.publish();
+  }
+
+  @Override public void explosion () {
+    explosions++;
+  }
+
+  @Override public void pop () {
+    pops++;
+  }
+
+  @Override public void shot () {
+    shots++;
+  }
+
+  @Override public void ray () {
+    rays++;
+  }
+}
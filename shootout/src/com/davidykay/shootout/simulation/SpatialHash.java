@@ -0,0 +1,146 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * A uniform grid over the playfield used as a collision broadphase. Entities are identified by the order in which they were
+ * added between {@link #begin()} and {@link #end()}, which lets callers use their list index as the id. Positions outside the
+ * grid bounds are clamped into the border cells, so nothing is ever lost, it just ends up in a more crowded cell.
+ *
+ * The grid is rebuilt with a counting sort and never allocates once its arrays have grown to the entity count.
+ */
+public class SpatialHash {
+  private final float minX;
+  private final float minY;
+  private final float minZ;
+  private final float invCellSize;
+  private final int cellsX;
+  private final int cellsY;
+  private final int cellsZ;
+
+  /** start offset of each cell in {@link #entries}, cell i spans [cellStart[i], cellStart[i + 1]) **/
+  private final int[] cellStart;
+  /** entity ids sorted by cell **/
+  private int[] entries = new int[64];
+  /** cell of each entity, indexed by id **/
+  private int[] entityCell = new int[64];
+  private int count;
+
+  /** ids found by the last query, valid until the next call to {@link #query} **/
+  public int[] results = new int[16];
+
+  public SpatialHash (float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float cellSize) {
+    this.minX = minX;
+    this.minY = minY;
+    this.minZ = minZ;
+    this.invCellSize = 1 / cellSize;
+    this.cellsX = Math.max(1, (int)Math.ceil((maxX - minX) / cellSize));
+    this.cellsY = Math.max(1, (int)Math.ceil((maxY - minY) / cellSize));
+    this.cellsZ = Math.max(1, (int)Math.ceil((maxZ - minZ) / cellSize));
+    this.cellStart = new int[cellsX * cellsY * cellsZ + 1];
+  }
+
+  /**
+   * Starts a rebuild. Entities must then be added in id order followed by a call to {@link #end()}.
+   */
+  public void begin () {
+    count = 0;
+  }
+
+  /**
+   * Adds the next entity. Its id is the number of entities added before it since {@link #begin()}.
+   */
+  public void add (float x, float y, float z) {
+    if (count == entityCell.length) {
+      int[] grown = new int[count * 2];
+      System.arraycopy(entityCell, 0, grown, 0, count);
+      entityCell = grown;
+      entries = new int[count * 2];
+    }
+    entityCell[count++] = cellIndex(cellX(x), cellY(y), cellZ(z));
+  }
+
+  /**
+   * Finishes a rebuild by bucketing all added entities into their cells.
+   */
+  public void end () {
+    final int[] cellStart = this.cellStart;
+    final int numCells = cellStart.length - 1;
+    for (int i = 0; i <= numCells; i++)
+      cellStart[i] = 0;
+
+    // Count, then turn the counts into end offsets and fill backwards so ids stay ascending within a cell.
+    for (int i = 0; i < count; i++)
+      cellStart[entityCell[i] + 1]++;
+    for (int i = 1; i <= numCells; i++)
+      cellStart[i] += cellStart[i - 1];
+    for (int i = count - 1; i >= 0; i--) {
+      int cell = entityCell[i];
+      int slot = --cellStart[cell + 1];
+      entries[slot] = i;
+    }
+    // cellStart[c + 1] now holds the start of cell c, shift everything back into place.
+    for (int i = 0; i < numCells; i++)
+      cellStart[i] = cellStart[i + 1];
+    cellStart[numCells] = count;
+  }
+
+  public int size () {
+    return count;
+  }
+
+  /**
+   * Collects the ids of all entities whose cell overlaps the axis aligned box around the given sphere into {@link #results}.
+   * This is a broadphase only, callers still have to do the exact distance test.
+   * @return the number of ids written to {@link #results}
+   */
+  public int query (float x, float y, float z, float radius) {
+    if (results.length < count) results = new int[count];
+    return query(x, y, z, radius, results);
+  }
+
+  /**
+   * Same as {@link #query(float, float, float, float)}, but writes the ids to the given array, so several threads can query
+   * the same grid at once.
+   * @param results must have room for {@link #size()} ids, since a query can at most return every entity
+   */
+  public int query (float x, float y, float z, float radius, int[] results) {
+    int x0 = cellX(x - radius), x1 = cellX(x + radius);
+    int y0 = cellY(y - radius), y1 = cellY(y + radius);
+    int z0 = cellZ(z - radius), z1 = cellZ(z + radius);
+
+    int found = 0;
+    for (int cz = z0; cz <= z1; cz++) {
+      for (int cy = y0; cy <= y1; cy++) {
+        for (int cx = x0; cx <= x1; cx++) {
+          int cell = cellIndex(cx, cy, cz);
+          int start = cellStart[cell];
+          int end = cellStart[cell + 1];
+          for (int i = start; i < end; i++)
+            results[found++] = entries[i];
+        }
+      }
+    }
+    return found;
+  }
+
+  private int cellIndex (int cx, int cy, int cz) {
+    return (cz * cellsY + cy) * cellsX + cx;
+  }
+
+  private int cellX (float x) {
+    return clamp((int)Math.floor((x - minX) * invCellSize), cellsX);
+  }
+
+  private int cellY (float y) {
+    return clamp((int)Math.floor((y - minY) * invCellSize), cellsY);
+  }
+
+  private int cellZ (float z) {
+    return clamp((int)Math.floor((z - minZ) * invCellSize), cellsZ);
+  }
+
+  private static int clamp (int cell, int cells) {
+    if (cell < 0) return 0;
+    if (cell >= cells) return cells - 1;
+    return cell;
+  }
+}
@@ -0,0 +1,50 @@
+package com.davidykay.shootout.simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the newest of a stream of objects from one writer thread to one reader thread without locks. The writer fills its
+ * back buffer and publishes it, the reader takes the newest published buffer as its front buffer. The third buffer sits in
+ * the middle, so neither side ever waits for the other or touches a buffer the other is using. The reader skips buffers it
+ * was too slow to see.
+ */
+public final class TripleBuffer<T> {
+  private static final int INDEX_MASK = 3;
+  /** set on the middle index when it holds a buffer the reader has not taken yet **/
+  private static final int FRESH = 4;
+
+  private final Object[] buffers;
+  private final AtomicInteger middle = new AtomicInteger(1);
+  /** only touched by the writer **/
+  private int back = 0;
+  /** only touched by the reader **/
+  private int front = 2;
+
+  public TripleBuffer (T first, T second, T third) {
+    buffers = new Object[] { first, second, third };
+  }
+
+  /**
+   * Writer side. The buffer to fill before the next {@link #publish()}. It still holds whatever was written into it three
+   * publishes ago.
+   */
+  @SuppressWarnings("unchecked") public T getBack () {
+    return (T)buffers[back];
+  }
+
+  /**
+   * Writer side. Makes the back buffer the newest one and takes a new back buffer.
+   */
+  public void publish () {
+    back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Reader side. Swaps in the newest published buffer if there is one.
+   * @return the front buffer, which stays untouched by the writer until the next call
+   */
+  @SuppressWarnings("unchecked") public T getFront () {
+    if ((middle.get() & FRESH) != 0) front = middle.getAndSet(front) & INDEX_MASK;
+    return (T)buffers[front];
+  }
+}
@@ -0,0 +1,133 @@
+package com.davidykay.shootout.simulation;
+
+/**
+ * A fixed set of threads that split a loop between them. {@link #run(Task)} hands every worker one chunk of the same task and
+ * returns once all chunks are done. The calling thread does the first chunk itself.
+ *
+ * This stands in for a fork/join pool, which Android only has from API level 21. Workers are woken with wait/notify, so
+ * running a task does not allocate.
+ */
+public final class WorkerPool {
+  /**
+   * Work that can be split into chunks. Chunks run concurrently and must only write to state owned by their chunk.
+   */
+  public interface Task {
+    void run (int chunk, int chunks);
+  }
+
+  private final Object lock = new Object();
+  private final Thread[] threads;
+  private final int workers;
+
+  // Guarded by lock.
+  private Task task;
+  private int generation;
+  private int pending;
+  private boolean disposed;
+  private Throwable failure;
+
+  /**
+   * @param workers the number of chunks each task is split into, including the one done by the calling thread
+   */
+  public WorkerPool (int workers) {
+    if (workers < 1) throw new IllegalArgumentException("workers must be at least 1: " + workers);
+    this.workers = workers;
+    threads = new Thread[workers - 1];
+    for (int i = 0; i < threads.length; i++) {
+      final int chunk = i + 1;
+      threads[i] = new Thread("Simulation worker " + chunk) {
+        @Override public void run () {
+          work(chunk);
+        }
+      };
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+  }
+
+  public int getWorkers () {
+    return workers;
+  }
+
+  /**
+   * Runs the task on all workers and waits for it to finish. If a chunk throws, the first failure is rethrown here after all
+   * chunks are done.
+   */
+  public void run (Task task) {
+    synchronized (lock) {
+      if (disposed) throw new IllegalStateException("WorkerPool has been disposed.");
+      this.task = task;
+      failure = null;
+      pending = threads.length;
+      generation++;
+      lock.notifyAll();
+    }
+
+    Throwable callerFailure = null;
+    try {
+      task.run(0, workers);
+    } catch (Throwable ex) {
+      callerFailure = ex;
+    }
+
+    Throwable workerFailure;
+    synchronized (lock) {
+      boolean interrupted = false;
+      while (pending > 0) {
+        try {
+          lock.wait();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) Thread.currentThread().interrupt();
+      this.task = null;
+      workerFailure = failure;
+    }
+
+    Throwable first = callerFailure != null ? callerFailure : workerFailure;
+    if (first instanceof RuntimeException) throw (RuntimeException)first;
+    if (first instanceof Error) throw (Error)first;
+    if (first != null) throw new RuntimeException(first);
+  }
+
+  /**
+   * Stops the worker threads. The pool can't be used afterwards.
+   */
+  public void dispose () {
+    synchronized (lock) {
+      disposed = true;
+      lock.notifyAll();
+    }
+  }
+
+  private void work (int chunk) {
+    int seen = 0;
+    while (true) {
+      Task task;
+      synchronized (lock) {
+        while (generation == seen && !disposed) {
+          try {
+            lock.wait();
+          } catch (InterruptedException ignored) {
+          }
+        }
+        if (disposed) return;
+        seen = generation;
+        task = this.task;
+      }
+
+      Throwable thrown = null;
+      try {
+        task.run(chunk, workers);
+      } catch (Throwable ex) {
+        thrown = ex;
+      }
+
+      synchronized (lock) {
+        if (thrown != null && failure == null) failure = thrown;
+        if (--pending == 0) lock.notifyAll();
+      }
+    }
+  }
+}